@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.ColumnTypeAttributes;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.PartialRow;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.DataType;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AbstractKuduProcessor#buildPartialRow} for tables of different widths and column types.
+ * Run with <code>-prof gc</code> to report the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BuildPartialRowBenchmark {
+
+    private static final String[] MIXED_TYPES = {"INT64", "STRING", "DOUBLE", "DECIMAL", "UNIXTIME_MICROS", "TIMESTAMP_STRING", "DATE_STRING"};
+
+    @Param({"8", "32", "128"})
+    public int columns;
+
+    @Param({"INT64", "STRING", "DOUBLE", "DECIMAL", "UNIXTIME_MICROS", "TIMESTAMP_STRING", "DATE_STRING", "MIXED"})
+    public String columnType;
+
+    private AbstractKuduProcessor processor;
+    private Schema kuduSchema;
+    private Record record;
+    private List<String> fieldNames;
+
+    @Setup
+    public void setup() {
+        processor = new AbstractKuduProcessor() {
+            @Override
+            public void onTrigger(final ProcessContext context, final ProcessSession session) {
+            }
+        };
+
+        final List<ColumnSchema> kuduColumns = new ArrayList<>();
+        final List<RecordField> recordFields = new ArrayList<>();
+        final Map<String, Object> values = new LinkedHashMap<>();
+
+        kuduColumns.add(new ColumnSchema.ColumnSchemaBuilder("id", Type.INT64).key(true).build());
+        recordFields.add(new RecordField("id", RecordFieldType.LONG.getDataType()));
+        values.put("id", 42L);
+
+        for (int i = 1; i < columns; i++) {
+            final String name = "c" + i;
+            final String type = "MIXED".equals(columnType) ? MIXED_TYPES[i % MIXED_TYPES.length] : columnType;
+            kuduColumns.add(getColumnSchema(name, type));
+            recordFields.add(new RecordField(name, getDataType(type)));
+            values.put(name, getValue(type, i));
+        }
+
+        kuduSchema = new Schema(kuduColumns);
+        final RecordSchema recordSchema = new SimpleRecordSchema(recordFields);
+        record = new MapRecord(recordSchema, values);
+        fieldNames = recordSchema.getFieldNames();
+    }
+
+    @Benchmark
+    public PartialRow buildPartialRow() {
+        final PartialRow row = kuduSchema.newPartialRow();
+        processor.buildPartialRow(kuduSchema, row, record, fieldNames, false, false);
+        return row;
+    }
+
+    private static ColumnSchema getColumnSchema(final String name, final String type) {
+        switch (type) {
+            case "DECIMAL":
+                return new ColumnSchema.ColumnSchemaBuilder(name, Type.DECIMAL)
+                        .nullable(true)
+                        .typeAttributes(new ColumnTypeAttributes.ColumnTypeAttributesBuilder().precision(18).scale(4).build())
+                        .build();
+            case "TIMESTAMP_STRING":
+                return new ColumnSchema.ColumnSchemaBuilder(name, Type.UNIXTIME_MICROS).nullable(true).build();
+            case "DATE_STRING":
+                return new ColumnSchema.ColumnSchemaBuilder(name, Type.DATE).nullable(true).build();
+            default:
+                return new ColumnSchema.ColumnSchemaBuilder(name, Type.valueOf(type)).nullable(true).build();
+        }
+    }
+
+    private static DataType getDataType(final String type) {
+        switch (type) {
+            case "INT64":
+                return RecordFieldType.LONG.getDataType();
+            case "DOUBLE":
+                return RecordFieldType.DOUBLE.getDataType();
+            case "DECIMAL":
+                return RecordFieldType.DECIMAL.getDecimalDataType(18, 4);
+            case "UNIXTIME_MICROS":
+            case "TIMESTAMP_STRING":
+                return RecordFieldType.TIMESTAMP.getDataType();
+            case "DATE_STRING":
+                return RecordFieldType.DATE.getDataType();
+            default:
+                return RecordFieldType.STRING.getDataType();
+        }
+    }
+
+    private static Object getValue(final String type, final int index) {
+        switch (type) {
+            case "INT64":
+                return (long) index * 1_000_003L;
+            case "DOUBLE":
+                return index * 3.14159d;
+            case "DECIMAL":
+                return new BigDecimal("12345.6789");
+            case "UNIXTIME_MICROS":
+                return new Timestamp(1_600_000_000_000L + index);
+            case "TIMESTAMP_STRING":
+                return "2021-11-11 02:11:11.111110";
+            case "DATE_STRING":
+                return "2021-11-11";
+            default:
+                return "value-" + index;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.text.DateFormat;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the field conversions used when building Kudu rows: {@link ObjectTimestampFieldConverter}, the
+ * {@link DataTypeUtils} conversions and the date path of {@link AbstractKuduProcessor}.
+ * Run with <code>-prof gc</code> to report the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldConversionBenchmark {
+
+    private static final String FIELD_NAME = "field";
+    private static final Optional<String> MICROSECOND_PATTERN = Optional.of("yyyy-MM-dd HH:mm:ss[.SSSSSS]");
+
+    private final ObjectTimestampFieldConverter timestampConverter = new ObjectTimestampFieldConverter();
+    private final Supplier<DateFormat> timestampFormat = () -> DataTypeUtils.getDateFormat(RecordFieldType.TIMESTAMP.getDefaultFormat());
+
+    private AbstractKuduProcessor processor;
+    private Timestamp timestamp;
+    private Long epochMillis;
+    private String timestampString;
+    private String longString;
+    private String dateString;
+    private Double doubleValue;
+
+    @Setup
+    public void setup() {
+        processor = new AbstractKuduProcessor() {
+            @Override
+            public void onTrigger(final ProcessContext context, final ProcessSession session) {
+            }
+        };
+
+        epochMillis = 1_636_596_671_111L;
+        timestamp = new Timestamp(epochMillis);
+        timestampString = "2021-11-11 02:11:11.111110";
+        longString = "1636596671111";
+        dateString = "2021-11-11";
+        doubleValue = 12345.6789d;
+    }
+
+    @Benchmark
+    public Timestamp convertFieldFromTimestamp() {
+        return timestampConverter.convertField(timestamp, MICROSECOND_PATTERN, FIELD_NAME);
+    }
+
+    @Benchmark
+    public Timestamp convertFieldFromNumber() {
+        return timestampConverter.convertField(epochMillis, Optional.empty(), FIELD_NAME);
+    }
+
+    @Benchmark
+    public Timestamp convertFieldFromPatternString() {
+        return timestampConverter.convertField(timestampString, MICROSECOND_PATTERN, FIELD_NAME);
+    }
+
+    @Benchmark
+    public Timestamp convertFieldFromLongString() {
+        return timestampConverter.convertField(longString, Optional.empty(), FIELD_NAME);
+    }
+
+    @Benchmark
+    public Timestamp toTimestampFromNumber() {
+        return DataTypeUtils.toTimestamp(epochMillis, timestampFormat, FIELD_NAME);
+    }
+
+    @Benchmark
+    public Timestamp toTimestampFromString() {
+        return DataTypeUtils.toTimestamp("2021-11-11 02:11:11", timestampFormat, FIELD_NAME);
+    }
+
+    @Benchmark
+    public Long toLongFromNumber() {
+        return DataTypeUtils.toLong(epochMillis, FIELD_NAME);
+    }
+
+    @Benchmark
+    public Long toLongFromString() {
+        return DataTypeUtils.toLong(longString, FIELD_NAME);
+    }
+
+    @Benchmark
+    public String toStringFromString() {
+        return DataTypeUtils.toString(timestampString, (String) null);
+    }
+
+    @Benchmark
+    public String toStringFromDouble() {
+        return DataTypeUtils.toString(doubleValue, (String) null);
+    }
+
+    @Benchmark
+    public String toStringFromTimestamp() {
+        return DataTypeUtils.toString(timestamp, RecordFieldType.TIMESTAMP.getDefaultFormat());
+    }
+
+    @Benchmark
+    public Date getDateFromString() {
+        return processor.getDate(dateString, FIELD_NAME, RecordFieldType.DATE.getDefaultFormat());
+    }
+
+    @Benchmark
+    public Date getDateFromDate() {
+        return processor.getDate(Date.valueOf(dateString), FIELD_NAME, RecordFieldType.DATE.getDefaultFormat());
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.InMemoryKudu;
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+import org.apache.kudu.client.Status;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write sink that keeps no data and simulates the timing and failures of a Kudu cluster. Operations are assigned to
+ * tablets by hashing their primary key; every flush sleeps for the base latency plus random jitter, plus the extra
+ * latency of the slowest tablet it touches, and fails a configurable share of operations with a row error.
+ */
+public class InMemoryKuduWriteSink implements KuduWriteSink {
+
+    /**
+     * Simulated cluster behaviour, shared by all sinks of a scenario
+     */
+    public static class Profile {
+        private final int tablets;
+        private final long flushLatencyMicros;
+        private final long jitterMicros;
+        private final double rowErrorRate;
+        private final Status rowErrorStatus;
+        private final BitSet slowTablets = new BitSet();
+        private final long slowTabletLatencyMicros;
+
+        private final LatencyHistogram flushLatency = new LatencyHistogram();
+        private final LongAdder appliedOperations = new LongAdder();
+        private final LongAdder failedOperations = new LongAdder();
+
+        /**
+         * @param tablets                 Number of simulated tablets
+         * @param flushLatencyMicros      Base latency of every flush
+         * @param jitterMicros            Maximum random latency added to every flush
+         * @param rowErrorRate            Share of operations failing with the row error status, between 0 and 1
+         * @param rowErrorStatus          Status of injected row errors
+         * @param slowTablets             Number of tablets, starting from the first, that add extra latency
+         * @param slowTabletLatencyMicros Extra latency of flushes touching a slow tablet
+         */
+        public Profile(final int tablets, final long flushLatencyMicros, final long jitterMicros, final double rowErrorRate,
+                       final Status rowErrorStatus, final int slowTablets, final long slowTabletLatencyMicros) {
+            this.tablets = tablets;
+            this.flushLatencyMicros = flushLatencyMicros;
+            this.jitterMicros = jitterMicros;
+            this.rowErrorRate = rowErrorRate;
+            this.rowErrorStatus = rowErrorStatus;
+            this.slowTablets.set(0, Math.min(slowTablets, tablets));
+            this.slowTabletLatencyMicros = slowTabletLatencyMicros;
+        }
+
+        public LatencyHistogram getFlushLatency() {
+            return flushLatency;
+        }
+
+        public long getAppliedOperations() {
+            return appliedOperations.sum();
+        }
+
+        public long getFailedOperations() {
+            return failedOperations.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("tablets=%d, flush=%dus, jitter=%dus, errors=%.4f (%s), slowTablets=%d (+%dus)", tablets, flushLatencyMicros, jitterMicros,
+                    rowErrorRate, rowErrorStatus, slowTablets.cardinality(), slowTabletLatencyMicros);
+        }
+    }
+
+    private final Profile profile;
+    private final SessionConfiguration.FlushMode flushMode;
+    private final int mutationBufferSpace;
+    private final List<Operation> buffer = new ArrayList<>();
+    private final List<RowError> pendingRowErrors = new ArrayList<>();
+
+    public InMemoryKuduWriteSink(final Profile profile, final SessionConfiguration.FlushMode flushMode, final int mutationBufferSpace) {
+        this.profile = profile;
+        this.flushMode = flushMode;
+        this.mutationBufferSpace = mutationBufferSpace;
+    }
+
+    @Override
+    public OperationResponse apply(final Operation operation) throws KuduException {
+        buffer.add(operation);
+        switch (flushMode) {
+            case AUTO_FLUSH_SYNC:
+                return flushBuffer().get(0);
+            case AUTO_FLUSH_BACKGROUND:
+                if (buffer.size() >= mutationBufferSpace) {
+                    collectRowErrors(flushBuffer());
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public List<OperationResponse> flush() {
+        final List<OperationResponse> responses = flushBuffer();
+        if (flushMode == SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND) {
+            collectRowErrors(responses);
+        }
+        return responses;
+    }
+
+    @Override
+    public List<OperationResponse> close() {
+        return flush();
+    }
+
+    @Override
+    public SessionConfiguration.FlushMode getFlushMode() {
+        return flushMode;
+    }
+
+    @Override
+    public List<RowError> getPendingRowErrors() {
+        final List<RowError> rowErrors = new ArrayList<>(pendingRowErrors);
+        pendingRowErrors.clear();
+        return rowErrors;
+    }
+
+    @Override
+    public void setIgnoreAllDuplicateRows(final boolean ignoreAllDuplicateRows) {
+    }
+
+    private void collectRowErrors(final List<OperationResponse> responses) {
+        for (final OperationResponse response : responses) {
+            if (response.hasRowError()) {
+                pendingRowErrors.add(response.getRowError());
+            }
+        }
+    }
+
+    private List<OperationResponse> flushBuffer() {
+        if (buffer.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        final long start = System.nanoTime();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean slowTabletTouched = false;
+        final String[] tabletServers = new String[buffer.size()];
+        for (int i = 0; i < buffer.size(); i++) {
+            final int tablet = getTablet(buffer.get(i));
+            slowTabletTouched |= profile.slowTablets.get(tablet);
+            tabletServers[i] = "ts-" + tablet;
+        }
+
+        long latencyMicros = profile.flushLatencyMicros;
+        if (profile.jitterMicros > 0) {
+            latencyMicros += random.nextLong(profile.jitterMicros + 1);
+        }
+        if (slowTabletTouched) {
+            latencyMicros += profile.slowTabletLatencyMicros;
+        }
+        sleepMicros(latencyMicros);
+
+        final long elapsedMillis = TimeUnit.MICROSECONDS.toMillis(latencyMicros);
+        final List<OperationResponse> responses = new ArrayList<>(buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            final Operation operation = buffer.get(i);
+            RowError rowError = null;
+            if (profile.rowErrorRate > 0 && random.nextDouble() < profile.rowErrorRate) {
+                rowError = InMemoryKudu.newRowError(profile.rowErrorStatus, operation, tabletServers[i]);
+                profile.failedOperations.increment();
+            } else {
+                profile.appliedOperations.increment();
+            }
+            responses.add(InMemoryKudu.newResponse(elapsedMillis, tabletServers[i], operation, rowError));
+        }
+        buffer.clear();
+
+        profile.flushLatency.record(System.nanoTime() - start);
+        return responses;
+    }
+
+    private int getTablet(final Operation operation) {
+        final PartialRow row = operation.getRow();
+        final Schema schema = row.getSchema();
+        int hash = 17;
+        for (int i = 0; i < schema.getPrimaryKeyColumnCount(); i++) {
+            hash = 31 * hash + (row.isSet(i) ? Objects.hashCode(row.getObject(i)) : 0);
+        }
+        return Math.floorMod(hash, profile.tablets);
+    }
+
+    private static void sleepMicros(final long micros) {
+        if (micros <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MICROSECONDS.sleep(micros);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
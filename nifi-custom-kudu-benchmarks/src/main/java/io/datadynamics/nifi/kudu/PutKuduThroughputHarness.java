@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.InMemoryKudu;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.SessionConfiguration;
+import org.apache.kudu.client.Status;
+import org.apache.nifi.components.PropertyValue;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.serialization.record.MockRecordParser;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@link AddNineHoursPutKudu} through nifi-mock's {@link TestRunner} against an {@link InMemoryKuduWriteSink}
+ * and reports records/s, onTrigger latency percentiles and peak heap use for every combination of flush mode,
+ * batch size and FlowFile size.
+ * <p>
+ * Usage: <code>java -cp benchmarks.jar io.datadynamics.nifi.kudu.PutKuduThroughputHarness [records per scenario]</code>
+ */
+public class PutKuduThroughputHarness {
+
+    private static final int[] BATCH_SIZES = {100, 1000, 5000};
+    private static final int[] RECORDS_PER_FLOWFILE = {10, 1000, 10000};
+
+    private static final Schema KUDU_SCHEMA = new Schema(Arrays.asList(
+            new ColumnSchema.ColumnSchemaBuilder("id", Type.INT64).key(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("name", Type.STRING).nullable(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("amount", Type.DOUBLE).nullable(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("created", Type.INT64).nullable(true).build()));
+
+    /**
+     * AddNineHoursPutKudu writing to the in-memory sink instead of a Kudu cluster
+     */
+    static class InMemoryPutKudu extends AddNineHoursPutKudu {
+        private final InMemoryKuduWriteSink.Profile profile;
+        private final LatencyHistogram triggerLatency = new LatencyHistogram();
+
+        InMemoryPutKudu(final InMemoryKuduWriteSink.Profile profile) {
+            this.profile = profile;
+        }
+
+        @Override
+        public void onTrigger(final ProcessContext context, final ProcessSession session) {
+            final long start = System.nanoTime();
+            try {
+                super.onTrigger(context, session);
+            } finally {
+                triggerLatency.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        protected KuduWriteSink createKuduSession(final KuduClient client) {
+            return new InMemoryKuduWriteSink(profile, getFlushMode(), getBatchSize());
+        }
+
+        @Override
+        protected KuduTable openTable(final KuduClient kuduClient, final String tableName) {
+            return InMemoryKudu.newTable(tableName, KUDU_SCHEMA);
+        }
+
+        @Override
+        protected boolean supportsIgnoreOperations() {
+            return true;
+        }
+
+        @Override
+        protected void warmUpTable(final PropertyValue tableNameProperty) {
+            // Nothing to locate or connect to in memory
+        }
+    }
+
+    public static void main(final String[] args) throws InitializationException {
+        final int recordsPerScenario = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        System.out.println("Simulated cluster: " + newProfile());
+        System.out.println(String.format("%-22s %6s %6s %12s %10s %10s %10s %10s %8s",
+                "flushMode", "batch", "ffSize", "records/s", "p50(ms)", "p99(ms)", "max(ms)", "flushP99", "heap(MB)"));
+
+        int scenario = 0;
+        for (final SessionConfiguration.FlushMode flushMode : SessionConfiguration.FlushMode.values()) {
+            for (final int batchSize : BATCH_SIZES) {
+                for (final int recordsPerFlowFile : RECORDS_PER_FLOWFILE) {
+                    runScenario("bench_" + scenario++, newProfile(), flushMode, batchSize, recordsPerFlowFile,
+                            Math.max(1, recordsPerScenario / recordsPerFlowFile));
+                }
+            }
+        }
+    }
+
+    private static InMemoryKuduWriteSink.Profile newProfile() {
+        return new InMemoryKuduWriteSink.Profile(16, 2_000, 1_000, 0.001, Status.ServiceUnavailable("injected"), 1, 5_000);
+    }
+
+    private static void runScenario(final String tableName, final InMemoryKuduWriteSink.Profile profile, final SessionConfiguration.FlushMode flushMode,
+                                     final int batchSize, final int recordsPerFlowFile, final int flowFiles) throws InitializationException {
+        final InMemoryPutKudu processor = new InMemoryPutKudu(profile);
+        final TestRunner runner = TestRunners.newTestRunner(processor);
+
+        final MockRecordParser readerFactory = new MockRecordParser();
+        readerFactory.addSchemaField("id", RecordFieldType.LONG);
+        readerFactory.addSchemaField("name", RecordFieldType.STRING);
+        readerFactory.addSchemaField("amount", RecordFieldType.DOUBLE);
+        readerFactory.addSchemaField("created", RecordFieldType.LONG);
+        for (int i = 0; i < recordsPerFlowFile; i++) {
+            readerFactory.addRecord((long) i, "name-" + i, i * 1.5d, 1_600_000_000_000L + i);
+        }
+
+        runner.addControllerService("reader", readerFactory);
+        runner.enableControllerService(readerFactory);
+        runner.setProperty(AddNineHoursPutKudu.RECORD_READER, "reader");
+        runner.setProperty(AddNineHoursPutKudu.TABLE_NAME, tableName);
+        runner.setProperty(AbstractKuduProcessor.KUDU_MASTERS, "localhost:7051");
+        runner.setProperty(AddNineHoursPutKudu.FLUSH_MODE, flushMode.name());
+        runner.setProperty(AddNineHoursPutKudu.BATCH_SIZE, String.valueOf(batchSize));
+        runner.setProperty(AddNineHoursPutKudu.ROW_RETRY_INITIAL_BACKOFF, "1 ms");
+        runner.setProperty(AddNineHoursPutKudu.ROW_RETRY_MAX_BACKOFF, "10 ms");
+
+        for (int i = 0; i < flowFiles; i++) {
+            runner.enqueue(new byte[0]);
+        }
+
+        System.gc();
+        final MemoryPoolMXBean[] heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toArray(MemoryPoolMXBean[]::new);
+        Arrays.stream(heapPools).forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        final long start = System.nanoTime();
+        runner.run(flowFiles);
+        final long elapsedNanos = System.nanoTime() - start;
+
+        final long peakHeap = Arrays.stream(heapPools).mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        final long records = (long) flowFiles * recordsPerFlowFile;
+        final double recordsPerSecond = records / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        final LatencyHistogram triggerLatency = processor.triggerLatency;
+
+        System.out.println(String.format("%-22s %6d %6d %12.0f %10.2f %10.2f %10.2f %10.2f %8d",
+                flushMode, batchSize, recordsPerFlowFile, recordsPerSecond,
+                toMillis(triggerLatency.getValueAtPercentile(50)),
+                toMillis(triggerLatency.getValueAtPercentile(99)),
+                toMillis(triggerLatency.getMax()),
+                toMillis(profile.getFlushLatency().getValueAtPercentile(99)),
+                peakHeap / (1024 * 1024)));
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kudu.client;
+
+import org.apache.kudu.Schema;
+
+import java.util.Collections;
+
+/**
+ * Creates Kudu client objects without a cluster. KuduTable, RowError and OperationResponse only have package-private
+ * constructors, so this factory lives in their package and calls them directly; a change of their parameters in a
+ * later kudu-client release breaks the build of the benchmarks instead of the harness at runtime.
+ */
+public final class InMemoryKudu {
+
+    private InMemoryKudu() {
+    }
+
+    public static KuduTable newTable(final String tableName, final Schema schema) {
+        return new KuduTable(null, tableName, tableName + "-id", schema, null, 1, Collections.emptyMap(), "nifi", "");
+    }
+
+    public static RowError newRowError(final Status status, final Operation operation, final String tsUuid) {
+        return new RowError(status, operation, tsUuid);
+    }
+
+    public static OperationResponse newResponse(final long elapsedMillis, final String tsUuid, final Operation operation, final RowError rowError) {
+        return new OperationResponse(elapsedMillis, tsUuid, 0L, operation, rowError);
+    }
+}
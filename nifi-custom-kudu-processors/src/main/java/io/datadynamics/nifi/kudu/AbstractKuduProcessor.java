@@ -25,13 +25,18 @@ import org.apache.kudu.shaded.com.google.common.annotations.VisibleForTesting;
 import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.components.PropertyDescriptor.Builder;
+import org.apache.nifi.components.PropertyValue;
+import org.apache.nifi.context.PropertyContext;
 import org.apache.nifi.components.ValidationContext;
 import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.expression.AttributeExpression;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.kerberos.KerberosCredentialsService;
-import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.AbstractSessionFactoryProcessor;
 import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessSessionFactory;
+import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.security.krb.KerberosAction;
 import org.apache.nifi.security.krb.KerberosKeytabUser;
@@ -44,7 +49,10 @@ import org.apache.nifi.serialization.record.type.DecimalDataType;
 import org.apache.nifi.util.StringUtils;
 
 import javax.security.auth.login.LoginException;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
 import java.sql.Date;
 import java.sql.Timestamp;
 import java.time.LocalDate;
@@ -52,12 +60,11 @@ import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
-public abstract class AbstractKuduProcessor extends AbstractProcessor {
+public abstract class AbstractKuduProcessor extends AbstractSessionFactoryProcessor {
 
     static final PropertyDescriptor KUDU_MASTERS = new Builder()
             .name("Kudu Masters")
@@ -135,29 +142,115 @@ public abstract class AbstractKuduProcessor extends AbstractProcessor {
             .expressionLanguageSupported(ExpressionLanguageScope.VARIABLE_REGISTRY)
             .build();
 
+    static final PropertyDescriptor CLIENT_METRICS_REPORT_INTERVAL = new Builder()
+            .name("client-metrics-report-interval")
+            .displayName("Client Metrics Report Interval")
+            .description("If specified, the processor periodically logs the response times per Kudu tablet server, the slowest flushes and the " +
+                    "busiest tablets of the interval, and emits a warning bulletin for tablet servers responding much slower than the others. " +
+                    "Tablet server response times are sampled from the responses returned by flushes; with AUTO_FLUSH_BACKGROUND these only " +
+                    "cover the operations still buffered at the flush, so they compare tablet servers but do not count their writes. " +
+                    "The write statistics of the Kudu client per table are always published as processor counters.")
+            .required(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
     private static final FieldConverter<Object, Timestamp> TIMESTAMP_FIELD_CONVERTER = new ObjectTimestampFieldConverter();
     /**
      * Timestamp Pattern overrides default RecordFieldType.TIMESTAMP pattern of yyyy-MM-dd HH:mm:ss with optional microseconds
      */
     private static final String MICROSECOND_TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss[.SSSSSS]";
 
-    private volatile KuduClient kuduClient;
-    private final ReadWriteLock kuduClientReadWriteLock = new ReentrantReadWriteLock();
-    private final Lock kuduClientReadLock = kuduClientReadWriteLock.readLock();
-    private final Lock kuduClientWriteLock = kuduClientReadWriteLock.writeLock();
+    /**
+     * How long the result of a capability probe is reused. Processors load this class in their own instance class loader,
+     * so the probes are only reused across restarts of one processor, not shared between processors.
+     */
+    private static final long CAPABILITY_PROBE_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final ConcurrentMap<String, CapabilityProbe> IGNORE_OPERATIONS_PROBES = new ConcurrentHashMap<>();
+
+    /**
+     * Closes the clients replaced on Kerberos re-login once the last trigger using them is done
+     */
+    private static final Executor CLIENT_CLOSER = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        final Thread thread = new Thread(runnable, "Kudu Client Closer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * How often the Kerberos ticket is checked in the background; it is renewed once 80% of its lifetime elapsed
+     */
+    static final long KERBEROS_RENEWAL_CHECK_INTERVAL_SECONDS = 60;
+    static final ScheduledExecutorService KERBEROS_RENEWER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Kudu Kerberos Renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<KuduClientHandle> kuduClientHandle = new AtomicReference<>();
+    private volatile ScheduledFuture<?> kerberosRenewal;
+    // Guards the installation of new clients against shutdown, which waits for a running renewal
+    private final Object clientLifecycleLock = new Object();
+    private volatile boolean clientShutdown;
+    private boolean renewing;
+    private volatile String kuduMasters;
 
     private volatile KerberosUser kerberosUser;
 
+    private final KuduClientMetrics clientMetrics = new KuduClientMetrics();
+    private volatile KuduWorkerExecutor workerExecutor;
+    private final AtomicLong nextClientMetricsReport = new AtomicLong(System.nanoTime());
+
     protected KerberosUser getKerberosUser() {
         return this.kerberosUser;
     }
 
+    /**
+     * Runs a trigger in a session committed at its end, like AbstractProcessor. Processors keeping sessions open
+     * across triggers override this method.
+     */
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSessionFactory sessionFactory) throws ProcessException {
+        final ProcessSession session = sessionFactory.createSession();
+        try {
+            onTrigger(context, session);
+            session.commit();
+        } catch (final Throwable t) {
+            session.rollback(true);
+            throw t;
+        }
+    }
+
+    public abstract void onTrigger(ProcessContext context, ProcessSession session) throws ProcessException;
+
+    /**
+     * Returns whether the cluster supports the *_IGNORE operations. The probe is a master RPC, so its result is reused
+     * for a few minutes when the processor is restarted against the same masters. Without a client, for instance once
+     * the processor is shut down, the operations are reported as unsupported and nothing is cached.
+     */
     protected boolean supportsIgnoreOperations() {
+        final String masters = kuduMasters;
+        final CapabilityProbe cached = masters == null ? null : IGNORE_OPERATIONS_PROBES.get(masters);
+        if (cached != null && !cached.isExpired()) {
+            return cached.isSupported();
+        }
+
+        final boolean supported;
+        final KuduClientHandle handle = acquireKuduClient();
+        if (handle == null) {
+            getLogger().debug("No Kudu client to probe the support of *_IGNORE operations");
+            return false;
+        }
         try {
-            return kuduClient.supportsIgnoreOperations();
+            supported = handle.getClient().supportsIgnoreOperations();
         } catch (KuduException e) {
             throw new RuntimeException(e);
+        } finally {
+            handle.release(CLIENT_CLOSER);
         }
+        if (masters != null) {
+            IGNORE_OPERATIONS_PROBES.put(masters, new CapabilityProbe(supported));
+        }
+        return supported;
     }
 
     protected void createKerberosUserAndOrKuduClient(ProcessContext context) throws LoginException {
@@ -165,6 +258,9 @@ public abstract class AbstractKuduProcessor extends AbstractProcessor {
         final String kerberosPrincipal = context.getProperty(KERBEROS_PRINCIPAL).evaluateAttributeExpressions().getValue();
         final String kerberosPassword = context.getProperty(KERBEROS_PASSWORD).getValue();
 
+        kuduMasters = context.getProperty(KUDU_MASTERS).evaluateAttributeExpressions().getValue();
+        clientShutdown = false;
+
         if (credentialsService != null) {
             kerberosUser = createKerberosKeytabUser(credentialsService.getPrincipal(), credentialsService.getKeytab(), context);
             kerberosUser.login(); // login creates the kudu client as well
@@ -174,72 +270,255 @@ public abstract class AbstractKuduProcessor extends AbstractProcessor {
         } else {
             createKuduClient(context);
         }
+
+        if (kerberosUser != null) {
+            final KerberosUser user = kerberosUser;
+            kerberosRenewal = KERBEROS_RENEWER.scheduleWithFixedDelay(() -> renewKerberosTicket(user),
+                    KERBEROS_RENEWAL_CHECK_INTERVAL_SECONDS, KERBEROS_RENEWAL_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
     }
 
-    protected void createKuduClient(ProcessContext context) {
-        kuduClientWriteLock.lock();
-        try {
-            if (this.kuduClient != null) {
-                try {
-                    this.kuduClient.close();
-                } catch (KuduException e) {
-                    getLogger().error("Couldn't close Kudu client.");
-                }
+    /**
+     * Re-login ahead of the ticket expiry, which rebuilds the Kudu client, so that triggers never log in inline.
+     */
+    private void renewKerberosTicket(final KerberosUser user) {
+        // The lock is not held while logging in: a trigger logging in inline holds the user and then installs its client
+        synchronized (clientLifecycleLock) {
+            if (clientShutdown) {
+                return;
             }
+            renewing = true;
+        }
 
-            if (kerberosUser != null) {
-                final KerberosAction<KuduClient> kerberosAction = new KerberosAction<>(kerberosUser, () -> buildClient(context), getLogger());
-                this.kuduClient = kerberosAction.execute();
+        try {
+            if (user.isLoggedIn()) {
+                user.checkTGTAndRelogin();
             } else {
-                this.kuduClient = buildClient(context);
+                user.login();
             }
+        } catch (final Exception e) {
+            getLogger().error("Failed to renew Kerberos ticket of {}; retrying in {} seconds",
+                    new Object[] {user.getPrincipal(), KERBEROS_RENEWAL_CHECK_INTERVAL_SECONDS}, e);
         } finally {
-            kuduClientWriteLock.unlock();
+            synchronized (clientLifecycleLock) {
+                renewing = false;
+                clientLifecycleLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Builds a new client and makes it the current one. Does nothing once the processor is shut down, so that a late
+     * re-login cannot install a client that nobody releases.
+     */
+    protected void createKuduClient(ProcessContext context) {
+        if (clientShutdown) {
+            return;
+        }
+
+        final KuduClient client;
+        if (kerberosUser != null) {
+            final KerberosUser user = kerberosUser;
+            final KerberosAction<KuduClient> kerberosAction = new KerberosAction<>(user, () -> {
+                final KuduClient kerberosClient = buildClient(context);
+                KuduCredentialsCache.shareCredentials(kerberosClient, kuduMasters, user.getPrincipal(), getLogger());
+                return kerberosClient;
+            }, getLogger());
+            client = kerberosAction.execute();
+        } else {
+            client = buildClient(context);
+        }
+
+        final KuduClientHandle handle = new KuduClientHandle(client, getLogger());
+        final KuduClientHandle previous;
+        synchronized (clientLifecycleLock) {
+            if (clientShutdown) {
+                handle.release(CLIENT_CLOSER);
+                return;
+            }
+            // New triggers pick up the new client at once; triggers still using the previous one keep it until they finish
+            previous = kuduClientHandle.getAndSet(handle);
+        }
+        if (previous != null) {
+            previous.release(CLIENT_CLOSER);
         }
     }
 
     protected KuduClient buildClient(final ProcessContext context) {
+        final KuduWorkerExecutor executor = createWorkerExecutor(context, getIdentifier());
+        workerExecutor = executor;
+        return buildKuduClient(context, executor);
+    }
+
+    /**
+     * Builds a Kudu client from the client properties of this class, for processors and controller services alike.
+     *
+     * @param context    Context holding the client properties
+     * @param identifier Identifier of the component, used to name the client threads
+     * @return Kudu client
+     */
+    static KuduClient buildKuduClient(final PropertyContext context, final String identifier) {
+        return buildKuduClient(context, createWorkerExecutor(context, identifier));
+    }
+
+    /**
+     * Creates the executor of the client worker threads, bounded by the worker count.
+     *
+     * @param context    Context holding the client properties
+     * @param identifier Identifier of the component, used to name the client threads
+     * @return Worker executor
+     */
+    static KuduWorkerExecutor createWorkerExecutor(final PropertyContext context, final String identifier) {
+        return new KuduWorkerExecutor(context.getProperty(WORKER_COUNT).asInteger(), new ClientThreadFactory(identifier));
+    }
+
+    private static KuduClient buildKuduClient(final PropertyContext context, final KuduWorkerExecutor nioExecutor) {
         final String masters = context.getProperty(KUDU_MASTERS).evaluateAttributeExpressions().getValue();
         final int operationTimeout = context.getProperty(KUDU_OPERATION_TIMEOUT_MS).evaluateAttributeExpressions().asTimePeriod(TimeUnit.MILLISECONDS).intValue();
         final int adminOperationTimeout = context.getProperty(KUDU_KEEP_ALIVE_PERIOD_TIMEOUT_MS).evaluateAttributeExpressions().asTimePeriod(TimeUnit.MILLISECONDS).intValue();
         final String saslProtocolName = context.getProperty(KUDU_SASL_PROTOCOL_NAME).evaluateAttributeExpressions().getValue();
-        final int workerCount = context.getProperty(WORKER_COUNT).asInteger();
-
-        // Create Executor following approach of Executors.newCachedThreadPool() using worker count as maximum pool size
-        final int corePoolSize = 0;
-        final long threadKeepAliveTime = 60;
-        final Executor nioExecutor = new ThreadPoolExecutor(
-                corePoolSize,
-                workerCount,
-                threadKeepAliveTime,
-                TimeUnit.SECONDS,
-                new SynchronousQueue<>(),
-                new ClientThreadFactory(getIdentifier())
-        );
 
+        // Event loops only take a thread once a connection is assigned to them
         return new KuduClient.KuduClientBuilder(masters)
                 .defaultOperationTimeoutMs(operationTimeout)
                 .defaultSocketReadTimeoutMs(adminOperationTimeout)
                 .saslProtocolName(saslProtocolName)
-                .workerCount(workerCount)
+                .workerCount(nioExecutor.getWorkerCount())
                 .nioExecutor(nioExecutor)
                 .build();
     }
 
     protected void executeOnKuduClient(Consumer<KuduClient> actionOnKuduClient) {
-        kuduClientReadLock.lock();
+        final KuduClientHandle handle = acquireKuduClient();
+        if (handle == null) {
+            actionOnKuduClient.accept(null);
+            return;
+        }
+
         try {
-            actionOnKuduClient.accept(kuduClient);
+            actionOnKuduClient.accept(handle.getClient());
         } finally {
-            kuduClientReadLock.unlock();
+            handle.release(CLIENT_CLOSER);
         }
     }
 
-    protected void flushKuduSession(final KuduSession kuduSession, boolean close, final List<RowError> rowErrors) throws KuduException {
+    /**
+     * @return Current client retained for the caller, who must release it with {@link #releaseKuduClient}, or null if no client was created
+     */
+    protected KuduClientHandle acquireKuduClient() {
+        while (true) {
+            final KuduClientHandle handle = kuduClientHandle.get();
+            // Retaining only fails for a client replaced and released since the get, so the next get sees its replacement
+            if (handle == null || handle.retain()) {
+                return handle;
+            }
+        }
+    }
+
+    protected void releaseKuduClient(final KuduClientHandle handle) {
+        handle.release(CLIENT_CLOSER);
+    }
+
+    protected void executeOnKuduClientAsUser(final Consumer<KuduClient> actionOnKuduClient) {
+        executeAsUser(() -> executeOnKuduClient(actionOnKuduClient));
+    }
+
+    /**
+     * Runs the action as the Kerberos user, if any. The ticket is renewed in the background, so this is a plain doAs;
+     * only when the user is logged out or the ticket was rejected does it fall back to a KerberosAction that logs in
+     * again on the calling thread.
+     */
+    protected void executeAsUser(final Runnable action) {
+        final KerberosUser user = getKerberosUser();
+        if (user == null) {
+            action.run();
+            return;
+        }
+
+        final PrivilegedExceptionAction<Void> privilegedAction = () -> {
+            action.run();
+            return null;
+        };
+
+        if (user.isLoggedIn()) {
+            try {
+                user.doAs(privilegedAction);
+                return;
+            } catch (final PrivilegedActionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new ProcessException(cause);
+            } catch (final SecurityException e) {
+                getLogger().warn("Kerberos ticket of {} was rejected; logging in again", new Object[] {user.getPrincipal()}, e);
+            }
+        }
+
+        final KerberosAction<Void> kerberosAction = new KerberosAction<>(user, privilegedAction, getLogger());
+        kerberosAction.execute();
+    }
+
+    /**
+     * Opens the table, loads the locations of all its tablets into the client cache and connects to every tablet server
+     * leading one of them, so that the first trigger after a start runs at steady-state speed instead of paying for master
+     * lookups and connection setup. Nothing is done when the table name depends on FlowFile attributes. Failures are only
+     * logged since the trigger path opens the table again and reports errors on the FlowFiles.
+     *
+     * @param tableNameProperty Table Name property of the processor
+     */
+    protected void warmUpTable(final PropertyValue tableNameProperty) {
+        if (tableNameProperty.isExpressionLanguagePresent()) {
+            return;
+        }
+
+        final String tableName = tableNameProperty.getValue();
+        final long start = System.nanoTime();
+        try {
+            executeOnKuduClientAsUser(kuduClient -> {
+                try {
+                    final KuduTable table = openTable(kuduClient, tableName);
+                    // Building tokens locates every tablet; an empty projection limited to one row is enough to open a connection
+                    final List<KuduScanToken> tokens = kuduClient.newScanTokenBuilder(table)
+                            .setProjectedColumnIndexes(Collections.emptyList())
+                            .limit(1)
+                            .build();
+
+                    final Set<String> leaders = new HashSet<>();
+                    for (final KuduScanToken token : tokens) {
+                        final LocatedTablet.Replica leader = token.getTablet().getLeaderReplica();
+                        if (leader != null && leaders.add(leader.getRpcHost() + ":" + leader.getRpcPort())) {
+                            final KuduScanner scanner = token.intoScanner(kuduClient);
+                            try {
+                                scanner.nextRows();
+                            } finally {
+                                scanner.close();
+                            }
+                        }
+                    }
+
+                    getLogger().info("Warmed up Kudu table {}: located {} tablets and connected to {} tablet servers in {} ms",
+                            new Object[] {tableName, tokens.size(), leaders.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (final Exception e) {
+            getLogger().warn("Failed to warm up Kudu table {}; it will be opened by the first trigger", new Object[] {tableName}, e);
+        }
+    }
+
+    protected KuduTable openTable(final KuduClient kuduClient, final String tableName) throws KuduException {
+        return kuduClient.openTable(tableName);
+    }
+
+    protected void flushKuduSession(final KuduWriteSink kuduSession, boolean close, final List<RowError> rowErrors) throws KuduException {
+        final long flushStart = System.nanoTime();
         final List<OperationResponse> responses = close ? kuduSession.close() : kuduSession.flush();
+        clientMetrics.recordFlush(System.nanoTime() - flushStart, responses);
 
         if (kuduSession.getFlushMode() == SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND) {
-            rowErrors.addAll(Arrays.asList(kuduSession.getPendingErrors().getRowErrors()));
+            rowErrors.addAll(kuduSession.getPendingRowErrors());
         } else {
             responses.stream()
                     .filter(OperationResponse::hasRowError)
@@ -248,6 +527,70 @@ public abstract class AbstractKuduProcessor extends AbstractProcessor {
         }
     }
 
+    /**
+     * Returns whether a row error was caused by a transient condition on the tablet server (timeouts, overload and
+     * throttling, or dropped connections) so that re-applying the operation may succeed. Other statuses, such as
+     * illegal state or aborted, are returned for errors that would fail again.
+     *
+     * @param rowError Row error returned by the Kudu session
+     * @return true when the operation can be retried
+     */
+    protected static boolean isRetryable(final RowError rowError) {
+        final Status status = rowError.getErrorStatus();
+        return status.isTimedOut()
+                || status.isServiceUnavailable()
+                || status.isNetworkError();
+    }
+
+    /**
+     * Returns whether a status indicates that the Kudu cluster is overloaded or not responding in time.
+     *
+     * @param status Status of a row error or Kudu exception
+     * @return true for ServiceUnavailable and timeout statuses
+     */
+    protected static boolean isThrottled(final Status status) {
+        return status.isServiceUnavailable() || status.isTimedOut();
+    }
+
+    /**
+     * Publish the write statistics of the Kudu client as counters and, when the report interval has elapsed,
+     * report tablet server response times and the slowest flushes.
+     *
+     * @param context    Process Context
+     * @param kuduClient Kudu client used by the trigger
+     * @param session    Process Session
+     */
+    protected void publishClientMetrics(final ProcessContext context, final KuduClient kuduClient, final ProcessSession session) {
+        clientMetrics.publishCounters(kuduClient, session);
+
+        final PropertyValue reportInterval = context.getProperty(CLIENT_METRICS_REPORT_INTERVAL);
+        if (!reportInterval.isSet()) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final long nextReport = nextClientMetricsReport.get();
+        if (now - nextReport >= 0 && nextClientMetricsReport.compareAndSet(nextReport, now + reportInterval.asTimePeriod(TimeUnit.NANOSECONDS))) {
+            clientMetrics.report(kuduClient, getLogger());
+            reportWorkerExecutor();
+        }
+    }
+
+    private void reportWorkerExecutor() {
+        final KuduWorkerExecutor executor = workerExecutor;
+        if (executor == null) {
+            return;
+        }
+
+        final KuduWorkerExecutor.Snapshot snapshot = executor.snapshot();
+        if (snapshot.isSaturated()) {
+            getLogger().warn("Kudu client event loops are saturated and may limit throughput: {}; consider raising {}",
+                    new Object[] {snapshot, WORKER_COUNT.getDisplayName()});
+        } else {
+            getLogger().info("Kudu client event loops: {}", new Object[] {snapshot});
+        }
+    }
+
     protected KerberosUser createKerberosKeytabUser(String principal, String keytab, ProcessContext context) {
         return new KerberosKeytabUser(principal, keytab) {
             @Override
@@ -310,13 +653,54 @@ public abstract class AbstractKuduProcessor extends AbstractProcessor {
         return results;
     }
 
+    private static final class CapabilityProbe {
+        private final boolean supported;
+        private final long expiresAt;
+
+        private CapabilityProbe(final boolean supported) {
+            this.supported = supported;
+            this.expiresAt = System.currentTimeMillis() + CAPABILITY_PROBE_TTL_MS;
+        }
+
+        private boolean isSupported() {
+            return supported;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
     @OnStopped
     public void shutdown() throws Exception {
+        final ScheduledFuture<?> renewal = kerberosRenewal;
+        if (renewal != null) {
+            renewal.cancel(false);
+            kerberosRenewal = null;
+        }
+        // A renewal already running may still build a client, which is closed instead of installed; wait for it to
+        // finish so that the user is not logged out underneath it
+        boolean interrupted = false;
+        synchronized (clientLifecycleLock) {
+            clientShutdown = true;
+            while (renewing) {
+                try {
+                    clientLifecycleLock.wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
         try {
-            if (this.kuduClient != null) {
+            final KuduClientHandle handle = kuduClientHandle.getAndSet(null);
+            if (handle != null) {
                 getLogger().debug("Closing KuduClient");
-                this.kuduClient.close();
-                this.kuduClient = null;
+                // Triggers are done once the processor is stopped, so the client closes right away
+                handle.release(Runnable::run);
             }
         } finally {
             if (kerberosUser != null) {
@@ -328,6 +712,13 @@ public abstract class AbstractKuduProcessor extends AbstractProcessor {
 
     @VisibleForTesting
     protected void buildPartialRow(Schema schema, PartialRow row, Record record, List<String> fieldNames, boolean ignoreNull, boolean lowercaseFields) {
+        buildRow(schema, KuduRowWriter.of(row), record, fieldNames, ignoreNull, lowercaseFields);
+    }
+
+    /**
+     * Converts the fields of a Record to the cells of a row of the table schema.
+     */
+    protected void buildRow(Schema schema, KuduRowWriter row, Record record, List<String> fieldNames, boolean ignoreNull, boolean lowercaseFields) {
         for (String recordFieldName : fieldNames) {
             String colName = recordFieldName;
             if (lowercaseFields) {
@@ -350,7 +741,7 @@ public abstract class AbstractKuduProcessor extends AbstractProcessor {
                 }
 
                 if (!ignoreNull) {
-                    row.setNull(colName);
+                    row.setNull(columnIndex);
                 }
             } else {
                 Object value = record.getValue(recordFieldName);
@@ -434,7 +825,8 @@ public abstract class AbstractKuduProcessor extends AbstractProcessor {
      * @param format          Date Format Pattern
      * @return Date object or null when value is null
      */
-    private Date getDate(final Object value, final String recordFieldName, final String format) {
+    @VisibleForTesting
+    Date getDate(final Object value, final String recordFieldName, final String format) {
         final LocalDate localDate = DataTypeUtils.toLocalDate(value, () -> DataTypeUtils.getDateTimeFormatter(format, ZoneId.systemDefault()), recordFieldName);
         return Date.valueOf(localDate);
     }
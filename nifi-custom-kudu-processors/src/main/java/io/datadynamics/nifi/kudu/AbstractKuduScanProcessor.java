@@ -0,0 +1,477 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduPredicate;
+import org.apache.kudu.client.KuduScanToken;
+import org.apache.kudu.client.KuduScanner;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.RowResultIterator;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyDescriptor.Builder;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.DataUnit;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
+import org.apache.nifi.serialization.WriteResult;
+import org.apache.nifi.serialization.record.Record;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.apache.nifi.expression.ExpressionLanguageScope.FLOWFILE_ATTRIBUTES;
+
+/**
+ * Base class of processors reading Kudu tables. Scan tokens are executed on a bounded pool of scan threads, which
+ * hand row batches to the trigger thread through a bounded queue; the trigger thread writes the rows with a
+ * RecordSetWriter, starting a new FlowFile every <Rows Per FlowFile> rows. The heap used by a scan is therefore
+ * bounded by the queue capacity and the batch size of the scanners, independently of the size of the table.
+ */
+public abstract class AbstractKuduScanProcessor extends AbstractKuduProcessor {
+
+    static final PropertyDescriptor RECORD_WRITER = new Builder()
+            .name("record-writer")
+            .displayName("Record Writer")
+            .description("The service for writing the scanned rows to outgoing FlowFiles.")
+            .identifiesControllerService(RecordSetWriterFactory.class)
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor ROWS_PER_FLOWFILE = new Builder()
+            .name("rows-per-flowfile")
+            .displayName("Rows Per FlowFile")
+            .description("The maximum number of rows written to one outgoing FlowFile. Zero writes all rows of a scan to a single FlowFile.")
+            .required(true)
+            .defaultValue("10000")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor SCAN_THREADS = new Builder()
+            .name("scan-threads")
+            .displayName("Scan Threads")
+            .description("The maximum number of tablets scanned at the same time, shared by all concurrent tasks of the processor.")
+            .required(true)
+            .defaultValue("4")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor SCAN_BUFFER_SIZE = new Builder()
+            .name("scan-buffer-size")
+            .displayName("Scan Buffer Size")
+            .description("The maximum number of row batches returned by the tablet servers that are held in memory while waiting to be written. " +
+                    "Scan threads pause when the buffer is full, which bounds the heap used by a scan.")
+            .required(true)
+            .defaultValue("16")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor SCAN_BATCH_SIZE_BYTES = new Builder()
+            .name("scan-batch-size-bytes")
+            .displayName("Scan Batch Size")
+            .description("The maximum amount of data returned by a tablet server in one scan round trip. If not set, the Kudu client default is used.")
+            .required(false)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor TABLE_NAME = new Builder()
+            .name("Table Name")
+            .description("The name of the Kudu Table to scan")
+            .required(true)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .expressionLanguageSupported(FLOWFILE_ATTRIBUTES)
+            .build();
+
+    static final PropertyDescriptor PROJECTED_COLUMNS = new Builder()
+            .name("projected-columns")
+            .displayName("Projected Columns")
+            .description("Comma separated names of the columns to read. If not set, all columns are read.")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .expressionLanguageSupported(FLOWFILE_ATTRIBUTES)
+            .build();
+
+    static final PropertyDescriptor PREDICATES = new Builder()
+            .name("predicates")
+            .displayName("Predicates")
+            .description("Conditions evaluated by the tablet servers, joined by AND. Each condition is 'column op value' with op one of =, <, <=, >, >=, " +
+                    "'column IN (value, ...)', 'column IS NULL' or 'column IS NOT NULL'. String values may be enclosed in single quotes, timestamps use " +
+                    "the yyyy-MM-dd HH:mm:ss[.ffffff] format or epoch milliseconds, and dates the yyyy-MM-dd format. " +
+                    "Example: event_date >= '2021-11-01' AND status IN ('DONE', 'FAILED')")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .expressionLanguageSupported(FLOWFILE_ATTRIBUTES)
+            .build();
+
+    protected static final Relationship REL_SUCCESS = new Relationship.Builder()
+            .name("success")
+            .description("FlowFiles containing the scanned rows are routed to this relationship")
+            .build();
+
+    protected static final Relationship REL_FAILURE = new Relationship.Builder()
+            .name("failure")
+            .description("Incoming FlowFiles are routed to this relationship when the scan fails")
+            .build();
+
+    protected static final Relationship REL_ORIGINAL = new Relationship.Builder()
+            .name("original")
+            .description("Incoming FlowFiles are routed to this relationship after the scan completed")
+            .build();
+
+    public static final String RECORD_COUNT_ATTR = "record.count";
+    public static final String TABLE_NAME_ATTR = "kudu.table.name";
+    public static final String FRAGMENT_ID_ATTR = "fragment.identifier";
+    public static final String FRAGMENT_INDEX_ATTR = "fragment.index";
+    public static final String FRAGMENT_COUNT_ATTR = "fragment.count";
+
+    private static final List<Record> END_OF_SCAN = Collections.emptyList();
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private volatile ExecutorService scanExecutor;
+
+    /**
+     * Creates the pool executing scan tokens, shared by all concurrent tasks of the processor.
+     *
+     * @param scanThreads Maximum number of tablets scanned at the same time
+     */
+    protected void createScanExecutor(final int scanThreads) {
+        final ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = defaultThreadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            thread.setName(String.format("%s[%s]-scan-%d", getClass().getSimpleName(), getIdentifier(), threadCount.getAndIncrement()));
+            return thread;
+        };
+        scanExecutor = new ThreadPoolExecutor(scanThreads, scanThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    protected ExecutorService getScanExecutor() {
+        return scanExecutor;
+    }
+
+    @OnStopped
+    public void shutdownScanExecutor() {
+        final ExecutorService executor = scanExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            scanExecutor = null;
+        }
+    }
+
+    /**
+     * Creates a scan token builder for the table with the projection, predicates and batch size of the properties.
+     *
+     * @param context     Process Context
+     * @param flowFile    Incoming FlowFile used to evaluate the properties, may be null
+     * @param kuduClient  Kudu client
+     * @param table       Scanned table
+     * @param columnNames Projected column names
+     * @return Scan token builder
+     * @throws IllegalArgumentException if the predicates are not valid for the table
+     */
+    protected KuduScanToken.KuduScanTokenBuilder newScanTokenBuilder(final ProcessContext context, final FlowFile flowFile, final KuduClient kuduClient,
+                                                                     final KuduTable table, final List<String> columnNames) {
+        final String predicateExpression = context.getProperty(PREDICATES).evaluateAttributeExpressions(flowFile).getValue();
+        final List<KuduPredicate> predicates = KuduPredicateParser.parse(predicateExpression, table.getSchema());
+
+        final KuduScanToken.KuduScanTokenBuilder tokenBuilder = kuduClient.newScanTokenBuilder(table).setProjectedColumnNames(columnNames);
+        predicates.forEach(tokenBuilder::addPredicate);
+        if (context.getProperty(SCAN_BATCH_SIZE_BYTES).isSet()) {
+            tokenBuilder.batchSizeBytes(context.getProperty(SCAN_BATCH_SIZE_BYTES).asDataSize(DataUnit.B).intValue());
+        }
+        return tokenBuilder;
+    }
+
+    /**
+     * @return Names of the projected columns, or all columns of the table when no projection is configured
+     * @throws IllegalArgumentException if a projected column does not exist
+     */
+    protected List<String> getProjectedColumns(final ProcessContext context, final FlowFile flowFile, final Schema tableSchema) {
+        final String projectedColumns = context.getProperty(PROJECTED_COLUMNS).evaluateAttributeExpressions(flowFile).getValue();
+        if (projectedColumns == null || projectedColumns.trim().isEmpty()) {
+            return tableSchema.getColumns().stream().map(ColumnSchema::getName).collect(Collectors.toList());
+        }
+
+        final List<String> columnNames = Arrays.stream(projectedColumns.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toList());
+        for (final String columnName : columnNames) {
+            if (!tableSchema.hasColumn(columnName)) {
+                throw new IllegalArgumentException(String.format("Projected column %s does not exist in the table", columnName));
+            }
+        }
+        return columnNames;
+    }
+
+    protected static Schema getProjectedSchema(final Schema tableSchema, final List<String> columnNames) {
+        return new Schema(columnNames.stream().map(tableSchema::getColumn).collect(Collectors.toList()));
+    }
+
+    /**
+     * Runs the scanners in parallel and writes the rows to FlowFiles transferred to success.
+     *
+     * @param context    Process Context
+     * @param session    Process Session
+     * @param parent     Incoming FlowFile used as parent of the outgoing FlowFiles, may be null
+     * @param scanners   Factories of the scanners, all sharing the same projection, invoked on the scan threads
+     * @param converter  Converter of the projected rows
+     * @param attributes Attributes added to every outgoing FlowFile
+     * @return Number of rows written
+     * @throws ProcessException if a scan or writing the rows failed, after removing the FlowFiles created so far
+     */
+    protected long scanToFlowFiles(final ProcessContext context, final ProcessSession session, final FlowFile parent,
+                                   final List<Callable<KuduScanner>> scanners, final KuduRowConverter converter, final Map<String, String> attributes) {
+        final int rowsPerFlowFile = context.getProperty(ROWS_PER_FLOWFILE).asInteger();
+        final RecordSetWriterFactory writerFactory = context.getProperty(RECORD_WRITER).asControllerService(RecordSetWriterFactory.class);
+        final BlockingQueue<List<Record>> batches = new ArrayBlockingQueue<>(context.getProperty(SCAN_BUFFER_SIZE).asInteger());
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final AtomicReference<Exception> scanFailure = new AtomicReference<>();
+
+        final List<Future<?>> scans = new ArrayList<>(scanners.size());
+        for (final Callable<KuduScanner> scannerFactory : scanners) {
+            scans.add(scanExecutor.submit(() -> scan(scannerFactory, converter, batches, cancelled, scanFailure)));
+        }
+
+        final OutputFlowFiles output = new OutputFlowFiles(session, parent, writerFactory, converter, rowsPerFlowFile, attributes, isEmptyScanWritten());
+        try {
+            int completedScans = 0;
+            while (completedScans < scanners.size() && scanFailure.get() == null) {
+                final List<Record> batch = batches.take();
+                if (batch == END_OF_SCAN) {
+                    completedScans++;
+                    continue;
+                }
+                for (final Record record : batch) {
+                    output.write(record);
+                }
+            }
+
+            if (scanFailure.get() != null) {
+                throw new ProcessException("Failed to scan Kudu table", scanFailure.get());
+            }
+            output.finish();
+            session.transfer(output.flowFiles, REL_SUCCESS);
+            return output.totalRows;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            output.abort();
+            throw new ProcessException("Interrupted while scanning Kudu table", e);
+        } catch (final IOException | RuntimeException e) {
+            output.abort();
+            throw e instanceof ProcessException ? (ProcessException) e : new ProcessException(e);
+        } finally {
+            cancelled.set(true);
+            scans.forEach(scan -> scan.cancel(true));
+        }
+    }
+
+    /**
+     * @return whether a scan without rows writes one FlowFile with an empty record set, so that downstream flows see its completion
+     */
+    protected boolean isEmptyScanWritten() {
+        return true;
+    }
+
+    private void scan(final Callable<KuduScanner> scannerFactory, final KuduRowConverter converter, final BlockingQueue<List<Record>> batches,
+                           final AtomicBoolean cancelled, final AtomicReference<Exception> scanFailure) {
+        KuduScanner scanner = null;
+        try {
+            scanner = scannerFactory.call();
+            while (scanner.hasMoreRows() && !cancelled.get()) {
+                final RowResultIterator rows = scanner.nextRows();
+                // Rows are converted on the scan threads, which also keeps the batches independent of RowResult reuse
+                final List<Record> batch = new ArrayList<>(rows.getNumRows());
+                while (rows.hasNext()) {
+                    batch.add(converter.toRecord(rows.next()));
+                }
+                if (!batch.isEmpty() && !offer(batches, batch, cancelled)) {
+                    return;
+                }
+            }
+        } catch (final Exception e) {
+            scanFailure.compareAndSet(null, e);
+        } finally {
+            if (scanner != null) {
+                try {
+                    scanner.close();
+                } catch (final Exception e) {
+                    getLogger().debug("Failed to close Kudu scanner", e);
+                }
+            }
+            offer(batches, END_OF_SCAN, cancelled);
+        }
+    }
+
+    private static boolean offer(final BlockingQueue<List<Record>> batches, final List<Record> batch, final AtomicBoolean cancelled) {
+        try {
+            while (!cancelled.get()) {
+                if (batches.offer(batch, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Outgoing FlowFiles of a scan, rolled over every rowsPerFlowFile rows
+     */
+    private static class OutputFlowFiles {
+        private final ProcessSession session;
+        private final FlowFile parent;
+        private final RecordSetWriterFactory writerFactory;
+        private final KuduRowConverter converter;
+        private final int rowsPerFlowFile;
+        private final Map<String, String> attributes;
+        private final boolean emptyScanWritten;
+        private final String fragmentId = UUID.randomUUID().toString();
+        private final List<FlowFile> flowFiles = new ArrayList<>();
+
+        private FlowFile flowFile;
+        private OutputStream out;
+        private RecordSetWriter writer;
+        private int rows;
+        private long totalRows;
+
+        private OutputFlowFiles(final ProcessSession session, final FlowFile parent, final RecordSetWriterFactory writerFactory, final KuduRowConverter converter,
+                                final int rowsPerFlowFile, final Map<String, String> attributes, final boolean emptyScanWritten) {
+            this.session = session;
+            this.parent = parent;
+            this.writerFactory = writerFactory;
+            this.converter = converter;
+            this.rowsPerFlowFile = rowsPerFlowFile;
+            this.attributes = attributes;
+            this.emptyScanWritten = emptyScanWritten;
+        }
+
+        private void write(final Record record) throws IOException {
+            if (writer == null) {
+                open();
+            }
+            writer.write(record);
+            rows++;
+            totalRows++;
+            if (rowsPerFlowFile > 0 && rows >= rowsPerFlowFile) {
+                close();
+            }
+        }
+
+        private void open() throws IOException {
+            flowFile = parent == null ? session.create() : session.create(parent);
+            out = session.write(flowFile);
+            try {
+                writer = writerFactory.createWriter(null, converter.getRecordSchema(), out, parent == null ? Collections.emptyMap() : parent.getAttributes());
+                writer.beginRecordSet();
+            } catch (final Exception e) {
+                out.close();
+                out = null;
+                throw e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+            rows = 0;
+        }
+
+        private void close() throws IOException {
+            final WriteResult writeResult;
+            final String mimeType;
+            try {
+                writeResult = writer.finishRecordSet();
+                mimeType = writer.getMimeType();
+            } finally {
+                writer.close();
+                out.close();
+                writer = null;
+                out = null;
+            }
+
+            final Map<String, String> flowFileAttributes = new HashMap<>(writeResult.getAttributes());
+            flowFileAttributes.putAll(attributes);
+            flowFileAttributes.put(RECORD_COUNT_ATTR, String.valueOf(writeResult.getRecordCount()));
+            flowFileAttributes.put(CoreAttributes.MIME_TYPE.key(), mimeType);
+            flowFileAttributes.put(FRAGMENT_ID_ATTR, fragmentId);
+            flowFileAttributes.put(FRAGMENT_INDEX_ATTR, String.valueOf(flowFiles.size()));
+            flowFiles.add(session.putAllAttributes(flowFile, flowFileAttributes));
+            flowFile = null;
+        }
+
+        /**
+         * Closes the last FlowFile and sets the number of FlowFiles on all of them
+         */
+        private void finish() throws IOException {
+            if (writer == null && flowFiles.isEmpty() && emptyScanWritten) {
+                open();
+            }
+            if (writer != null) {
+                close();
+            }
+            // Also replaces the fragment.count inherited from the incoming FlowFile, e.g. the number of tokens of a scan token
+            final String fragmentCount = String.valueOf(flowFiles.size());
+            flowFiles.replaceAll(output -> session.putAttribute(output, FRAGMENT_COUNT_ATTR, fragmentCount));
+        }
+
+        private void abort() {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+                if (out != null) {
+                    out.close();
+                }
+            } catch (final IOException ignored) {
+                // The FlowFile is removed below
+            }
+            if (flowFile != null) {
+                session.remove(flowFile);
+            }
+            session.remove(flowFiles);
+            flowFiles.clear();
+        }
+    }
+}
@@ -22,11 +22,17 @@ import org.apache.nifi.annotation.behavior.*;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateManager;
 import org.apache.nifi.components.*;
 import org.apache.nifi.components.PropertyDescriptor.Builder;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessSessionFactory;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
@@ -34,8 +40,6 @@ import org.apache.nifi.record.path.FieldValue;
 import org.apache.nifi.record.path.RecordPath;
 import org.apache.nifi.record.path.RecordPathResult;
 import org.apache.nifi.record.path.validation.RecordPathValidator;
-import org.apache.nifi.security.krb.KerberosAction;
-import org.apache.nifi.security.krb.KerberosUser;
 import org.apache.nifi.serialization.RecordReader;
 import org.apache.nifi.serialization.RecordReaderFactory;
 import org.apache.nifi.serialization.record.Record;
@@ -44,10 +48,18 @@ import org.apache.nifi.serialization.record.RecordFieldType;
 import org.apache.nifi.serialization.record.RecordSet;
 
 import javax.security.auth.login.LoginException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.security.PrivilegedExceptionAction;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.apache.nifi.expression.ExpressionLanguageScope.*;
@@ -61,7 +73,14 @@ import static org.apache.nifi.expression.ExpressionLanguageScope.*;
 @CapabilityDescription("Reads records from an incoming FlowFile using the provided Record Reader, and writes those records " +
         "to the specified Kudu's table. The schema for the Kudu table is inferred from the schema of the Record Reader." +
         " If any error occurs while reading records from the input, or writing records to Kudu, the FlowFile will be routed to failure")
-@WritesAttribute(attribute = "record.count", description = "Number of records written to Kudu")
+@WritesAttributes({
+        @WritesAttribute(attribute = "record.count", description = "Number of records written to Kudu"),
+        @WritesAttribute(attribute = "kudu.records.applied", description = "When <Resume From Checkpoint> is enabled, the number of leading records " +
+                "of a FlowFile routed to failure that are known to be applied to Kudu")
+})
+@ReadsAttribute(attribute = "kudu.records.applied", description = "When <Resume From Checkpoint> is enabled, the number of leading records to skip")
+@Stateful(scopes = Scope.LOCAL, description = "When <Resume From Checkpoint> is enabled and the Rollback failure strategy is used, the number of leading " +
+        "records known to be applied to Kudu is stored per FlowFile UUID so that the next attempt skips them.")
 
 public class AddNineHoursPutKudu extends AbstractKuduProcessor {
 
@@ -229,6 +248,234 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
             .expressionLanguageSupported(FLOWFILE_ATTRIBUTES)
             .build();
 
+    protected static final PropertyDescriptor MAX_ROW_RETRIES = new Builder()
+            .name("Max Row Retries")
+            .description("The maximum number of times an operation that failed with a transient error (timeout, service unavailable or throttling, " +
+                    "network error) is re-applied before its FlowFile is routed to failure. Only the failed operations are re-applied, " +
+                    "not the whole FlowFile. Set to 0 to disable retries. Note that a timed out INSERT may have been applied by the " +
+                    "tablet server, in which case its retry fails with an 'already present' error; use UPSERT or INSERT_IGNORE when this matters.")
+            .defaultValue("3")
+            .required(true)
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .expressionLanguageSupported(VARIABLE_REGISTRY)
+            .build();
+
+    protected static final PropertyDescriptor ROW_RETRY_INITIAL_BACKOFF = new Builder()
+            .name("Row Retry Initial Backoff")
+            .description("The time to wait before the first retry of failed operations. The wait doubles with every attempt, " +
+                    "up to <Row Retry Max Backoff>, and is randomized by up to half of its value.")
+            .defaultValue("100 ms")
+            .required(true)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .expressionLanguageSupported(VARIABLE_REGISTRY)
+            .build();
+
+    protected static final PropertyDescriptor ROW_RETRY_MAX_BACKOFF = new Builder()
+            .name("Row Retry Max Backoff")
+            .description("The maximum time to wait between two retries of failed operations.")
+            .defaultValue("5 sec")
+            .required(true)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .expressionLanguageSupported(VARIABLE_REGISTRY)
+            .build();
+
+    protected static final PropertyDescriptor RESUME_FROM_CHECKPOINT = new Builder()
+            .name("Resume From Checkpoint")
+            .description("If set to true, the number of leading records of a FlowFile that are known to be applied to Kudu is recorded when the " +
+                    "FlowFile fails, in the 'kudu.records.applied' attribute when routed to failure or in local state when the session is rolled back. " +
+                    "The next attempt for the same FlowFile skips these records instead of replaying the whole FlowFile. " +
+                    "The FlowFile content must not be modified between attempts.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    protected static final PropertyDescriptor USE_TRANSACTIONS = new Builder()
+            .name("Use Transactions")
+            .description("If set to true, all FlowFiles of a batch (see <FlowFiles per Batch>) are written in a single Kudu multi-row transaction. " +
+                    "The transaction is committed only if every record of the batch is written, otherwise it is rolled back together with the " +
+                    "NiFi session, so no partial writes remain and plain INSERT operations can be retried safely. Set <FlowFiles per Batch> to 1 " +
+                    "for one transaction per FlowFile. Requires a Kudu cluster with the transaction manager enabled; Kudu 1.15 supports only " +
+                    "INSERT and INSERT_IGNORE operations in transactions.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    protected static final PropertyDescriptor CIRCUIT_BREAKER_FAILURE_RATE = new Builder()
+            .name("Circuit Breaker Failure Rate")
+            .description("The percentage of operations failing with ServiceUnavailable or timeout errors, over the last 10 seconds, " +
+                    "that opens the circuit breaker shared by the concurrent tasks of this processor. Other processors writing to the same " +
+                    "table keep their own breaker. While the breaker is open, " +
+                    "the processor yields without pulling FlowFiles; afterwards a growing share of triggers probes the cluster until writes succeed again. " +
+                    "Set to 0 to disable the circuit breaker.")
+            .defaultValue("50")
+            .required(true)
+            .addValidator(StandardValidators.createLongValidator(0, 100, true))
+            .build();
+
+    protected static final PropertyDescriptor CIRCUIT_BREAKER_OPEN_DURATION = new Builder()
+            .name("Circuit Breaker Open Duration")
+            .description("The time the circuit breaker stays open before probing the Kudu cluster again.")
+            .defaultValue("30 sec")
+            .required(true)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor STAGE_METRICS_LOG_INTERVAL = new Builder()
+            .name("Stage Metrics Log Interval")
+            .description("If specified, the processor periodically logs the count, mean and percentiles of the time spent in each stage of the " +
+                    "write path (read, decode, build row, apply and flush) since it was scheduled. The total time per stage of each trigger " +
+                    "is always published as processor counters.")
+            .required(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor GROUP_COMMIT = new Builder()
+            .name("Group Commit")
+            .description("If set to true, the concurrent tasks of the processor do not flush their own Kudu sessions: each task hands its buffered " +
+                    "operations to a shared group commit and waits for their outcome, while one task writes the operations of all waiting tasks " +
+                    "in a single batch. This gives the throughput of large batches with many concurrent tasks writing few records each. " +
+                    "<Flush Mode> is not used; a task hands over its operations when it flushes or has buffered <Max Records per Batch> of them. " +
+                    "Not supported with <Use Transactions>.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    protected static final PropertyDescriptor APPLY_LANES = new Builder()
+            .name("Apply Lanes")
+            .description("If greater than 0, operations are not written by the tasks themselves but handed to this number of apply lanes, each a " +
+                    "single thread writing through its own Kudu session. The lane of an operation is chosen by hashing its table and primary key, " +
+                    "so operations on the same key are applied in the order they were read, even when they come from different FlowFiles or " +
+                    "concurrent tasks, while operations on different keys are written in parallel. A task waits for the outcome of its operations " +
+                    "when it flushes. <Flush Mode> is not used. The order only holds for operations applied once: a retried operation would be " +
+                    "re-applied after later operations on its key, so <Max Row Retries> must be 0. Not supported with <Use Transactions> or <Group Commit>.")
+            .defaultValue("0")
+            .required(true)
+            .addValidator(StandardValidators.createLongValidator(0, 256, true))
+            .build();
+
+    protected static final PropertyDescriptor SORT_BY_PRIMARY_KEY = new Builder()
+            .name("Sort By Primary Key")
+            .description("If set to true, the operations of a batch are held until the batch is complete and then applied ordered by table and " +
+                    "primary key, which is the order of the rows within a tablet and makes writes and later compactions cheaper for randomly " +
+                    "ordered input such as bulk backfills. Operations on the same key keep their order. When the sort keys exceed " +
+                    "<Sort Memory Budget>, sorted runs are spilled to <Sort Spill Directory> and merged when the batch is applied. " +
+                    "Not supported with <Resume From Checkpoint>.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    protected static final PropertyDescriptor SORT_MEMORY_BUDGET = new Builder()
+            .name("Sort Memory Budget")
+            .description("When <Sort By Primary Key> is true, the size of the rows held in memory above which they are spilled to disk. " +
+                    "Rows are held encoded together with their sort key, and only built again as operations while the sorted batch is applied, " +
+                    "one <Max Records per Batch> chunk at a time.")
+            .defaultValue("64 MB")
+            .required(true)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor SORT_SPILL_DIRECTORY = new Builder()
+            .name("Sort Spill Directory")
+            .description("When <Sort By Primary Key> is true, the local directory of the spilled sort runs. Defaults to the temporary directory of the JVM.")
+            .required(false)
+            .addValidator(StandardValidators.createDirectoryExistsValidator(false, true))
+            .build();
+
+    protected static final PropertyDescriptor OFF_HEAP_STAGING = new Builder()
+            .name("Off-Heap Staging")
+            .description("If set to true, the cells of the converted rows of a batch are staged in reusable off-heap buffers laid out by table " +
+                    "schema, and the Kudu operations are only built again when they are applied, one <Max Records per Batch> chunk at a time. " +
+                    "Rows are converted from the Records straight into the buffers, without building an operation first. " +
+                    "The heap used by a batch then no longer grows with <FlowFiles per Batch> and <Max Records per Batch>. " +
+                    "Not supported with <Resume From Checkpoint> or <Sort By Primary Key>.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    protected static final PropertyDescriptor OFF_HEAP_STAGING_POOL_SIZE = new Builder()
+            .name("Off-Heap Staging Pool Size")
+            .description("When <Off-Heap Staging> is true, the total size of the released off-heap buffers kept for reuse by the next batches. " +
+                    "Buffers are allocated in 1 MB blocks.")
+            .defaultValue("64 MB")
+            .required(true)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor OFF_HEAP_STAGING_BUDGET = new Builder()
+            .name("Off-Heap Staging Budget")
+            .description("When <Off-Heap Staging> is true, the off-heap buffer size a batch may stage. When it is reached, the staged rows are " +
+                    "applied to Kudu before more rows are staged, so the off-heap memory of the processor stays within this budget per concurrent task. " +
+                    "A single row larger than the budget is still staged.")
+            .defaultValue("64 MB")
+            .required(true)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor INCREMENTAL_COMMIT = new Builder()
+            .name("Incremental Commit")
+            .description("If set to true, FlowFiles are transferred to success and committed in their own NiFi session as soon as all their " +
+                    "records are acknowledged by Kudu, instead of after the last FlowFile of the batch (see <FlowFiles per Batch>) has been written. " +
+                    "The Kudu session is then flushed every <Max Records per Batch> records whatever the <Flush Mode>. FlowFiles with failed " +
+                    "records are routed at the end of the batch as before. Not supported with <Use Transactions>, <Resume From Checkpoint>, " +
+                    "<Linger Time> or <Sort By Primary Key>, which holds the operations until the end of the batch.")
+            .defaultValue("false")
+            .allowableValues("true", "false")
+            .required(true)
+            .build();
+
+    protected static final PropertyDescriptor STREAMING_FLUSH_RECORDS = new Builder()
+            .name("Streaming Flush Records")
+            .description("If set, the Kudu session is flushed every this many records, failed operations are retried right away, and the per " +
+                    "operation tracking state is then released, keeping only the number of failed records and a few error messages per FlowFile. " +
+                    "The memory used by a batch is then bounded whatever the number of records of its FlowFiles, so that single FlowFiles with " +
+                    "millions of records can be written. Not supported with <Use Transactions>, <Resume From Checkpoint> or <Sort By Primary Key>, " +
+                    "which holds the operations until the end of the batch.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor STREAMING_HEAP_BUDGET = new Builder()
+            .name("Streaming Heap Budget")
+            .description("When <Streaming Flush Records> is set, the estimated heap of the operations tracked since the last release above which " +
+                    "a task flushes and releases early. Each tracked operation counts its object overhead, the fixed size of a row of its table and " +
+                    "the length of the string and binary values of its Record, so wide rows are released after fewer records. Rows held by " +
+                    "<Off-Heap Staging> are not tracked as operations and do not count.")
+            .required(false)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor LINGER_TIME = new Builder()
+            .name("Linger Time")
+            .description("If set, the Kudu session and the NiFi session are kept open across triggers, so that the records of many small FlowFiles " +
+                    "are written in large Kudu batches. The batch is flushed, and its FlowFiles are transferred and committed, once it is older than this " +
+                    "time or holds <Linger Max Records> records or <Linger Max Bytes> of FlowFile content; FlowFiles are therefore only transferred once " +
+                    "their rows are durable in Kudu. Each concurrent task lingers its own batch, which the next trigger of any task picks up; batches are " +
+                    "only handed over between triggers, so tasks never wait for each other's records. Not supported with <Use Transactions>.")
+            .required(false)
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor LINGER_MAX_RECORDS = new Builder()
+            .name("Linger Max Records")
+            .description("When <Linger Time> is set, the number of records that completes a batch before it reaches the linger time.")
+            .defaultValue("10000")
+            .required(true)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    protected static final PropertyDescriptor LINGER_MAX_BYTES = new Builder()
+            .name("Linger Max Bytes")
+            .description("When <Linger Time> is set, the total FlowFile content size that completes a batch before it reaches the linger time.")
+            .defaultValue("8 MB")
+            .required(true)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
     protected static final Relationship REL_SUCCESS = new Relationship.Builder()
             .name("success")
             .description("A FlowFile is routed to this relationship after it has been successfully stored in Kudu")
@@ -239,6 +486,7 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
             .build();
 
     public static final String RECORD_COUNT_ATTR = "record.count";
+    public static final String APPLIED_RECORDS_ATTR = "kudu.records.applied";
 
     // Properties set in onScheduled.
     private volatile int batchSize = 100;
@@ -248,6 +496,40 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
     private volatile RecordPath dataRecordPath;
     private volatile String failureStrategy;
     private volatile boolean supportsInsertIgnoreOp;
+    private volatile int maxRowRetries;
+    private volatile long rowRetryInitialBackoffMs;
+    private volatile long rowRetryMaxBackoffMs;
+    private volatile boolean resumeFromCheckpoint;
+    private volatile boolean useTransactions;
+    private volatile KuduCircuitBreaker circuitBreaker;
+    private volatile long stageMetricsLogIntervalNanos;
+    private final AtomicLong nextStageMetricsLog = new AtomicLong();
+    private final WriteStageMetrics stageMetrics = new WriteStageMetrics();
+    private final Object checkpointLock = new Object();
+
+    private static final int STAGING_BUFFER_SIZE = 1024 * 1024;
+
+    // Estimated heap of a tracked operation besides its cells: map entry, Operation and PartialRow objects
+    private static final int TRACKED_OPERATION_OVERHEAD_BYTES = 160;
+
+    private volatile KuduGroupCommitter groupCommitter;
+    private volatile KuduApplyLanes applyLanes;
+    private volatile boolean sortByPrimaryKey;
+    private volatile long sortMemoryBudgetBytes;
+    private volatile Path sortSpillDirectory;
+    private volatile KuduStagingWriteSink.BufferPool stagingPool;
+    private volatile long stagingBudgetBytes;
+    private volatile boolean incrementalCommit;
+    private volatile long streamingFlushRecords;
+    private volatile long streamingHeapBudgetBytes;
+
+    private volatile long lingerNanos;
+    private volatile long lingerMaxRecords;
+    private volatile long lingerMaxBytes;
+    private volatile ScheduledExecutorService lingerFlusher;
+    // Guards the batches lingering between triggers; a batch taken by a trigger is owned by it until handed back
+    private final Object lingerLock = new Object();
+    private final Deque<LingeringBatch> idleLingeringBatches = new ArrayDeque<>();
 
     @Override
     protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
@@ -269,6 +551,29 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
         properties.add(FLOWFILE_BATCH_SIZE);
         properties.add(BATCH_SIZE);
         properties.add(IGNORE_NULL);
+        properties.add(MAX_ROW_RETRIES);
+        properties.add(ROW_RETRY_INITIAL_BACKOFF);
+        properties.add(ROW_RETRY_MAX_BACKOFF);
+        properties.add(RESUME_FROM_CHECKPOINT);
+        properties.add(USE_TRANSACTIONS);
+        properties.add(GROUP_COMMIT);
+        properties.add(APPLY_LANES);
+        properties.add(SORT_BY_PRIMARY_KEY);
+        properties.add(SORT_MEMORY_BUDGET);
+        properties.add(SORT_SPILL_DIRECTORY);
+        properties.add(OFF_HEAP_STAGING);
+        properties.add(OFF_HEAP_STAGING_POOL_SIZE);
+        properties.add(OFF_HEAP_STAGING_BUDGET);
+        properties.add(INCREMENTAL_COMMIT);
+        properties.add(STREAMING_FLUSH_RECORDS);
+        properties.add(STREAMING_HEAP_BUDGET);
+        properties.add(LINGER_TIME);
+        properties.add(LINGER_MAX_RECORDS);
+        properties.add(LINGER_MAX_BYTES);
+        properties.add(CIRCUIT_BREAKER_FAILURE_RATE);
+        properties.add(CIRCUIT_BREAKER_OPEN_DURATION);
+        properties.add(STAGE_METRICS_LOG_INTERVAL);
+        properties.add(CLIENT_METRICS_REPORT_INTERVAL);
         properties.add(KUDU_OPERATION_TIMEOUT_MS);
         properties.add(KUDU_KEEP_ALIVE_PERIOD_TIMEOUT_MS);
         properties.add(WORKER_COUNT);
@@ -289,8 +594,12 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
         batchSize = context.getProperty(BATCH_SIZE).evaluateAttributeExpressions().asInteger();
         ffbatch   = context.getProperty(FLOWFILE_BATCH_SIZE).evaluateAttributeExpressions().asInteger();
         flushMode = SessionConfiguration.FlushMode.valueOf(context.getProperty(FLUSH_MODE).getValue().toUpperCase());
+        maxRowRetries = context.getProperty(MAX_ROW_RETRIES).evaluateAttributeExpressions().asInteger();
+        rowRetryInitialBackoffMs = context.getProperty(ROW_RETRY_INITIAL_BACKOFF).evaluateAttributeExpressions().asTimePeriod(TimeUnit.MILLISECONDS);
+        rowRetryMaxBackoffMs = context.getProperty(ROW_RETRY_MAX_BACKOFF).evaluateAttributeExpressions().asTimePeriod(TimeUnit.MILLISECONDS);
         createKerberosUserAndOrKuduClient(context);
         supportsInsertIgnoreOp = supportsIgnoreOperations();
+        warmUpTable(context.getProperty(TABLE_NAME));
 
         final String operationRecordPathValue = context.getProperty(OPERATION_RECORD_PATH).getValue();
         if (operationRecordPathValue == null) {
@@ -304,84 +613,571 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
         dataRecordPath = dataRecordPathValue == null ? null : RecordPath.compile(dataRecordPathValue);
 
         failureStrategy = context.getProperty(FAILURE_STRATEGY).getValue();
+        resumeFromCheckpoint = context.getProperty(RESUME_FROM_CHECKPOINT).asBoolean();
+        useTransactions = context.getProperty(USE_TRANSACTIONS).asBoolean();
+
+        final int circuitBreakerFailureRate = context.getProperty(CIRCUIT_BREAKER_FAILURE_RATE).asInteger();
+        if (circuitBreakerFailureRate > 0) {
+            // Tables named by FlowFile attributes share one breaker for the cluster
+            final String masters = context.getProperty(KUDU_MASTERS).evaluateAttributeExpressions().getValue();
+            final PropertyValue tableName = context.getProperty(TABLE_NAME);
+            final String breakerKey = masters + "/" + (tableName.isExpressionLanguagePresent() ? "*" : tableName.getValue());
+            final long openDurationMs = context.getProperty(CIRCUIT_BREAKER_OPEN_DURATION).asTimePeriod(TimeUnit.MILLISECONDS);
+            circuitBreaker = new KuduCircuitBreaker(breakerKey, circuitBreakerFailureRate, openDurationMs);
+        } else {
+            circuitBreaker = null;
+        }
+
+        // A group holds at most one full buffer of every concurrent task
+        groupCommitter = context.getProperty(GROUP_COMMIT).asBoolean()
+                ? new KuduGroupCommitter(batchSize * Math.max(1, context.getMaxConcurrentTasks()))
+                : null;
+
+        final int laneCount = context.getProperty(APPLY_LANES).asInteger();
+        applyLanes = laneCount > 0 ? new KuduApplyLanes(laneCount, batchSize, "PutKudu[" + getIdentifier() + "]-lane", getLogger()) : null;
+
+        sortByPrimaryKey = context.getProperty(SORT_BY_PRIMARY_KEY).asBoolean();
+        sortMemoryBudgetBytes = context.getProperty(SORT_MEMORY_BUDGET).asDataSize(DataUnit.B).longValue();
+        final String spillDirectory = context.getProperty(SORT_SPILL_DIRECTORY).getValue();
+        sortSpillDirectory = Paths.get(spillDirectory == null ? System.getProperty("java.io.tmpdir") : spillDirectory);
+
+        if (context.getProperty(OFF_HEAP_STAGING).asBoolean()) {
+            final long poolSize = context.getProperty(OFF_HEAP_STAGING_POOL_SIZE).asDataSize(DataUnit.B).longValue();
+            stagingPool = new KuduStagingWriteSink.BufferPool(STAGING_BUFFER_SIZE, (int) Math.min(Integer.MAX_VALUE, poolSize / STAGING_BUFFER_SIZE));
+            stagingBudgetBytes = context.getProperty(OFF_HEAP_STAGING_BUDGET).asDataSize(DataUnit.B).longValue();
+        } else {
+            stagingPool = null;
+        }
+
+        incrementalCommit = context.getProperty(INCREMENTAL_COMMIT).asBoolean();
+        final PropertyValue streamingFlushRecordsValue = context.getProperty(STREAMING_FLUSH_RECORDS);
+        streamingFlushRecords = streamingFlushRecordsValue.isSet() ? streamingFlushRecordsValue.asLong() : 0;
+        final PropertyValue streamingHeapBudget = context.getProperty(STREAMING_HEAP_BUDGET);
+        streamingHeapBudgetBytes = streamingHeapBudget.isSet() ? streamingHeapBudget.asDataSize(DataUnit.B).longValue() : 0;
+
+        final PropertyValue lingerTime = context.getProperty(LINGER_TIME);
+        lingerNanos = lingerTime.isSet() ? lingerTime.asTimePeriod(TimeUnit.NANOSECONDS) : 0;
+        lingerMaxRecords = context.getProperty(LINGER_MAX_RECORDS).asLong();
+        lingerMaxBytes = context.getProperty(LINGER_MAX_BYTES).asDataSize(DataUnit.B).longValue();
+        if (lingerNanos > 0) {
+            final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "PutKudu[" + getIdentifier() + "]-linger");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long checkIntervalNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), lingerNanos / 4);
+            flusher.scheduleWithFixedDelay(this::completeExpiredBatches, checkIntervalNanos, checkIntervalNanos, TimeUnit.NANOSECONDS);
+            lingerFlusher = flusher;
+        }
+
+        stageMetrics.reset();
+        final PropertyValue stageMetricsLogInterval = context.getProperty(STAGE_METRICS_LOG_INTERVAL);
+        stageMetricsLogIntervalNanos = stageMetricsLogInterval.isSet() ? stageMetricsLogInterval.asTimePeriod(TimeUnit.NANOSECONDS) : 0;
+        nextStageMetricsLog.set(System.nanoTime() + stageMetricsLogIntervalNanos);
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext context) {
+        final List<ValidationResult> results = new ArrayList<>(super.customValidate(context));
+        if (context.getProperty(LINGER_TIME).isSet() && context.getProperty(USE_TRANSACTIONS).asBoolean()) {
+            results.add(new ValidationResult.Builder()
+                    .subject(LINGER_TIME.getDisplayName())
+                    .valid(false)
+                    .explanation("lingering batches cannot be written in Kudu transactions")
+                    .build());
+        }
+        if (context.getProperty(GROUP_COMMIT).asBoolean() && context.getProperty(USE_TRANSACTIONS).asBoolean()) {
+            results.add(new ValidationResult.Builder()
+                    .subject(GROUP_COMMIT.getDisplayName())
+                    .valid(false)
+                    .explanation("operations of different tasks cannot be committed together in Kudu transactions")
+                    .build());
+        }
+        if (context.getProperty(APPLY_LANES).asInteger() > 0
+                && (context.getProperty(USE_TRANSACTIONS).asBoolean() || context.getProperty(GROUP_COMMIT).asBoolean())) {
+            results.add(new ValidationResult.Builder()
+                    .subject(APPLY_LANES.getDisplayName())
+                    .valid(false)
+                    .explanation("apply lanes write through their own Kudu sessions, outside of transactions and group commits")
+                    .build());
+        }
+        if (context.getProperty(APPLY_LANES).asInteger() > 0 && context.getProperty(MAX_ROW_RETRIES).evaluateAttributeExpressions().asInteger() > 0) {
+            results.add(new ValidationResult.Builder()
+                    .subject(APPLY_LANES.getDisplayName())
+                    .valid(false)
+                    .explanation("retried operations would be re-applied after later operations on the same key, so Max Row Retries must be 0")
+                    .build());
+        }
+        if (context.getProperty(OFF_HEAP_STAGING).asBoolean()
+                && (context.getProperty(RESUME_FROM_CHECKPOINT).asBoolean() || context.getProperty(SORT_BY_PRIMARY_KEY).asBoolean())) {
+            results.add(new ValidationResult.Builder()
+                    .subject(OFF_HEAP_STAGING.getDisplayName())
+                    .valid(false)
+                    .explanation("staged rows are not kept as operations, which checkpoints and sorting rely on")
+                    .build());
+        }
+        if (context.getProperty(INCREMENTAL_COMMIT).asBoolean() && (context.getProperty(USE_TRANSACTIONS).asBoolean()
+                || context.getProperty(RESUME_FROM_CHECKPOINT).asBoolean() || context.getProperty(LINGER_TIME).isSet())) {
+            results.add(new ValidationResult.Builder()
+                    .subject(INCREMENTAL_COMMIT.getDisplayName())
+                    .valid(false)
+                    .explanation("FlowFiles cannot be committed before the end of a transaction, a checkpointed batch or a lingering batch")
+                    .build());
+        }
+        if (context.getProperty(SORT_BY_PRIMARY_KEY).asBoolean() && context.getProperty(RESUME_FROM_CHECKPOINT).asBoolean()) {
+            results.add(new ValidationResult.Builder()
+                    .subject(SORT_BY_PRIMARY_KEY.getDisplayName())
+                    .valid(false)
+                    .explanation("sorted rows are not kept as operations, which checkpoints rely on")
+                    .build());
+        }
+        if (context.getProperty(INCREMENTAL_COMMIT).asBoolean() && context.getProperty(SORT_BY_PRIMARY_KEY).asBoolean()) {
+            results.add(new ValidationResult.Builder()
+                    .subject(INCREMENTAL_COMMIT.getDisplayName())
+                    .valid(false)
+                    .explanation("sorted operations are only written to Kudu when the batch is complete, so a flush does not acknowledge any FlowFile")
+                    .build());
+        }
+        if (context.getProperty(STREAMING_FLUSH_RECORDS).isSet()
+                && (context.getProperty(USE_TRANSACTIONS).asBoolean() || context.getProperty(RESUME_FROM_CHECKPOINT).asBoolean())) {
+            results.add(new ValidationResult.Builder()
+                    .subject(STREAMING_FLUSH_RECORDS.getDisplayName())
+                    .valid(false)
+                    .explanation("the operations of transactions and checkpoints must be tracked until the end of the batch")
+                    .build());
+        }
+        if (context.getProperty(STREAMING_FLUSH_RECORDS).isSet() && context.getProperty(SORT_BY_PRIMARY_KEY).asBoolean()) {
+            results.add(new ValidationResult.Builder()
+                    .subject(STREAMING_FLUSH_RECORDS.getDisplayName())
+                    .valid(false)
+                    .explanation("sorted operations are only written to Kudu when the batch is complete, so their tracking state cannot be released before")
+                    .build());
+        }
+        return results;
+    }
+
+    @Override
+    @OnStopped
+    public void shutdown() throws Exception {
+        try {
+            final ScheduledExecutorService flusher = lingerFlusher;
+            if (flusher != null) {
+                // A completion already running must finish rather than be interrupted in the middle of a flush
+                flusher.shutdown();
+                flusher.awaitTermination(30, TimeUnit.SECONDS);
+                lingerFlusher = null;
+            }
+            final List<LingeringBatch> remaining;
+            synchronized (lingerLock) {
+                remaining = new ArrayList<>(idleLingeringBatches);
+                idleLingeringBatches.clear();
+            }
+            remaining.forEach(this::completeLingeringBatch);
+            final KuduApplyLanes lanes = applyLanes;
+            if (lanes != null) {
+                lanes.shutdown();
+                applyLanes = null;
+            }
+            circuitBreaker = null;
+        } finally {
+            super.shutdown();
+        }
     }
 
     private boolean isRollbackOnFailure() {
         return FAILURE_STRATEGY_ROLLBACK.getValue().equalsIgnoreCase(failureStrategy);
     }
 
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSessionFactory sessionFactory) throws ProcessException {
+        if (lingerNanos <= 0) {
+            if (!incrementalCommit) {
+                super.onTrigger(context, sessionFactory);
+                return;
+            }
+
+            final ProcessSession session = sessionFactory.createSession();
+            try {
+                writeBatch(context, session, sessionFactory);
+                session.commit();
+            } catch (final Throwable t) {
+                session.rollback(true);
+                throw t;
+            }
+            return;
+        }
+
+        final KuduCircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.allowRequest()) {
+            getLogger().debug("Circuit breaker for {} is open; yielding", breaker.getKey());
+            context.yield();
+            return;
+        }
+
+        // The batch taken is owned by this trigger, so records are converted and applied without holding the lock
+        final LingeringBatch current;
+        synchronized (lingerLock) {
+            current = idleLingeringBatches.pollFirst();
+        }
+        final ProcessSession session = current == null ? sessionFactory.createSession() : current.session;
+
+        LingeringBatch lingering = current;
+        try {
+            final List<FlowFile> flowFiles = session.get(ffbatch);
+            if (flowFiles.isEmpty()) {
+                if (current == null) {
+                    session.commit();
+                } else if (current.isExpired()) {
+                    completeLingeringBatch(current);
+                } else {
+                    handBackLingeringBatch(current);
+                }
+                return;
+            }
+
+            if (lingering == null) {
+                lingering = beginLingeringBatch(context, session, flowFiles);
+                if (lingering == null) {
+                    return;
+                }
+            }
+
+            final LingeringBatch batch = lingering;
+            executeAsUser(() -> processRecords(batch.batch, flowFiles, batch.stageTimer, session, context, batch.clientHandle.getClient()));
+            if (batch.isFull()) {
+                completeLingeringBatch(batch);
+            } else {
+                handBackLingeringBatch(batch);
+            }
+        } catch (final Throwable t) {
+            abandonLingeringBatch(session, lingering);
+            throw t;
+        }
+    }
+
+    /**
+     * Makes a batch available to the next trigger and to the linger flusher. The most recently used batch is taken
+     * first, so that batches fill up while the others reach the linger time.
+     */
+    private void handBackLingeringBatch(final LingeringBatch lingering) {
+        synchronized (lingerLock) {
+            idleLingeringBatches.addFirst(lingering);
+        }
+    }
+
+    /**
+     * Starts a batch kept open across triggers. It retains the current Kudu client until it completes, so that a client
+     * replaced in the meantime is only closed once the batch is flushed.
+     */
+    private LingeringBatch beginLingeringBatch(final ProcessContext context, final ProcessSession session, final List<FlowFile> flowFiles) {
+        final KuduClientHandle clientHandle = acquireKuduClient();
+        if (clientHandle == null) {
+            throw new ProcessException("Kudu client is not available");
+        }
+
+        final WriteBatch[] batch = new WriteBatch[1];
+        try {
+            executeAsUser(() -> batch[0] = beginBatch(context, session, flowFiles, clientHandle.getClient()));
+        } finally {
+            if (batch[0] == null) {
+                releaseKuduClient(clientHandle);
+            }
+        }
+        return batch[0] == null ? null : new LingeringBatch(context, session, clientHandle, batch[0], stageMetrics.newTimer());
+    }
+
+    /**
+     * Called by the linger flusher thread to complete the batches that reached the linger time between triggers.
+     * Batches owned by a trigger are completed by that trigger once it has applied its records.
+     */
+    private void completeExpiredBatches() {
+        final List<LingeringBatch> expired = new ArrayList<>();
+        synchronized (lingerLock) {
+            final Iterator<LingeringBatch> iterator = idleLingeringBatches.iterator();
+            while (iterator.hasNext()) {
+                final LingeringBatch lingering = iterator.next();
+                if (lingering.isExpired()) {
+                    iterator.remove();
+                    expired.add(lingering);
+                }
+            }
+        }
+        for (final LingeringBatch lingering : expired) {
+            try {
+                completeLingeringBatch(lingering);
+            } catch (final Throwable t) {
+                getLogger().error("Failed to complete lingering Kudu batch", t);
+            }
+        }
+    }
+
+    /**
+     * Flushes a lingering batch, transfers its FlowFiles and commits its NiFi session. The caller must own the batch,
+     * that is, have taken it from the idle batches or begun it.
+     */
+    private void completeLingeringBatch(final LingeringBatch lingering) {
+        try {
+            executeAsUser(() -> {
+                final KuduClient kuduClient = lingering.clientHandle.getClient();
+                try {
+                    closeBatchSession(lingering.batch, lingering.stageTimer);
+                    completeBatch(lingering.context, lingering.session, lingering.batch, kuduClient, lingering.stageTimer);
+                } finally {
+                    lingering.stageTimer.publish(lingering.session);
+                    publishClientMetrics(lingering.context, kuduClient, lingering.session);
+                }
+            });
+            lingering.session.commit();
+            getLogger().debug("Completed lingering Kudu batch of {} FlowFiles and {} records after {} ms", new Object[] {lingering.batch.flowFiles.size(),
+                    lingering.batch.records, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lingering.batch.startNanos)});
+        } catch (final Throwable t) {
+            getLogger().error("Failed to complete lingering Kudu batch of {}; rolling back", new Object[] {lingering.batch.flowFiles}, t);
+            lingering.session.rollback(true);
+        } finally {
+            releaseKuduClient(lingering.clientHandle);
+        }
+        logStageMetrics();
+    }
+
+    /**
+     * Discards a lingering batch after an unexpected failure: its FlowFiles return to the input queue.
+     */
+    private void abandonLingeringBatch(final ProcessSession session, final LingeringBatch lingering) {
+        if (lingering != null) {
+            try {
+                lingering.batch.kuduSession.close();
+            } catch (final KuduException | RuntimeException e) {
+                getLogger().warn("Failed to close Kudu session of abandoned batch", e);
+            } finally {
+                releaseKuduClient(lingering.clientHandle);
+            }
+        }
+        session.rollback(true);
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        writeBatch(context, session, null);
+    }
+
+    /**
+     * @param sessionFactory Factory of the sessions committing durable FlowFiles early, or null to transfer all
+     *                       FlowFiles in the given session at the end of the batch
+     */
+    private void writeBatch(final ProcessContext context, final ProcessSession session, final ProcessSessionFactory sessionFactory) {
+        final KuduCircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.allowRequest()) {
+            getLogger().debug("Circuit breaker for {} is open; yielding", breaker.getKey());
+            context.yield();
+            return;
+        }
+
         final List<FlowFile> flowFiles = session.get(ffbatch);
         if (flowFiles.isEmpty()) {
             return;
         }
 
-        final KerberosUser user = getKerberosUser();
-        if (user == null) {
-            executeOnKuduClient(kuduClient -> processFlowFiles(context, session, flowFiles, kuduClient));
-            return;
+        executeOnKuduClientAsUser(kuduClient -> processFlowFiles(context, session, sessionFactory, flowFiles, kuduClient));
+    }
+
+    private void processFlowFiles(final ProcessContext context, final ProcessSession session, final ProcessSessionFactory sessionFactory,
+                                  final List<FlowFile> flowFiles, final KuduClient kuduClient) {
+        final WriteStageMetrics.Timer stageTimer = stageMetrics.newTimer();
+        try {
+            writeFlowFiles(context, session, sessionFactory, flowFiles, kuduClient, stageTimer);
+        } finally {
+            stageTimer.publish(session);
+            logStageMetrics();
+            publishClientMetrics(context, kuduClient, session);
         }
+    }
 
-        final PrivilegedExceptionAction<Void> privilegedAction = () -> {
-            executeOnKuduClient(kuduClient -> processFlowFiles(context, session, flowFiles, kuduClient));
-            return null;
-        };
+    private void logStageMetrics() {
+        final long logIntervalNanos = stageMetricsLogIntervalNanos;
+        if (logIntervalNanos <= 0) {
+            return;
+        }
 
-        final KerberosAction<Void> action = new KerberosAction<>(user, privilegedAction, getLogger());
-        action.execute();
+        final long now = System.nanoTime();
+        final long nextLog = nextStageMetricsLog.get();
+        if (now - nextLog >= 0 && nextStageMetricsLog.compareAndSet(nextLog, now + logIntervalNanos)) {
+            getLogger().info("Kudu write stage timings: {}", stageMetrics.getSummary());
+            final KuduGroupCommitter committer = groupCommitter;
+            if (committer != null) {
+                getLogger().info("Kudu group commits: {}", committer.getSummary());
+            }
+        }
     }
 
-    private void processFlowFiles(final ProcessContext context, final ProcessSession session, final List<FlowFile> flowFiles, final KuduClient kuduClient) {
-        final Map<FlowFile, Integer> processedRecords = new HashMap<>();
-        final Map<FlowFile, Object> flowFileFailures = new HashMap<>();
-        final Map<Operation, FlowFile> operationFlowFileMap = new HashMap<>();
-        final List<RowError> pendingRowErrors = new ArrayList<>();
+    private void writeFlowFiles(final ProcessContext context, final ProcessSession session, final ProcessSessionFactory sessionFactory,
+                                final List<FlowFile> flowFiles, final KuduClient kuduClient, final WriteStageMetrics.Timer stageTimer) {
+        final WriteBatch batch = beginBatch(context, session, flowFiles, kuduClient);
+        if (batch == null) {
+            return;
+        }
+        batch.durableSessionFactory = sessionFactory;
 
-        final KuduSession kuduSession = createKuduSession(kuduClient);
         try {
-            processRecords(flowFiles,
-                    processedRecords,
-                    flowFileFailures,
-                    operationFlowFileMap,
-                    pendingRowErrors,
-                    session,
-                    context,
-                    kuduClient,
-                    kuduSession);
+            processRecords(batch, flowFiles, stageTimer, session, context, kuduClient);
         } finally {
+            closeBatchSession(batch, stageTimer);
+        }
+        completeBatch(context, session, batch, kuduClient, stageTimer);
+    }
+
+    /**
+     * Begins a batch writing through a new Kudu session, within a new Kudu transaction when transactions are used.
+     *
+     * @return Batch, or null if the transaction could not be started, in which case the session was rolled back
+     */
+    private WriteBatch beginBatch(final ProcessContext context, final ProcessSession session, final List<FlowFile> flowFiles, final KuduClient kuduClient) {
+        final KuduTransaction transaction;
+        try {
+            transaction = useTransactions ? kuduClient.newTransaction() : null;
+        } catch (final KuduException e) {
+            getLogger().error("Failed to begin Kudu transaction for {}", new Object[] {flowFiles}, e);
+            session.rollback();
+            context.yield();
+            return null;
+        }
+
+        // Only the batch session is sorted; retries re-apply copies tracked by the processor in unsorted sessions
+        final KuduWriteSink kuduSession = sorted(transaction == null ? createKuduSession(kuduClient) : createKuduSession(transaction));
+        final KuduStagingWriteSink.BufferPool pool = stagingPool;
+        final KuduStagingWriteSink staging = pool == null ? null : new KuduStagingWriteSink(kuduSession, pool, batchSize, stagingBudgetBytes);
+        return new WriteBatch(transaction, staging == null ? kuduSession : staging, staging, resumeFromCheckpoint ? new Checkpoints() : null);
+    }
+
+    /**
+     * Flushes and closes the Kudu session of the batch, collecting the row errors of the buffered operations.
+     */
+    private void closeBatchSession(final WriteBatch batch, final WriteStageMetrics.Timer stageTimer) {
+        final long flushStart = System.nanoTime();
+        try {
+            flushKuduSession(batch.kuduSession, true, batch.pendingRowErrors);
+            stageTimer.record(WriteStageMetrics.Stage.FLUSH, flushStart);
+        } catch (final KuduException|RuntimeException e) {
+            getLogger().error("KuduSession.close() Failed", e);
+            if (batch.ownerTracking != null) {
+                // The held rows cannot be attributed to their FlowFiles, so none of them is known to be written
+                batch.sinkFailure = e;
+            }
+            if (batch.checkpoints != null) {
+                // Buffered operations may not have been applied, so nothing new is known to be durable
+                batch.checkpoints.invalidate();
+            }
+            if (e instanceof KuduException && isThrottled(((KuduException) e).getStatus())) {
+                batch.sessionThrottled = true;
+            }
+        }
+    }
+
+    /**
+     * Retries the failed operations of a batch whose Kudu session was closed, commits or rolls back its transaction,
+     * and transfers its FlowFiles or rolls back the NiFi session according to the failure strategy.
+     */
+    private void completeBatch(final ProcessContext context, final ProcessSession session, final WriteBatch batch, final KuduClient kuduClient,
+                               final WriteStageMetrics.Timer stageTimer) {
+        final List<FlowFile> flowFiles = batch.flowFiles;
+        final Map<FlowFile, Integer> processedRecords = batch.processedRecords;
+        final Map<FlowFile, Object> flowFileFailures = batch.flowFileFailures;
+        final Map<Operation, FlowFile> operationFlowFileMap = batch.operationFlowFileMap;
+        final List<RowError> pendingRowErrors = batch.pendingRowErrors;
+        final Checkpoints checkpoints = batch.checkpoints;
+        final KuduTransaction transaction = batch.transaction;
+
+        if (batch.sinkFailure != null) {
+            getLogger().error("Failed to write the rows held for {}, routing all FlowFiles of the batch to failure", new Object[] {flowFiles}, batch.sinkFailure);
+            for (final FlowFile flowFile : flowFiles) {
+                flowFileFailures.putIfAbsent(flowFile, batch.sinkFailure);
+            }
+        }
+
+        final KuduCircuitBreaker breaker = circuitBreaker;
+        if (breaker != null) {
+            final long throttled = batch.sessionThrottled
+                    ? batch.operations
+                    : batch.releasedThrottled + pendingRowErrors.stream().filter(rowError -> isThrottled(rowError.getErrorStatus())).count();
+            breaker.recordOutcome(batch.operations, throttled);
+        }
+
+        if (maxRowRetries > 0) {
+            retryRowErrors(batch, () -> transaction == null ? createKuduSession(kuduClient) : createKuduSession(transaction), stageTimer);
+        }
+
+        if (transaction != null) {
+            final boolean failed = !pendingRowErrors.isEmpty() || !flowFileFailures.isEmpty();
             try {
-                flushKuduSession(kuduSession, true, pendingRowErrors);
-            } catch (final KuduException|RuntimeException e) {
-                getLogger().error("KuduSession.close() Failed", e);
+                if (failed) {
+                    rollbackTransaction(transaction);
+                    if (checkpoints != null) {
+                        checkpoints.invalidate();
+                    }
+                    if (!isRollbackOnFailure()) {
+                        transferRolledBackFlowFiles(flowFiles, flowFileFailures, operationFlowFileMap, pendingRowErrors, session);
+                        return;
+                    }
+                } else {
+                    try {
+                        transaction.commit();
+                    } catch (final KuduException e) {
+                        getLogger().error("Failed to commit Kudu transaction for {}", new Object[] {flowFiles}, e);
+                        rollbackTransaction(transaction);
+                        session.rollback();
+                        context.yield();
+                        return;
+                    }
+                }
+            } finally {
+                transaction.close();
             }
         }
 
-        if (isRollbackOnFailure() && (!pendingRowErrors.isEmpty() || !flowFileFailures.isEmpty())) {
+        if (isRollbackOnFailure() && (!pendingRowErrors.isEmpty() || !flowFileFailures.isEmpty() || !batch.releasedRowErrors.isEmpty())) {
             logFailures(pendingRowErrors, operationFlowFileMap);
+            batch.releasedRowErrors.forEach((flowFile, errors) -> getLogger().error("Could not write {} to Kudu due to: {}", flowFile, errors));
+            if (checkpoints != null) {
+                saveCheckpoints(context, checkpoints.getAppliedRecords(operationFlowFileMap, pendingRowErrors), Collections.emptySet());
+            }
             session.rollback();
             context.yield();
         } else {
-            transferFlowFiles(flowFiles, processedRecords, flowFileFailures, operationFlowFileMap, pendingRowErrors, session);
+            transferFlowFiles(flowFiles, processedRecords, flowFileFailures, operationFlowFileMap, pendingRowErrors, batch.releasedRowErrors, checkpoints, session);
+            if (checkpoints != null) {
+                saveCheckpoints(context, Collections.emptyMap(), checkpoints.getStoredFlowFiles());
+            }
         }
     }
 
-    private void processRecords(final List<FlowFile> flowFiles,
-                                final Map<FlowFile, Integer> processedRecords,
-                                final Map<FlowFile, Object> flowFileFailures,
-                                final Map<Operation, FlowFile> operationFlowFileMap,
-                                final List<RowError> pendingRowErrors,
+    private void processRecords(final WriteBatch batch,
+                                final List<FlowFile> flowFiles,
+                                final WriteStageMetrics.Timer stageTimer,
                                 final ProcessSession session,
                                 final ProcessContext context,
-                                final KuduClient kuduClient,
-                                final KuduSession kuduSession) {
+                                final KuduClient kuduClient) {
         final RecordReaderFactory recordReaderFactory = context.getProperty(RECORD_READER).asControllerService(RecordReaderFactory.class);
+        final Map<FlowFile, Integer> processedRecords = batch.processedRecords;
+        final Map<FlowFile, Object> flowFileFailures = batch.flowFileFailures;
+        final Map<Operation, FlowFile> operationFlowFileMap = batch.operationFlowFileMap;
+        final List<RowError> pendingRowErrors = batch.pendingRowErrors;
+        final Checkpoints checkpoints = batch.checkpoints;
+        final KuduWriteSink kuduSession = batch.kuduSession;
 
-        int bufferedRecords = 0;
-        OperationType prevOperationType = OperationType.INSERT;
         for (FlowFile flowFile : flowFiles) {
+            batch.flowFiles.add(flowFile);
+            batch.bytes += flowFile.getSize();
+            if (batch.sinkFailure != null) {
+                // The batch fails as a whole, so the remaining FlowFiles are not written
+                flowFileFailures.put(flowFile, batch.sinkFailure);
+                continue;
+            }
+            if (batch.ownerTracking != null) {
+                batch.ownerTracking.setOwner(flowFile);
+            }
+            long stageStart = System.nanoTime();
             try (final InputStream in = session.read(flowFile);
                  final RecordReader recordReader = recordReaderFactory.createRecordReader(flowFile, in, getLogger())) {
+                stageTimer.record(WriteStageMetrics.Stage.READ, stageStart);
 
                 final String tableName = getEvaluatedProperty(TABLE_NAME, context, flowFile);
                 final boolean ignoreNull = Boolean.parseBoolean(getEvaluatedProperty(IGNORE_NULL, context, flowFile));
@@ -397,7 +1193,7 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
                 }
 
                 final RecordSet recordSet = recordReader.createRecordSet();
-                KuduTable kuduTable = kuduClient.openTable(tableName);
+                KuduTable kuduTable = openTable(kuduClient, tableName);
 
                 // If handleSchemaDrift is true, check for any missing columns and alter the Kudu table to add them.
                 if (handleSchemaDrift) {
@@ -427,11 +1223,27 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
                         }
 
                         // Re-open the table to get the new schema.
-                        kuduTable = kuduClient.openTable(tableName);
+                        kuduTable = openTable(kuduClient, tableName);
                     }
                 }
 
+                stageStart = System.nanoTime();
                 Record record = recordSet.next();
+                int recordIndex = 0;
+                if (checkpoints != null) {
+                    final int resumeOffset = getResumeOffset(context, flowFile, checkpoints);
+                    while (record != null && recordIndex < resumeOffset) {
+                        record = recordSet.next();
+                        recordIndex++;
+                    }
+                    if (recordIndex > 0) {
+                        getLogger().info("Resuming {} after {} records already applied to Kudu", flowFile, recordIndex);
+                    }
+                    checkpoints.recordCompleted(flowFile, recordIndex);
+                }
+
+                stageTimer.record(WriteStageMetrics.Stage.DECODE, stageStart);
+
                 recordReaderLoop: while (record != null) {
                     final OperationType operationType = operationTypeFunction.apply(record);
 
@@ -466,45 +1278,341 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
                         // need to flush when changing to and from INSERT_IGNORE operation types.
                         // This should be removed when the lowest supported version of Kudu supports
                         // ignore operations.
-                        if (!supportsInsertIgnoreOp && prevOperationType != operationType
-                                && (prevOperationType == OperationType.INSERT_IGNORE || operationType == OperationType.INSERT_IGNORE)) {
+                        if (!supportsInsertIgnoreOp && batch.prevOperationType != operationType
+                                && (batch.prevOperationType == OperationType.INSERT_IGNORE || operationType == OperationType.INSERT_IGNORE)) {
+                            stageStart = System.nanoTime();
                             flushKuduSession(kuduSession, false, pendingRowErrors);
+                            stageTimer.record(WriteStageMetrics.Stage.FLUSH, stageStart);
                             kuduSession.setIgnoreAllDuplicateRows(operationType == OperationType.INSERT_IGNORE);
                         }
-                        prevOperationType = operationType;
+                        batch.prevOperationType = operationType;
 
                         final List<String> fieldNames = dataRecord.getSchema().getFieldNames();
-                        Operation operation = createKuduOperation(operationType, dataRecord, fieldNames, ignoreNull, lowercaseFields, kuduTable);
-                        // We keep track of mappings between Operations and their origins,
-                        // so that we know which FlowFiles should be marked failure after buffered flush.
-                        operationFlowFileMap.put(operation, flowFile);
+                        stageStart = System.nanoTime();
+                        final Operation operation;
+                        if (batch.staging == null) {
+                            operation = createKuduOperation(operationType, dataRecord, fieldNames, ignoreNull, lowercaseFields, kuduTable);
+                            // We keep track of mappings between Operations and their origins,
+                            // so that we know which FlowFiles should be marked failure after buffered flush.
+                            // A sorting sink attributes the rows it holds to the FlowFile itself.
+                            if (batch.ownerTracking == null) {
+                                operationFlowFileMap.put(operation, flowFile);
+                            }
+                        } else {
+                            // The row is staged by applyRow below; the staging sink attributes it to the FlowFile
+                            operation = null;
+                            buildRow(kuduTable.getSchema(), batch.staging.beginRow(kuduTable, resolveOperationType(operationType)),
+                                    dataRecord, fieldNames, ignoreNull, lowercaseFields);
+                        }
+                        stageTimer.record(WriteStageMetrics.Stage.BUILD_ROW, stageStart);
+                        batch.operations++;
+                        if (checkpoints != null) {
+                            checkpoints.recordOperation(operation, recordIndex);
+                        }
 
                         // Flush mutation buffer of KuduSession to avoid "MANUAL_FLUSH is enabled
                         // but the buffer is too big" error. This can happen when flush mode is
                         // MANUAL_FLUSH and a FlowFile has more than one records.
-                        if (bufferedRecords == batchSize && flushMode == SessionConfiguration.FlushMode.MANUAL_FLUSH) {
-                            bufferedRecords = 0;
+                        // With incremental commits, the flush also acknowledges the records of the FlowFiles read so far.
+                        if (batch.bufferedRecords == batchSize
+                                && (flushMode == SessionConfiguration.FlushMode.MANUAL_FLUSH || batch.durableSessionFactory != null)) {
+                            batch.bufferedRecords = 0;
+                            stageStart = System.nanoTime();
                             flushKuduSession(kuduSession, false, pendingRowErrors);
+                            stageTimer.record(WriteStageMetrics.Stage.FLUSH, stageStart);
+                            if (kuduSession.isDurableOnFlush()) {
+                                batch.acknowledgedFlowFiles = batch.readFlowFiles.size();
+                            }
                         }
 
                         // OperationResponse is returned only when flush mode is set to AUTO_FLUSH_SYNC
-                        OperationResponse response = kuduSession.apply(operation);
+                        stageStart = System.nanoTime();
+                        OperationResponse response = null;
+                        if (operation == null) {
+                            batch.staging.applyRow();
+                        } else {
+                            response = kuduSession.apply(operation);
+                        }
+                        stageTimer.record(WriteStageMetrics.Stage.APPLY, stageStart);
                         if (response != null && response.hasRowError()) {
-                            // Stop processing the records on the first error.
-                            // Note that Kudu does not support rolling back of previous operations.
-                            flowFileFailures.put(flowFile, response.getRowError());
-                            break recordReaderLoop;
+                            if (maxRowRetries > 0 && isRetryable(response.getRowError())) {
+                                // Transient errors are re-applied with the buffered row errors after the session is closed.
+                                pendingRowErrors.add(response.getRowError());
+                            } else {
+                                // Stop processing the records on the first error.
+                                // Note that Kudu does not support rolling back of previous operations.
+                                flowFileFailures.put(flowFile, response.getRowError());
+                                break recordReaderLoop;
+                            }
                         }
 
-                        bufferedRecords++;
+                        batch.bufferedRecords++;
+                        batch.records++;
                         processedRecords.merge(flowFile, 1, Integer::sum);
+
+                        // Operations held beyond a flush must stay mapped to their FlowFiles until they are written
+                        if (streamingFlushRecords > 0 && kuduSession.isDurableOnFlush() && isStreamingReleaseDue(batch, kuduTable, dataRecord)) {
+                            releaseTrackingState(batch, kuduClient, stageTimer);
+                        }
                     }
 
+                    recordIndex++;
+                    if (checkpoints != null) {
+                        checkpoints.recordCompleted(flowFile, recordIndex);
+                    }
+                    stageStart = System.nanoTime();
                     record = recordSet.next();
+                    stageTimer.record(WriteStageMetrics.Stage.DECODE, stageStart);
                 }
             } catch (Exception ex) {
                 getLogger().error("Failed to push {} to Kudu", new Object[] {flowFile}, ex);
                 flowFileFailures.put(flowFile, ex);
+                if (batch.ownerTracking != null && batch.ownerTracking.isFailed()) {
+                    // The sink discarded the rows of the other FlowFiles of the batch as well
+                    batch.sinkFailure = ex;
+                }
+            }
+
+            if (batch.durableSessionFactory != null) {
+                batch.readFlowFiles.add(flowFile);
+                if (batch.acknowledgedFlowFiles > 0) {
+                    commitDurableFlowFiles(batch, session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the records written since the last release reached <Streaming Flush Records>, or the estimated
+     * heap of the operations tracked since then reached <Streaming Heap Budget>.
+     */
+    private boolean isStreamingReleaseDue(final WriteBatch batch, final KuduTable kuduTable, final Record dataRecord) {
+        final long sinceRelease = batch.operations - batch.releasedOperations;
+        if (sinceRelease >= streamingFlushRecords) {
+            return true;
+        }
+        if (streamingHeapBudgetBytes <= 0 || batch.staging != null) {
+            // Staged rows are held off-heap within their own budget rather than tracked as operations
+            return false;
+        }
+
+        batch.estimatedTrackedBytes += TRACKED_OPERATION_OVERHEAD_BYTES + kuduTable.getSchema().getRowSize() + getVariableLengthBytes(dataRecord);
+        batch.peakTrackedBytes = Math.max(batch.peakTrackedBytes, batch.estimatedTrackedBytes);
+        return batch.estimatedTrackedBytes >= streamingHeapBudgetBytes;
+    }
+
+    /**
+     * @return Length of the string and binary values of a Record, which its operation copies into its row
+     */
+    private static long getVariableLengthBytes(final Record record) {
+        long bytes = 0;
+        for (final Object value : record.getValues()) {
+            if (value instanceof String) {
+                bytes += ((String) value).length();
+            } else if (value instanceof byte[]) {
+                bytes += ((byte[]) value).length;
+            } else if (value instanceof Object[]) {
+                bytes += ((Object[]) value).length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Flushes the Kudu session, retries the failed operations and keeps only a count and a few messages of the row
+     * errors that remain per FlowFile, so that the operations written so far are no longer referenced.
+     */
+    private void releaseTrackingState(final WriteBatch batch, final KuduClient kuduClient, final WriteStageMetrics.Timer stageTimer) throws KuduException {
+        final long flushStart = System.nanoTime();
+        flushKuduSession(batch.kuduSession, false, batch.pendingRowErrors);
+        stageTimer.record(WriteStageMetrics.Stage.FLUSH, flushStart);
+        batch.bufferedRecords = 0;
+        batch.acknowledgedFlowFiles = batch.readFlowFiles.size();
+
+        final List<RowError> pendingRowErrors = batch.pendingRowErrors;
+        batch.releasedThrottled += pendingRowErrors.stream().filter(rowError -> isThrottled(rowError.getErrorStatus())).count();
+        if (maxRowRetries > 0 && !pendingRowErrors.isEmpty()) {
+            retryRowErrors(batch, () -> createKuduSession(kuduClient), stageTimer);
+        }
+        for (final RowError rowError : pendingRowErrors) {
+            final FlowFile flowFile = batch.operationFlowFileMap.get(rowError.getOperation());
+            if (flowFile != null) {
+                batch.releasedRowErrors.computeIfAbsent(flowFile, key -> new ReleasedRowErrors()).add(rowError);
+            }
+        }
+
+        getLogger().debug("Released the tracking state of {} operations and {} row errors; peak estimated heap {} bytes",
+                new Object[] {batch.operations - batch.releasedOperations, pendingRowErrors.size(), batch.peakTrackedBytes});
+        pendingRowErrors.clear();
+        batch.operationFlowFileMap.clear();
+        batch.releasedOperations = batch.operations;
+        batch.estimatedTrackedBytes = 0;
+    }
+
+    /**
+     * Transfers the FlowFiles whose records were all acknowledged by a flush without errors to success, and commits
+     * them in their own session. FlowFiles with failed records stay in the batch and are routed when it completes.
+     */
+    private void commitDurableFlowFiles(final WriteBatch batch, final ProcessSession session) {
+        if (batch.sinkFailure != null) {
+            // Rows of acknowledged FlowFiles may have been discarded with the failure, so they are routed with the batch
+            return;
+        }
+        final List<FlowFile> acknowledged = batch.readFlowFiles.subList(0, batch.acknowledgedFlowFiles);
+        final Set<FlowFile> failed = new HashSet<>(batch.flowFileFailures.keySet());
+        failed.addAll(batch.releasedRowErrors.keySet());
+        for (final RowError rowError : batch.pendingRowErrors) {
+            final FlowFile flowFile = batch.operationFlowFileMap.get(rowError.getOperation());
+            if (flowFile != null) {
+                failed.add(flowFile);
+            }
+        }
+
+        final List<FlowFile> durable = acknowledged.stream().filter(flowFile -> !failed.contains(flowFile)).collect(Collectors.toList());
+        acknowledged.clear();
+        batch.acknowledgedFlowFiles = 0;
+        if (durable.isEmpty()) {
+            return;
+        }
+
+        final ProcessSession durableSession = batch.durableSessionFactory.createSession();
+        session.migrate(durableSession, durable);
+        long totalCount = 0L;
+        for (FlowFile flowFile : durable) {
+            final int count = batch.processedRecords.getOrDefault(flowFile, 0);
+            totalCount += count;
+            flowFile = durableSession.putAttribute(flowFile, RECORD_COUNT_ATTR, String.valueOf(count));
+            durableSession.transfer(flowFile, REL_SUCCESS);
+            durableSession.getProvenanceReporter().send(flowFile, "Successfully added FlowFile to Kudu");
+        }
+        durableSession.adjustCounter("Records Inserted", totalCount, false);
+        durableSession.commit();
+
+        // Release the tracking state of the committed FlowFiles
+        final Set<FlowFile> committed = new HashSet<>(durable);
+        batch.flowFiles.removeIf(committed::contains);
+        batch.processedRecords.keySet().removeAll(committed);
+        batch.operationFlowFileMap.values().removeIf(committed::contains);
+        getLogger().debug("Committed {} FlowFiles acknowledged by Kudu", durable.size());
+    }
+
+    /**
+     * Re-applies copies of the operations of retryable row errors in a new session, with exponential backoff and
+     * jitter between attempts. Row errors that are not retryable, or still fail after the last attempt, remain in
+     * the pending row errors of the batch so that their FlowFiles are routed to failure.
+     */
+    private void retryRowErrors(final WriteBatch batch, final Supplier<KuduWriteSink> sessionSupplier, final WriteStageMetrics.Timer stageTimer) {
+        final List<RowError> pendingRowErrors = batch.pendingRowErrors;
+        for (int attempt = 0; attempt < maxRowRetries; attempt++) {
+            final List<RowError> retryErrors = new ArrayList<>();
+            final Iterator<RowError> iterator = pendingRowErrors.iterator();
+            while (iterator.hasNext()) {
+                final RowError rowError = iterator.next();
+                if (isRetryable(rowError)) {
+                    retryErrors.add(rowError);
+                    iterator.remove();
+                }
+            }
+
+            if (retryErrors.isEmpty()) {
+                return;
+            }
+
+            final long backoffMs = getRetryBackoffMs(attempt);
+            getLogger().debug("Retrying {} failed operations in {} ms (attempt {} of {})", retryErrors.size(), backoffMs, attempt + 1, maxRowRetries);
+            try {
+                Thread.sleep(backoffMs);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pendingRowErrors.addAll(retryErrors);
+                return;
+            }
+
+            final int pendingErrorCount = pendingRowErrors.size();
+            final KuduWriteSink retrySession = sessionSupplier.get();
+            int applied = 0;
+            try {
+                int bufferedRecords = 0;
+                for (final RowError rowError : retryErrors) {
+                    if (bufferedRecords == batchSize && flushMode == SessionConfiguration.FlushMode.MANUAL_FLUSH) {
+                        bufferedRecords = 0;
+                        final long flushStart = System.nanoTime();
+                        flushKuduSession(retrySession, false, pendingRowErrors);
+                        stageTimer.record(WriteStageMetrics.Stage.FLUSH, flushStart);
+                    }
+
+                    // An applied operation keeps the state of its RPC, so a copy is applied and tracked like the original
+                    final Operation retry = KuduOperations.copy(rowError.getOperation());
+                    final OperationResponse response = retrySession.apply(retry);
+                    batch.trackRetry(rowError.getOperation(), retry);
+                    if (response != null && response.hasRowError()) {
+                        pendingRowErrors.add(response.getRowError());
+                    }
+                    bufferedRecords++;
+                    applied++;
+                }
+            } catch (final KuduException | RuntimeException e) {
+                getLogger().warn("Failed to re-apply operations to Kudu", e);
+                pendingRowErrors.addAll(retryErrors.subList(applied, retryErrors.size()));
+            } finally {
+                final long flushStart = System.nanoTime();
+                try {
+                    flushKuduSession(retrySession, true, pendingRowErrors);
+                    stageTimer.record(WriteStageMetrics.Stage.FLUSH, flushStart);
+                } catch (final KuduException | RuntimeException e) {
+                    // The outcome of the re-applied operations is unknown, so report all of them as failed
+                    getLogger().error("KuduSession.close() Failed", e);
+                    pendingRowErrors.subList(pendingErrorCount, pendingRowErrors.size()).clear();
+                    pendingRowErrors.addAll(retryErrors);
+                    return;
+                }
+            }
+        }
+    }
+
+    private long getRetryBackoffMs(final int attempt) {
+        final long exponentialBackoffMs = rowRetryInitialBackoffMs << Math.min(attempt, 30);
+        final long cappedBackoffMs = Math.max(1, Math.min(rowRetryMaxBackoffMs, exponentialBackoffMs));
+        final long halfBackoffMs = cappedBackoffMs / 2;
+        return halfBackoffMs + ThreadLocalRandom.current().nextLong(cappedBackoffMs - halfBackoffMs + 1);
+    }
+
+    private void rollbackTransaction(final KuduTransaction transaction) {
+        try {
+            transaction.rollback();
+        } catch (final KuduException | RuntimeException e) {
+            // The transaction is aborted by Kudu once its keepalive heartbeats stop
+            getLogger().warn("Failed to roll back Kudu transaction", e);
+        }
+    }
+
+    /**
+     * Routes the FlowFiles of a rolled back transaction: FlowFiles with failed records go to failure, and FlowFiles
+     * that were written without errors are returned to the input queue, since none of their records were committed.
+     */
+    private void transferRolledBackFlowFiles(final List<FlowFile> flowFiles,
+                                             final Map<FlowFile, Object> flowFileFailures,
+                                             final Map<Operation, FlowFile> operationFlowFileMap,
+                                             final List<RowError> pendingRowErrors,
+                                             final ProcessSession session) {
+        final Map<FlowFile, List<RowError>> flowFileRowErrors = pendingRowErrors.stream()
+                .filter(e -> operationFlowFileMap.get(e.getOperation()) != null)
+                .collect(
+                        Collectors.groupingBy(e -> operationFlowFileMap.get(e.getOperation()))
+                );
+
+        for (FlowFile flowFile : flowFiles) {
+            final List<RowError> rowErrors = flowFileRowErrors.get(flowFile);
+            if (rowErrors != null || flowFileFailures.containsKey(flowFile)) {
+                if (rowErrors != null) {
+                    rowErrors.forEach(rowError -> getLogger().error("Failed to write due to {}", rowError.toString()));
+                } else {
+                    getLogger().error("Failed to write due to {}", flowFileFailures.get(flowFile));
+                }
+                flowFile = session.putAttribute(flowFile, RECORD_COUNT_ATTR, "0");
+                session.transfer(flowFile, REL_FAILURE);
+            } else {
+                session.transfer(flowFile);
             }
         }
     }
@@ -514,6 +1622,8 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
                                    final Map<FlowFile, Object> flowFileFailures,
                                    final Map<Operation, FlowFile> operationFlowFileMap,
                                    final List<RowError> pendingRowErrors,
+                                   final Map<FlowFile, ReleasedRowErrors> releasedRowErrors,
+                                   final Checkpoints checkpoints,
                                    final ProcessSession session) {
         // Find RowErrors for each FlowFile
         final Map<FlowFile, List<RowError>> flowFileRowErrors = pendingRowErrors.stream()
@@ -522,24 +1632,45 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
                         Collectors.groupingBy(e -> operationFlowFileMap.get(e.getOperation()))
                 );
 
+        final Map<FlowFile, Integer> appliedRecords = checkpoints == null
+                ? Collections.emptyMap()
+                : checkpoints.getAppliedRecords(operationFlowFileMap, pendingRowErrors);
+
         long totalCount = 0L;
         for (FlowFile flowFile : flowFiles) {
+            final Integer applied = appliedRecords.get(flowFile);
             final int count = processedRecords.getOrDefault(flowFile, 0);
             totalCount += count;
             final List<RowError> rowErrors = flowFileRowErrors.get(flowFile);
+            final ReleasedRowErrors released = releasedRowErrors.get(flowFile);
 
-            if (rowErrors != null) {
-                rowErrors.forEach(rowError -> getLogger().error("Failed to write due to {}", rowError.toString()));
-                flowFile = session.putAttribute(flowFile, RECORD_COUNT_ATTR, Integer.toString(count - rowErrors.size()));
-                totalCount -= rowErrors.size(); // Don't include error rows in the the counter.
+            if (rowErrors != null || released != null) {
+                final int errorCount = (rowErrors == null ? 0 : rowErrors.size()) + (released == null ? 0 : released.count);
+                if (rowErrors != null) {
+                    rowErrors.forEach(rowError -> getLogger().error("Failed to write due to {}", rowError.toString()));
+                }
+                if (released != null) {
+                    getLogger().error("Failed to write {} due to {}", flowFile, released);
+                }
+                flowFile = session.putAttribute(flowFile, RECORD_COUNT_ATTR, Integer.toString(count - errorCount));
+                totalCount -= errorCount; // Don't include error rows in the the counter.
+                if (applied != null) {
+                    flowFile = session.putAttribute(flowFile, APPLIED_RECORDS_ATTR, String.valueOf(applied));
+                }
                 session.transfer(flowFile, REL_FAILURE);
             } else {
                 flowFile = session.putAttribute(flowFile, RECORD_COUNT_ATTR, String.valueOf(count));
 
                 if (flowFileFailures.containsKey(flowFile)) {
                     getLogger().error("Failed to write due to {}", flowFileFailures.get(flowFile));
+                    if (applied != null) {
+                        flowFile = session.putAttribute(flowFile, APPLIED_RECORDS_ATTR, String.valueOf(applied));
+                    }
                     session.transfer(flowFile, REL_FAILURE);
                 } else {
+                    if (checkpoints != null && flowFile.getAttribute(APPLIED_RECORDS_ATTR) != null) {
+                        flowFile = session.removeAttribute(flowFile, APPLIED_RECORDS_ATTR);
+                    }
                     session.transfer(flowFile, REL_SUCCESS);
                     session.getProvenanceReporter().send(flowFile, "Successfully added FlowFile to Kudu");
                 }
@@ -549,6 +1680,52 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
         session.adjustCounter("Records Inserted", totalCount, false);
     }
 
+    private int getResumeOffset(final ProcessContext context, final FlowFile flowFile, final Checkpoints checkpoints) throws IOException {
+        int resumeOffset = 0;
+        final String appliedRecords = flowFile.getAttribute(APPLIED_RECORDS_ATTR);
+        if (appliedRecords != null) {
+            try {
+                resumeOffset = Integer.parseInt(appliedRecords);
+            } catch (final NumberFormatException e) {
+                getLogger().warn("Ignoring invalid {} attribute value '{}' on {}", APPLIED_RECORDS_ATTR, appliedRecords, flowFile);
+            }
+        }
+
+        final String uuid = flowFile.getAttribute(CoreAttributes.UUID.key());
+        final String storedOffset = context.getStateManager().getState(Scope.LOCAL).get(uuid);
+        if (storedOffset != null) {
+            checkpoints.recordStored(uuid);
+            resumeOffset = Math.max(resumeOffset, Integer.parseInt(storedOffset));
+        }
+        return resumeOffset;
+    }
+
+    /**
+     * Stores the applied record offsets of rolled back FlowFiles and removes the offsets of FlowFiles that left
+     * the processor. Local state is shared by all concurrent tasks of this processor, so updates are serialized.
+     */
+    private void saveCheckpoints(final ProcessContext context, final Map<FlowFile, Integer> appliedRecords, final Set<String> clearedUuids) {
+        if (appliedRecords.isEmpty() && clearedUuids.isEmpty()) {
+            return;
+        }
+
+        final StateManager stateManager = context.getStateManager();
+        synchronized (checkpointLock) {
+            try {
+                final Map<String, String> state = new HashMap<>(stateManager.getState(Scope.LOCAL).toMap());
+                state.keySet().removeAll(clearedUuids);
+                appliedRecords.forEach((flowFile, applied) -> {
+                    if (applied > 0) {
+                        state.put(flowFile.getAttribute(CoreAttributes.UUID.key()), String.valueOf(applied));
+                    }
+                });
+                stateManager.setState(state, Scope.LOCAL);
+            } catch (final IOException e) {
+                getLogger().warn("Failed to store Kudu ingestion checkpoints; the next attempt may replay applied records", e);
+            }
+        }
+    }
+
     private void logFailures(final List<RowError> pendingRowErrors, final Map<Operation, FlowFile> operationFlowFileMap) {
         final Map<FlowFile, List<RowError>> flowFileRowErrors = pendingRowErrors.stream().collect(
                 Collectors.groupingBy(e -> operationFlowFileMap.get(e.getOperation())));
@@ -569,29 +1746,50 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
         return evaluatedProperty.getValue();
     }
 
-    protected KuduSession createKuduSession(final KuduClient client) {
-        final KuduSession kuduSession = client.newSession();
+    protected KuduWriteSink createKuduSession(final KuduClient client) {
+        final KuduGroupCommitter committer = groupCommitter;
+        if (committer != null) {
+            return committer.newSink(client, batchSize);
+        }
+        final KuduApplyLanes lanes = applyLanes;
+        if (lanes != null) {
+            return lanes.newSink(client);
+        }
+        return configureKuduSession(client.newSession());
+    }
+
+    protected KuduWriteSink createKuduSession(final KuduTransaction transaction) {
+        return configureKuduSession(transaction.newKuduSession());
+    }
+
+    private KuduWriteSink sorted(final KuduWriteSink kuduSession) {
+        return sortByPrimaryKey ? new KuduSortingWriteSink(kuduSession, batchSize, sortMemoryBudgetBytes, sortSpillDirectory) : kuduSession;
+    }
+
+    private KuduWriteSink configureKuduSession(final KuduSession kuduSession) {
         kuduSession.setMutationBufferSpace(batchSize);
         kuduSession.setFlushMode(flushMode);
-        return kuduSession;
+        return new KuduSessionWriteSink(kuduSession);
+    }
+
+    protected int getBatchSize() {
+        return batchSize;
+    }
+
+    protected SessionConfiguration.FlushMode getFlushMode() {
+        return flushMode;
     }
 
     protected Operation createKuduOperation(OperationType operationType, Record record,
                                             List<String> fieldNames, boolean ignoreNull,
                                             boolean lowercaseFields, KuduTable kuduTable) {
         Operation operation;
-        switch (operationType) {
+        switch (resolveOperationType(operationType)) {
             case INSERT:
                 operation = kuduTable.newInsert();
                 break;
             case INSERT_IGNORE:
-                // If the target Kudu cluster does not support ignore operations use an insert.
-                // The legacy session based insert ignore will be used instead.
-                if (!supportsInsertIgnoreOp) {
-                    operation = kuduTable.newInsert();
-                } else {
-                    operation = kuduTable.newInsertIgnore();
-                }
+                operation = kuduTable.newInsertIgnore();
                 break;
             case UPSERT:
                 operation = kuduTable.newUpsert();
@@ -615,6 +1813,184 @@ public class AddNineHoursPutKudu extends AbstractKuduProcessor {
         return operation;
     }
 
+    private OperationType resolveOperationType(final OperationType operationType) {
+        // If the target Kudu cluster does not support ignore operations use an insert.
+        // The legacy session based insert ignore will be used instead.
+        if (operationType == OperationType.INSERT_IGNORE && !supportsInsertIgnoreOp) {
+            return OperationType.INSERT;
+        }
+        return operationType;
+    }
+
+    /**
+     * The FlowFiles and operations written through one Kudu session, by one trigger or, when lingering, by several.
+     */
+    private static class WriteBatch {
+        private final List<FlowFile> flowFiles = new ArrayList<>();
+        private final Map<FlowFile, Integer> processedRecords = new HashMap<>();
+        private final Map<FlowFile, Object> flowFileFailures = new HashMap<>();
+        private final Map<Operation, FlowFile> operationFlowFileMap = new HashMap<>();
+        private final List<RowError> pendingRowErrors = new ArrayList<>();
+        private final KuduTransaction transaction;
+        private final KuduWriteSink kuduSession;
+        private final KuduStagingWriteSink staging;
+        private final KuduOwnerTrackingWriteSink ownerTracking;
+        private final Checkpoints checkpoints;
+        private final long startNanos = System.nanoTime();
+
+        private int bufferedRecords;
+        private long operations;
+        private OperationType prevOperationType = OperationType.INSERT;
+        private long records;
+        private long bytes;
+        private boolean sessionThrottled;
+        // Failure of an owner tracking sink, after which the outcome of all rows of the batch is unknown
+        private Exception sinkFailure;
+
+        // Incremental commits: FlowFiles read completely and not committed yet, the leading ones acknowledged by a flush
+        private ProcessSessionFactory durableSessionFactory;
+        private final List<FlowFile> readFlowFiles = new ArrayList<>();
+        private int acknowledgedFlowFiles;
+
+        // Streaming: row errors of released operations and the heap estimated since the last release
+        private final Map<FlowFile, ReleasedRowErrors> releasedRowErrors = new HashMap<>();
+        private long releasedOperations;
+        private long releasedThrottled;
+        private long estimatedTrackedBytes;
+        private long peakTrackedBytes;
+
+        private WriteBatch(final KuduTransaction transaction, final KuduWriteSink kuduSession, final KuduStagingWriteSink staging,
+                           final Checkpoints checkpoints) {
+            this.transaction = transaction;
+            this.kuduSession = kuduSession;
+            this.staging = staging;
+            this.ownerTracking = kuduSession instanceof KuduOwnerTrackingWriteSink ? (KuduOwnerTrackingWriteSink) kuduSession : null;
+            this.checkpoints = checkpoints;
+            if (ownerTracking != null) {
+                // Staged and sorted rows are rebuilt as new operations, so only the failed ones are mapped to their FlowFile
+                ownerTracking.setFailedOperationListener((operation, owner) -> operationFlowFileMap.put(operation, (FlowFile) owner));
+            }
+        }
+
+        /**
+         * Attributes a re-applied copy of an operation to the FlowFile and record of the original. The original stays
+         * tracked, since its row error is reported again if the retry cannot complete.
+         */
+        private void trackRetry(final Operation operation, final Operation retry) {
+            final FlowFile flowFile = operationFlowFileMap.get(operation);
+            if (flowFile != null) {
+                operationFlowFileMap.put(retry, flowFile);
+            }
+            if (checkpoints != null) {
+                checkpoints.recordRetry(operation, retry);
+            }
+        }
+    }
+
+    /**
+     * Row errors of a FlowFile whose operations are no longer tracked: their number and the first messages.
+     */
+    private static class ReleasedRowErrors {
+        private static final int MAX_MESSAGES = 10;
+
+        private final List<String> messages = new ArrayList<>();
+        private int count;
+
+        private void add(final RowError rowError) {
+            count++;
+            if (messages.size() < MAX_MESSAGES) {
+                messages.add(rowError.toString());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return count + " row errors, first: " + messages;
+        }
+    }
+
+    /**
+     * A write batch kept open across triggers together with its NiFi session and Kudu client.
+     */
+    private class LingeringBatch {
+        private final ProcessContext context;
+        private final ProcessSession session;
+        private final KuduClientHandle clientHandle;
+        private final WriteBatch batch;
+        private final WriteStageMetrics.Timer stageTimer;
+
+        private LingeringBatch(final ProcessContext context, final ProcessSession session, final KuduClientHandle clientHandle, final WriteBatch batch,
+                               final WriteStageMetrics.Timer stageTimer) {
+            this.context = context;
+            this.session = session;
+            this.clientHandle = clientHandle;
+            this.batch = batch;
+            this.stageTimer = stageTimer;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - batch.startNanos >= lingerNanos;
+        }
+
+        private boolean isFull() {
+            return batch.records >= lingerMaxRecords || batch.bytes >= lingerMaxBytes || isExpired();
+        }
+    }
+
+    /**
+     * Tracks, per FlowFile, how many leading records are known to be applied to Kudu: records whose operations
+     * were all applied without a row error, up to the first failed record.
+     */
+    private static class Checkpoints {
+        private final Map<FlowFile, Integer> completedRecords = new HashMap<>();
+        private final Map<Operation, Integer> operationRecordIndexes = new HashMap<>();
+        private final Set<String> storedUuids = new HashSet<>();
+        private boolean valid = true;
+
+        void recordCompleted(final FlowFile flowFile, final int records) {
+            completedRecords.put(flowFile, records);
+        }
+
+        void recordOperation(final Operation operation, final int recordIndex) {
+            operationRecordIndexes.put(operation, recordIndex);
+        }
+
+        void recordRetry(final Operation operation, final Operation retry) {
+            final Integer recordIndex = operationRecordIndexes.get(operation);
+            if (recordIndex != null) {
+                operationRecordIndexes.put(retry, recordIndex);
+            }
+        }
+
+        void recordStored(final String uuid) {
+            storedUuids.add(uuid);
+        }
+
+        void invalidate() {
+            valid = false;
+        }
+
+        Set<String> getStoredFlowFiles() {
+            return storedUuids;
+        }
+
+        Map<FlowFile, Integer> getAppliedRecords(final Map<Operation, FlowFile> operationFlowFileMap, final List<RowError> rowErrors) {
+            if (!valid) {
+                return Collections.emptyMap();
+            }
+
+            final Map<FlowFile, Integer> appliedRecords = new HashMap<>(completedRecords);
+            for (final RowError rowError : rowErrors) {
+                final FlowFile flowFile = operationFlowFileMap.get(rowError.getOperation());
+                final Integer recordIndex = operationRecordIndexes.get(rowError.getOperation());
+                if (flowFile != null && recordIndex != null) {
+                    appliedRecords.computeIfPresent(flowFile, (key, applied) -> Math.min(applied, recordIndex));
+                }
+            }
+            return appliedRecords;
+        }
+    }
+
     private static class RecordPathOperationType implements Function<Record, OperationType> {
         private final RecordPath recordPath;
 
@@ -0,0 +1,415 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduScanToken;
+import org.apache.kudu.client.KuduScanner;
+import org.apache.kudu.client.KuduSession;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.RowResult;
+import org.apache.kudu.client.RowResultIterator;
+import org.apache.kudu.client.SessionConfiguration;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.RequiresInstanceClassLoading;
+import org.apache.nifi.annotation.behavior.Stateful;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyDescriptor.Builder;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateMap;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import static org.apache.nifi.expression.ExpressionLanguageScope.FLOWFILE_ATTRIBUTES;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+@RequiresInstanceClassLoading // Because of calls to UserGroupInformation.setConfiguration
+@InputRequirement(InputRequirement.Requirement.INPUT_ALLOWED)
+@Tags({"delete", "purge", "retention", "database", "NoSQL", "kudu"})
+@CapabilityDescription("Deletes all rows of a Kudu table matching a predicate. Every tablet is scanned in parallel for the primary key columns of the " +
+        "matching rows only, and the rows are deleted with DELETE_IGNORE operations through one pipelined session per tablet. Completed tablets are " +
+        "checkpointed in local state, so a failed or interrupted delete resumes with the remaining tablets when it is run again with the same " +
+        "checkpoint identifier, by default the table and the unevaluated predicates. When the processor has an incoming connection, one delete is " +
+        "executed per incoming FlowFile.")
+@Stateful(scopes = Scope.LOCAL, description = "The tablets already purged by an unfinished delete, per checkpoint identifier, until the checkpoint max age.")
+@WritesAttributes({
+        @WritesAttribute(attribute = "kudu.rows.deleted", description = "Number of rows deleted"),
+        @WritesAttribute(attribute = "kudu.tablets.skipped", description = "Number of tablets skipped because an earlier run already purged them")
+})
+public class DeleteKudu extends AbstractKuduScanProcessor {
+
+    static final PropertyDescriptor DELETE_PREDICATES = new Builder()
+            .fromPropertyDescriptor(PREDICATES)
+            .description("Conditions of the rows to delete, joined by AND. Each condition is 'column op value' with op one of =, <, <=, >, >=, " +
+                    "'column IN (value, ...)', 'column IS NULL' or 'column IS NOT NULL'. Example: event_time < '2021-01-01 00:00:00'")
+            .required(true)
+            .build();
+
+    static final PropertyDescriptor DELETE_BUFFER_SIZE = new Builder()
+            .name("delete-buffer-size")
+            .displayName("Delete Buffer Size")
+            .description("The number of delete operations buffered by the session of each tablet. Operations are sent in the background while the " +
+                    "tablet is scanned, so larger buffers keep more operations in flight.")
+            .required(true)
+            .defaultValue("10000")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor CHECKPOINT_ID = new Builder()
+            .name("delete-checkpoint-id")
+            .displayName("Checkpoint Identifier")
+            .description("Identifies the delete whose purged tablets are checkpointed, so that a retried delete skips them. If not set, the table name " +
+                    "and the Predicates as configured, before Expression Language is evaluated, identify the delete: a retry resumes the failed delete " +
+                    "even when a predicate computed from now() or from attributes evaluates differently. Tablets purged with the earlier values are " +
+                    "then skipped until the delete completes, after which the next run covers all tablets again.")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .expressionLanguageSupported(FLOWFILE_ATTRIBUTES)
+            .build();
+
+    static final PropertyDescriptor CHECKPOINT_MAX_AGE = new Builder()
+            .name("delete-checkpoint-max-age")
+            .displayName("Checkpoint Max Age")
+            .description("How long the purged tablets of an unfinished delete are kept after its last checkpoint. Older checkpoints are removed " +
+                    "from local state when the next delete starts, so deletes that are never retried do not accumulate.")
+            .required(true)
+            .defaultValue("7 days")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    protected static final Relationship REL_SUCCESS = new Relationship.Builder()
+            .name("success")
+            .description("Incoming FlowFiles are routed to this relationship after all matching rows were deleted")
+            .build();
+
+    public static final String ROWS_DELETED_ATTR = "kudu.rows.deleted";
+    public static final String TABLETS_SKIPPED_ATTR = "kudu.tablets.skipped";
+
+    private static final String STATE_KEY_PREFIX = "delete.";
+    private static final int ERROR_CHECK_INTERVAL = 1000;
+
+    private final Object stateLock = new Object();
+    private volatile boolean supportsIgnoreOperations;
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        final List<PropertyDescriptor> properties = new ArrayList<>();
+        properties.add(KUDU_MASTERS);
+        properties.add(TABLE_NAME);
+        properties.add(DELETE_PREDICATES);
+        properties.add(CHECKPOINT_ID);
+        properties.add(CHECKPOINT_MAX_AGE);
+        properties.add(SCAN_THREADS);
+        properties.add(DELETE_BUFFER_SIZE);
+        properties.add(SCAN_BATCH_SIZE_BYTES);
+        properties.add(KERBEROS_CREDENTIALS_SERVICE);
+        properties.add(KERBEROS_PRINCIPAL);
+        properties.add(KERBEROS_PASSWORD);
+        properties.add(KUDU_OPERATION_TIMEOUT_MS);
+        properties.add(KUDU_KEEP_ALIVE_PERIOD_TIMEOUT_MS);
+        properties.add(WORKER_COUNT);
+        properties.add(KUDU_SASL_PROTOCOL_NAME);
+        return properties;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        final Set<Relationship> rels = new HashSet<>();
+        rels.add(REL_SUCCESS);
+        rels.add(REL_FAILURE);
+        return rels;
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) throws LoginException {
+        createKerberosUserAndOrKuduClient(context);
+        createScanExecutor(context.getProperty(SCAN_THREADS).asInteger());
+        supportsIgnoreOperations = supportsIgnoreOperations();
+        warmUpTable(context.getProperty(TABLE_NAME));
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        FlowFile flowFile = null;
+        if (context.hasIncomingConnection()) {
+            flowFile = session.get();
+            if (flowFile == null && context.hasNonLoopConnection()) {
+                return;
+            }
+        }
+
+        final FlowFile original = flowFile;
+        final DeleteResult result = new DeleteResult();
+        try {
+            executeOnKuduClientAsUser(kuduClient -> deleteRows(context, session, original, kuduClient, result));
+            if (original != null) {
+                final Map<String, String> attributes = new HashMap<>();
+                attributes.put(ROWS_DELETED_ATTR, String.valueOf(result.rowsDeleted.get()));
+                attributes.put(TABLETS_SKIPPED_ATTR, String.valueOf(result.tabletsSkipped));
+                session.transfer(session.putAllAttributes(original, attributes), REL_SUCCESS);
+            }
+        } catch (final Exception e) {
+            if (original == null) {
+                getLogger().error("Failed to delete Kudu rows; {} rows deleted so far", new Object[] {result.rowsDeleted.get()}, e);
+                context.yield();
+            } else {
+                getLogger().error("Failed to delete Kudu rows for {}; {} rows deleted so far, routing to failure",
+                        new Object[] {original, result.rowsDeleted.get()}, e);
+                session.transfer(session.penalize(original), REL_FAILURE);
+            }
+        } finally {
+            session.adjustCounter("Kudu Rows Deleted", result.rowsDeleted.get(), false);
+        }
+    }
+
+    private void deleteRows(final ProcessContext context, final ProcessSession session, final FlowFile flowFile, final KuduClient kuduClient,
+                            final DeleteResult result) {
+        final String tableName = context.getProperty(TABLE_NAME).evaluateAttributeExpressions(flowFile).getValue();
+        final String predicates = context.getProperty(DELETE_PREDICATES).evaluateAttributeExpressions(flowFile).getValue();
+        final int bufferSize = context.getProperty(DELETE_BUFFER_SIZE).asInteger();
+        if (predicates == null || predicates.trim().isEmpty()) {
+            // Never purge a whole table because an attribute was missing
+            throw new ProcessException("Predicates evaluated to an empty expression");
+        }
+
+        final KuduTable table;
+        try {
+            table = openTable(kuduClient, tableName);
+        } catch (final Exception e) {
+            throw new ProcessException(String.format("Failed to open Kudu table %s", tableName), e);
+        }
+
+        final Schema schema = table.getSchema();
+        final List<String> keyColumns = schema.getPrimaryKeyColumns().stream().map(ColumnSchema::getName).collect(Collectors.toList());
+        final List<KuduScanToken> tokens = newScanTokenBuilder(context, flowFile, kuduClient, table, keyColumns).build();
+
+        final String checkpointId = context.getProperty(CHECKPOINT_ID).evaluateAttributeExpressions(flowFile).getValue();
+        final String checkpoint = checkpointId == null ? tableName + "\n" + context.getProperty(DELETE_PREDICATES).getValue() : checkpointId;
+        final String stateKey = STATE_KEY_PREFIX + UUID.nameUUIDFromBytes(checkpoint.getBytes(StandardCharsets.UTF_8));
+        final long maxAgeMillis = context.getProperty(CHECKPOINT_MAX_AGE).asTimePeriod(TimeUnit.MILLISECONDS);
+        final Set<String> completedTablets = getCompletedTablets(context, stateKey, maxAgeMillis);
+
+        final long start = System.nanoTime();
+        final List<Future<?>> tabletDeletes = new ArrayList<>();
+        for (final KuduScanToken token : tokens) {
+            final String tabletId = new String(token.getTablet().getTabletId(), StandardCharsets.UTF_8);
+            if (completedTablets.contains(tabletId)) {
+                result.tabletsSkipped++;
+                continue;
+            }
+            tabletDeletes.add(getScanExecutor().submit(() -> {
+                deleteTabletRows(kuduClient, table, token, bufferSize, result.rowsDeleted);
+                addCompletedTablet(context, stateKey, tabletId);
+                return null;
+            }));
+        }
+
+        // Tablet tasks may also fail with an Error, which must surface as the cause rather than a ClassCastException
+        Throwable failure = null;
+        for (final Future<?> tabletDelete : tabletDeletes) {
+            try {
+                tabletDelete.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                tabletDeletes.forEach(delete -> delete.cancel(true));
+                throw new ProcessException("Interrupted while deleting Kudu rows", e);
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw new ProcessException(String.format("Failed to delete rows from %d of %d tablets of %s", failure.getSuppressed().length + 1,
+                    tokens.size(), tableName), failure);
+        }
+
+        removeState(context, stateKey);
+        getLogger().info("Deleted {} rows from {} tablets of {} in {} ms; {} tablets were already purged",
+                new Object[] {result.rowsDeleted.get(), tabletDeletes.size(), tableName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), result.tabletsSkipped});
+    }
+
+    /**
+     * Scans the primary keys of the matching rows of one tablet and deletes them through a background flushing session.
+     */
+    private void deleteTabletRows(final KuduClient kuduClient, final KuduTable table, final KuduScanToken token, final int bufferSize,
+                                  final AtomicLong rowsDeleted) throws Exception {
+        final KuduSession kuduSession = kuduClient.newSession();
+        kuduSession.setFlushMode(SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND);
+        kuduSession.setMutationBufferSpace(bufferSize);
+        final KuduWriteSink sink = new KuduSessionWriteSink(kuduSession);
+
+        final List<RowError> rowErrors = new ArrayList<>();
+        final KuduScanner scanner = token.intoScanner(kuduClient);
+        long applied = 0;
+        try {
+            final Schema keySchema = scanner.getProjectionSchema();
+            while (scanner.hasMoreRows()) {
+                final RowResultIterator rows = scanner.nextRows();
+                while (rows.hasNext()) {
+                    sink.apply(newDelete(table, keySchema, rows.next()));
+                    if (++applied % ERROR_CHECK_INTERVAL == 0) {
+                        collectRowErrors(sink.getPendingRowErrors(), rowErrors);
+                    }
+                }
+            }
+        } finally {
+            try {
+                scanner.close();
+            } finally {
+                final List<RowError> flushErrors = new ArrayList<>();
+                flushKuduSession(sink, true, flushErrors);
+                collectRowErrors(flushErrors, rowErrors);
+            }
+        }
+
+        rowsDeleted.addAndGet(applied - rowErrors.size());
+        if (!rowErrors.isEmpty()) {
+            throw new ProcessException(String.format("%d deletes failed on tablet %s, first error: %s", rowErrors.size(),
+                    new String(token.getTablet().getTabletId(), StandardCharsets.UTF_8), rowErrors.get(0)));
+        }
+    }
+
+    private Operation newDelete(final KuduTable table, final Schema keySchema, final RowResult keyRow) {
+        final Operation delete = supportsIgnoreOperations ? table.newDeleteIgnore() : table.newDelete();
+        final PartialRow row = delete.getRow();
+        for (int i = 0; i < keySchema.getColumnCount(); i++) {
+            row.addObject(keySchema.getColumnByIndex(i).getName(), keyRow.getObject(i));
+        }
+        return delete;
+    }
+
+    /**
+     * Keeps the row errors that are not caused by rows deleted concurrently, which DELETE_IGNORE reports as success.
+     */
+    private static void collectRowErrors(final List<RowError> errors, final List<RowError> rowErrors) {
+        for (final RowError error : errors) {
+            if (!error.getErrorStatus().isNotFound()) {
+                rowErrors.add(error);
+            }
+        }
+    }
+
+    /**
+     * Removes the checkpoints not updated within the max age, then returns the purged tablets of the delete.
+     */
+    private Set<String> getCompletedTablets(final ProcessContext context, final String stateKey, final long maxAgeMillis) {
+        synchronized (stateLock) {
+            try {
+                final Map<String, String> state = new HashMap<>(context.getStateManager().getState(Scope.LOCAL).toMap());
+                final long expiredBefore = System.currentTimeMillis() - maxAgeMillis;
+                final boolean expired = state.entrySet().removeIf(entry -> entry.getKey().startsWith(STATE_KEY_PREFIX)
+                        && getCheckpointMillis(entry.getValue()) < expiredBefore);
+                if (expired) {
+                    context.getStateManager().setState(state, Scope.LOCAL);
+                }
+                return getCheckpointTablets(state.get(stateKey));
+            } catch (final IOException e) {
+                throw new ProcessException("Failed to retrieve the purged tablets from local state", e);
+            }
+        }
+    }
+
+    /**
+     * @return Time of the last checkpoint of a state value 'millis:tablet,tablet', or 0 for a value without one
+     */
+    private static long getCheckpointMillis(final String checkpoint) {
+        final int separator = checkpoint.indexOf(':');
+        try {
+            return separator < 0 ? 0 : Long.parseLong(checkpoint.substring(0, separator));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Set<String> getCheckpointTablets(final String checkpoint) {
+        final Set<String> tablets = new LinkedHashSet<>();
+        if (checkpoint != null) {
+            final String tabletIds = checkpoint.substring(checkpoint.indexOf(':') + 1);
+            if (!tabletIds.isEmpty()) {
+                tablets.addAll(Arrays.asList(tabletIds.split(",")));
+            }
+        }
+        return tablets;
+    }
+
+    private void addCompletedTablet(final ProcessContext context, final String stateKey, final String tabletId) {
+        synchronized (stateLock) {
+            try {
+                final StateMap stateMap = context.getStateManager().getState(Scope.LOCAL);
+                final Map<String, String> state = new HashMap<>(stateMap.toMap());
+                final Set<String> completed = getCheckpointTablets(state.get(stateKey));
+                completed.add(tabletId);
+                state.put(stateKey, System.currentTimeMillis() + ":" + String.join(",", completed));
+                context.getStateManager().setState(state, Scope.LOCAL);
+            } catch (final IOException e) {
+                getLogger().warn("Failed to checkpoint purged tablet {}; it will be scanned again if the delete is retried", new Object[] {tabletId}, e);
+            }
+        }
+    }
+
+    private void removeState(final ProcessContext context, final String stateKey) {
+        synchronized (stateLock) {
+            try {
+                final Map<String, String> state = new HashMap<>(context.getStateManager().getState(Scope.LOCAL).toMap());
+                if (state.remove(stateKey) != null) {
+                    context.getStateManager().setState(state, Scope.LOCAL);
+                }
+            } catch (final IOException e) {
+                getLogger().warn("Failed to clear the purged tablets of a completed delete from local state", e);
+            }
+        }
+    }
+
+    private static class DeleteResult {
+        private final AtomicLong rowsDeleted = new AtomicLong();
+        private int tabletsSkipped;
+    }
+}
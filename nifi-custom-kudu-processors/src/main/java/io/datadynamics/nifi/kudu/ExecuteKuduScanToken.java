@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduScanToken;
+import org.apache.kudu.client.KuduScanner;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.ReadsAttribute;
+import org.apache.nifi.annotation.behavior.RequiresInstanceClassLoading;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+
+import javax.security.auth.login.LoginException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+@RequiresInstanceClassLoading // Because of calls to UserGroupInformation.setConfiguration
+@InputRequirement(InputRequirement.Requirement.INPUT_REQUIRED)
+@Tags({"get", "scan", "token", "database", "NoSQL", "kudu", "record", "distributed"})
+@CapabilityDescription("Executes the serialized Kudu scan token contained in an incoming FlowFile, as generated by GenerateKuduScanTokens, and writes the " +
+        "rows with the provided Record Writer. Tokens carry the table, projection, predicates and snapshot timestamp of the scan, so they can be " +
+        "executed on any node of the cluster and retried after a failure.")
+@SeeAlso(GenerateKuduScanTokens.class)
+@ReadsAttribute(attribute = "kudu.table.name", description = "Name of the scanned Kudu table, used for logging")
+@WritesAttributes({
+        @WritesAttribute(attribute = "record.count", description = "Number of rows in the FlowFile"),
+        @WritesAttribute(attribute = "fragment.identifier", description = "Identifier shared by all FlowFiles of one token"),
+        @WritesAttribute(attribute = "fragment.index", description = "Index of the FlowFile within the token"),
+        @WritesAttribute(attribute = "fragment.count", description = "Number of FlowFiles of the token"),
+        @WritesAttribute(attribute = "mime.type", description = "Mime type of the Record Writer")
+})
+public class ExecuteKuduScanToken extends AbstractKuduScanProcessor {
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        final List<PropertyDescriptor> properties = new ArrayList<>();
+        properties.add(KUDU_MASTERS);
+        properties.add(RECORD_WRITER);
+        properties.add(ROWS_PER_FLOWFILE);
+        properties.add(SCAN_BUFFER_SIZE);
+        properties.add(KERBEROS_CREDENTIALS_SERVICE);
+        properties.add(KERBEROS_PRINCIPAL);
+        properties.add(KERBEROS_PASSWORD);
+        properties.add(KUDU_OPERATION_TIMEOUT_MS);
+        properties.add(KUDU_KEEP_ALIVE_PERIOD_TIMEOUT_MS);
+        properties.add(WORKER_COUNT);
+        properties.add(KUDU_SASL_PROTOCOL_NAME);
+        return properties;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        final Set<Relationship> rels = new HashSet<>();
+        rels.add(REL_SUCCESS);
+        rels.add(REL_FAILURE);
+        rels.add(REL_ORIGINAL);
+        return rels;
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) throws LoginException {
+        createKerberosUserAndOrKuduClient(context);
+        // Every concurrent task executes one token at a time
+        createScanExecutor(context.getMaxConcurrentTasks());
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        final FlowFile flowFile = session.get();
+        if (flowFile == null) {
+            return;
+        }
+
+        try {
+            final byte[] serializedToken;
+            try (final InputStream in = session.read(flowFile)) {
+                serializedToken = IOUtils.toByteArray(in);
+            }
+
+            executeOnKuduClientAsUser(kuduClient -> executeToken(context, session, flowFile, kuduClient, serializedToken));
+            session.transfer(flowFile, REL_ORIGINAL);
+        } catch (final Exception e) {
+            getLogger().error("Failed to execute Kudu scan token of {}; routing to failure", new Object[] {flowFile}, e);
+            session.transfer(session.penalize(flowFile), REL_FAILURE);
+        }
+    }
+
+    private void executeToken(final ProcessContext context, final ProcessSession session, final FlowFile flowFile, final KuduClient kuduClient,
+                              final byte[] serializedToken) {
+        final KuduScanner scanner;
+        try {
+            scanner = KuduScanToken.deserializeIntoScanner(serializedToken, kuduClient);
+        } catch (final Exception e) {
+            throw new ProcessException("Failed to deserialize Kudu scan token", e);
+        }
+
+        final KuduRowConverter converter = new KuduRowConverter(scanner.getProjectionSchema());
+        final List<Callable<KuduScanner>> scanners = Collections.singletonList(() -> scanner);
+        final long rows = scanToFlowFiles(context, session, flowFile, scanners, converter, Collections.emptyMap());
+
+        session.adjustCounter("Kudu Rows Scanned", rows, false);
+        getLogger().debug("Scanned {} rows of {} with token {}", new Object[] {rows, flowFile.getAttribute(TABLE_NAME_ATTR), flowFile});
+    }
+}
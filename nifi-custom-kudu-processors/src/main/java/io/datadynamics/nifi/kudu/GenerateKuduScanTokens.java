@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.AsyncKuduScanner;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduScanToken;
+import org.apache.kudu.client.KuduTable;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.RequiresInstanceClassLoading;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyDescriptor.Builder;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.nifi.expression.ExpressionLanguageScope.FLOWFILE_ATTRIBUTES;
+
+@RequiresInstanceClassLoading // Because of calls to UserGroupInformation.setConfiguration
+@InputRequirement(InputRequirement.Requirement.INPUT_ALLOWED)
+@Tags({"scan", "token", "database", "NoSQL", "kudu", "distributed"})
+@CapabilityDescription("Plans a scan of a Kudu table and writes one serialized scan token per tablet to its own FlowFile. All tokens of a scan read " +
+        "at the same snapshot timestamp, so the FlowFiles can be distributed over a load-balanced connection and executed by ExecuteKuduScanToken " +
+        "on any node of the cluster while still returning a consistent view of the table.")
+@SeeAlso(ExecuteKuduScanToken.class)
+@WritesAttributes({
+        @WritesAttribute(attribute = "kudu.table.name", description = "Name of the scanned Kudu table"),
+        @WritesAttribute(attribute = "kudu.scan.snapshot.micros", description = "Snapshot timestamp of the scan in microseconds since the epoch"),
+        @WritesAttribute(attribute = "kudu.tablet.id", description = "Identifier of the tablet read by the token"),
+        @WritesAttribute(attribute = "fragment.identifier", description = "Identifier shared by all tokens of one scan"),
+        @WritesAttribute(attribute = "fragment.index", description = "Index of the token within the scan"),
+        @WritesAttribute(attribute = "fragment.count", description = "Number of tokens of the scan")
+})
+public class GenerateKuduScanTokens extends AbstractKuduScanProcessor {
+
+    static final PropertyDescriptor SNAPSHOT_TIMESTAMP = new Builder()
+            .name("snapshot-timestamp-micros")
+            .displayName("Snapshot Timestamp")
+            .description("The snapshot timestamp of the scan in microseconds since the epoch. If not set, the current time is used when the tokens are generated.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .expressionLanguageSupported(FLOWFILE_ATTRIBUTES)
+            .build();
+
+    protected static final Relationship REL_SUCCESS = new Relationship.Builder()
+            .name("success")
+            .description("FlowFiles containing one serialized scan token each are routed to this relationship")
+            .build();
+
+    public static final String SNAPSHOT_ATTR = "kudu.scan.snapshot.micros";
+    public static final String TABLET_ID_ATTR = "kudu.tablet.id";
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        final List<PropertyDescriptor> properties = new ArrayList<>();
+        properties.add(KUDU_MASTERS);
+        properties.add(TABLE_NAME);
+        properties.add(PROJECTED_COLUMNS);
+        properties.add(PREDICATES);
+        properties.add(SNAPSHOT_TIMESTAMP);
+        properties.add(SCAN_BATCH_SIZE_BYTES);
+        properties.add(KERBEROS_CREDENTIALS_SERVICE);
+        properties.add(KERBEROS_PRINCIPAL);
+        properties.add(KERBEROS_PASSWORD);
+        properties.add(KUDU_OPERATION_TIMEOUT_MS);
+        properties.add(KUDU_KEEP_ALIVE_PERIOD_TIMEOUT_MS);
+        properties.add(WORKER_COUNT);
+        properties.add(KUDU_SASL_PROTOCOL_NAME);
+        return properties;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        final Set<Relationship> rels = new HashSet<>();
+        rels.add(REL_SUCCESS);
+        rels.add(REL_FAILURE);
+        rels.add(REL_ORIGINAL);
+        return rels;
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) throws LoginException {
+        createKerberosUserAndOrKuduClient(context);
+        warmUpTable(context.getProperty(TABLE_NAME));
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        FlowFile flowFile = null;
+        if (context.hasIncomingConnection()) {
+            flowFile = session.get();
+            if (flowFile == null && context.hasNonLoopConnection()) {
+                return;
+            }
+        }
+
+        final FlowFile original = flowFile;
+        final List<FlowFile> tokenFlowFiles = new ArrayList<>();
+        try {
+            executeOnKuduClientAsUser(kuduClient -> generateTokens(context, session, original, kuduClient, tokenFlowFiles));
+            session.transfer(tokenFlowFiles, REL_SUCCESS);
+            if (original != null) {
+                session.transfer(original, REL_ORIGINAL);
+            }
+        } catch (final Exception e) {
+            session.remove(tokenFlowFiles);
+            if (original == null) {
+                getLogger().error("Failed to generate Kudu scan tokens", e);
+                context.yield();
+            } else {
+                getLogger().error("Failed to generate Kudu scan tokens for {}; routing to failure", new Object[] {original}, e);
+                session.transfer(session.penalize(original), REL_FAILURE);
+            }
+        }
+    }
+
+    private void generateTokens(final ProcessContext context, final ProcessSession session, final FlowFile flowFile, final KuduClient kuduClient,
+                                final List<FlowFile> tokenFlowFiles) {
+        final String tableName = context.getProperty(TABLE_NAME).evaluateAttributeExpressions(flowFile).getValue();
+        final KuduTable table;
+        try {
+            table = openTable(kuduClient, tableName);
+        } catch (final Exception e) {
+            throw new ProcessException(String.format("Failed to open Kudu table %s", tableName), e);
+        }
+
+        final Long configuredSnapshot = context.getProperty(SNAPSHOT_TIMESTAMP).evaluateAttributeExpressions(flowFile).asLong();
+        final long snapshotMicros = configuredSnapshot == null ? TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()) : configuredSnapshot;
+
+        final List<String> columnNames = getProjectedColumns(context, flowFile, table.getSchema());
+        final List<KuduScanToken> tokens = newScanTokenBuilder(context, flowFile, kuduClient, table, columnNames)
+                .readMode(AsyncKuduScanner.ReadMode.READ_AT_SNAPSHOT)
+                .snapshotTimestampMicros(snapshotMicros)
+                .build();
+
+        final String fragmentId = UUID.randomUUID().toString();
+        for (int i = 0; i < tokens.size(); i++) {
+            final KuduScanToken token = tokens.get(i);
+            final byte[] serialized;
+            try {
+                serialized = token.serialize();
+            } catch (final IOException e) {
+                throw new ProcessException(String.format("Failed to serialize scan token of table %s", tableName), e);
+            }
+
+            FlowFile tokenFlowFile = flowFile == null ? session.create() : session.create(flowFile);
+            tokenFlowFile = session.write(tokenFlowFile, out -> out.write(serialized));
+
+            final Map<String, String> attributes = new HashMap<>();
+            attributes.put(TABLE_NAME_ATTR, tableName);
+            attributes.put(SNAPSHOT_ATTR, String.valueOf(snapshotMicros));
+            attributes.put(TABLET_ID_ATTR, new String(token.getTablet().getTabletId(), StandardCharsets.UTF_8));
+            attributes.put(FRAGMENT_ID_ATTR, fragmentId);
+            attributes.put(FRAGMENT_INDEX_ATTR, String.valueOf(i));
+            attributes.put(FRAGMENT_COUNT_ATTR, String.valueOf(tokens.size()));
+            attributes.put(CoreAttributes.MIME_TYPE.key(), "application/octet-stream");
+            tokenFlowFiles.add(session.putAllAttributes(tokenFlowFile, attributes));
+        }
+
+        session.adjustCounter("Kudu Scan Tokens Generated", tokens.size(), false);
+        getLogger().debug("Generated {} scan tokens for {} at snapshot {}", new Object[] {tokens.size(), tableName, snapshotMicros});
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.KuduSession;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+import org.apache.nifi.logging.ComponentLog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies operations through a fixed number of lanes, each a single thread writing through its own KuduSession.
+ * The lane of an operation is chosen by hashing its table and primary key, so operations on one key always go
+ * through the same lane and are applied in the order they were handed over, whichever task or FlowFile they come
+ * from, while operations on different keys are written in parallel over several sessions and connections.
+ */
+class KuduApplyLanes {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final Lane[] lanes;
+    private final ComponentLog logger;
+
+    /**
+     * @param laneCount  Number of lanes
+     * @param batchSize  Maximum number of operations a lane applies per flush, and capacity of its queue
+     * @param threadName Prefix of the lane thread names
+     * @param logger     Logger of the processor
+     */
+    KuduApplyLanes(final int laneCount, final int batchSize, final String threadName, final ComponentLog logger) {
+        this.logger = logger;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(batchSize);
+            final Thread thread = new Thread(lanes[i], threadName + "-" + i);
+            thread.setDaemon(true);
+            lanes[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * @param client Kudu client of the operations
+     * @return Sink of one task handing its operations to the lanes
+     */
+    Sink newSink(final KuduClient client) {
+        return new Sink(client);
+    }
+
+    /**
+     * Stops the lanes after the batch they are writing; operations still queued fail.
+     */
+    void shutdown() {
+        for (final Lane lane : lanes) {
+            lane.stopped = true;
+        }
+        for (final Lane lane : lanes) {
+            try {
+                lane.thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private Lane laneOf(final Operation operation) {
+        final PartialRow row = operation.getRow();
+        final Schema schema = operation.getTable().getSchema();
+        int hash = operation.getTable().getTableId().hashCode();
+        // Key columns are the first columns of the schema
+        for (int i = 0; i < schema.getPrimaryKeyColumnCount(); i++) {
+            final Object value = row.getObject(i);
+            hash = 31 * hash + (value instanceof byte[] ? Arrays.hashCode((byte[]) value) : Objects.hashCode(value));
+        }
+        hash ^= hash >>> 16;
+        return lanes[Math.floorMod(hash, lanes.length)];
+    }
+
+    private static class Entry {
+        private final Operation operation;
+        private final Sink owner;
+        private final boolean ignoreAllDuplicateRows;
+
+        private Entry(final Operation operation, final Sink owner, final boolean ignoreAllDuplicateRows) {
+            this.operation = operation;
+            this.owner = owner;
+            this.ignoreAllDuplicateRows = ignoreAllDuplicateRows;
+        }
+    }
+
+    private class Lane implements Runnable {
+        private final int batchSize;
+        private final BlockingQueue<Entry> queue;
+        private volatile boolean stopped;
+        private Thread thread;
+
+        private KuduClient sessionClient;
+        private KuduSession kuduSession;
+
+        private Lane(final int batchSize) {
+            this.batchSize = batchSize;
+            this.queue = new ArrayBlockingQueue<>(batchSize);
+        }
+
+        private void put(final Entry entry) throws InterruptedException {
+            while (!queue.offer(entry, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (stopped) {
+                    throw new IllegalStateException("Kudu apply lanes are stopped");
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            final List<Entry> batch = new ArrayList<>(batchSize);
+            while (!stopped) {
+                try {
+                    final Entry entry = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (entry == null) {
+                        continue;
+                    }
+                    batch.add(entry);
+                } catch (final InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(batch, batchSize - 1);
+
+                // Segments end where the client or the duplicate rows setting changes, which requires a flush anyway
+                int start = 0;
+                while (start < batch.size()) {
+                    final Entry first = batch.get(start);
+                    int end = start + 1;
+                    while (end < batch.size() && batch.get(end).owner.client == first.owner.client
+                            && batch.get(end).ignoreAllDuplicateRows == first.ignoreAllDuplicateRows) {
+                        end++;
+                    }
+                    applySegment(batch.subList(start, end));
+                    start = end;
+                }
+                batch.clear();
+            }
+
+            final List<Entry> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            fail(remaining, new IllegalStateException("Kudu apply lanes are stopped"));
+            closeSession();
+        }
+
+        private void applySegment(final List<Entry> segment) {
+            final Entry first = segment.get(0);
+            final List<OperationResponse> responses;
+            try {
+                if (kuduSession == null || sessionClient != first.owner.client) {
+                    closeSession();
+                    kuduSession = first.owner.client.newSession();
+                    kuduSession.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH);
+                    kuduSession.setMutationBufferSpace(batchSize);
+                    sessionClient = first.owner.client;
+                }
+                kuduSession.setIgnoreAllDuplicateRows(first.ignoreAllDuplicateRows);
+                for (final Entry entry : segment) {
+                    kuduSession.apply(entry.operation);
+                }
+                responses = kuduSession.flush();
+            } catch (final KuduException | RuntimeException e) {
+                closeSession();
+                fail(segment, e);
+                return;
+            }
+
+            final Map<Operation, Sink> owners = new IdentityHashMap<>();
+            final Map<Sink, List<OperationResponse>> ownerResponses = new IdentityHashMap<>();
+            final Map<Sink, Integer> ownerCounts = new IdentityHashMap<>();
+            for (final Entry entry : segment) {
+                owners.put(entry.operation, entry.owner);
+                ownerResponses.computeIfAbsent(entry.owner, owner -> new ArrayList<>());
+                ownerCounts.merge(entry.owner, 1, Integer::sum);
+            }
+
+            // Row errors name their operation; the other responses only feed the per tablet server metrics of the processor,
+            // which are aggregated over its tasks, so they are handed out in no particular order to fill each task up to
+            // its number of operations
+            final List<OperationResponse> unowned = new ArrayList<>();
+            for (final OperationResponse response : responses) {
+                final RowError rowError = response.getRowError();
+                final Sink owner = rowError == null ? null : owners.get(rowError.getOperation());
+                if (owner == null) {
+                    unowned.add(response);
+                } else {
+                    ownerResponses.get(owner).add(response);
+                }
+            }
+
+            final Iterator<OperationResponse> iterator = unowned.iterator();
+            for (final Map.Entry<Sink, List<OperationResponse>> owner : ownerResponses.entrySet()) {
+                final int count = ownerCounts.get(owner.getKey());
+                while (owner.getValue().size() < count && iterator.hasNext()) {
+                    owner.getValue().add(iterator.next());
+                }
+                owner.getKey().complete(count, owner.getValue(), null);
+            }
+        }
+
+        private void fail(final List<Entry> entries, final Exception e) {
+            final Map<Sink, Integer> ownerCounts = new IdentityHashMap<>();
+            for (final Entry entry : entries) {
+                ownerCounts.merge(entry.owner, 1, Integer::sum);
+            }
+            for (final Map.Entry<Sink, Integer> owner : ownerCounts.entrySet()) {
+                owner.getKey().complete(owner.getValue(), Collections.emptyList(), e);
+            }
+        }
+
+        private void closeSession() {
+            if (kuduSession == null) {
+                return;
+            }
+            try {
+                kuduSession.close();
+            } catch (final KuduException | RuntimeException e) {
+                logger.warn("Failed to close Kudu session of apply lane", e);
+            }
+            kuduSession = null;
+            sessionClient = null;
+        }
+    }
+
+    /**
+     * Write sink of one task. Operations are handed to their lane on apply; a flush waits until the lanes have written
+     * all operations of the sink and returns their responses.
+     */
+    class Sink implements KuduWriteSink {
+        private final KuduClient client;
+        private boolean ignoreAllDuplicateRows;
+
+        private final Object lock = new Object();
+        private final List<OperationResponse> responses = new ArrayList<>();
+        private int outstanding;
+        private Exception failure;
+
+        private Sink(final KuduClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public OperationResponse apply(final Operation operation) throws KuduException {
+            synchronized (lock) {
+                outstanding++;
+            }
+            try {
+                laneOf(operation).put(new Entry(operation, this, ignoreAllDuplicateRows));
+            } catch (final InterruptedException | RuntimeException e) {
+                synchronized (lock) {
+                    outstanding--;
+                }
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while handing an operation to its Kudu apply lane", e);
+                }
+                throw (RuntimeException) e;
+            }
+            return null;
+        }
+
+        @Override
+        public List<OperationResponse> flush() throws KuduException {
+            boolean interrupted = false;
+            synchronized (lock) {
+                while (outstanding > 0) {
+                    try {
+                        lock.wait();
+                    } catch (final InterruptedException e) {
+                        // Queued operations are applied anyway, so their outcome must be awaited
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+
+                final Exception e = failure;
+                failure = null;
+                final List<OperationResponse> flushed = new ArrayList<>(responses);
+                responses.clear();
+                if (e instanceof KuduException) {
+                    throw (KuduException) e;
+                } else if (e != null) {
+                    throw (RuntimeException) e;
+                }
+                return flushed;
+            }
+        }
+
+        @Override
+        public List<OperationResponse> close() throws KuduException {
+            return flush();
+        }
+
+        /**
+         * Responses carry the row errors as with MANUAL_FLUSH, whatever the flush mode of the processor.
+         */
+        @Override
+        public SessionConfiguration.FlushMode getFlushMode() {
+            return SessionConfiguration.FlushMode.MANUAL_FLUSH;
+        }
+
+        @Override
+        public List<RowError> getPendingRowErrors() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void setIgnoreAllDuplicateRows(final boolean ignoreAllDuplicateRows) {
+            this.ignoreAllDuplicateRows = ignoreAllDuplicateRows;
+        }
+
+        private void complete(final int count, final List<OperationResponse> completed, final Exception e) {
+            synchronized (lock) {
+                outstanding -= count;
+                responses.addAll(completed);
+                if (e != null && failure == null) {
+                    failure = e;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker shared by the concurrent tasks of one processor while it is scheduled. Processors are loaded by
+ * their own instance class loader, so the breaker is not shared with other processors writing to the same table. It
+ * tracks the rate of ServiceUnavailable and timeout errors over a sliding window, opens when the rate exceeds a
+ * threshold, and after the open period admits a growing share of triggers (half-open) until writes succeed again.
+ */
+public class KuduCircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int WINDOW_BUCKETS = 10;
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MINIMUM_OPERATIONS = 100;
+    private static final double INITIAL_HALF_OPEN_RATIO = 0.1;
+    private static final long EMPTY_BUCKET = Long.MIN_VALUE;
+
+    private final String key;
+    private final long[] bucketIds = new long[WINDOW_BUCKETS];
+    private final long[] bucketOperations = new long[WINDOW_BUCKETS];
+    private final long[] bucketFailures = new long[WINDOW_BUCKETS];
+
+    private final int failureRateThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private double halfOpenRatio;
+
+    /**
+     * @param key                  Kudu masters and table of the breaker, used in log messages
+     * @param failureRateThreshold Percentage of throttled operations in the window that opens the breaker
+     * @param openDurationMs       Time to reject triggers before probing again
+     */
+    public KuduCircuitBreaker(final String key, final int failureRateThreshold, final long openDurationMs) {
+        this.key = key;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        resetWindow();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns whether a trigger may write to Kudu. Always true while closed; false while open; and true for a
+     * random share of triggers, doubling with every successful probe, while half-open.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openDurationNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                halfOpenRatio = INITIAL_HALF_OPEN_RATIO;
+                return true;
+            default:
+                return ThreadLocalRandom.current().nextDouble() < halfOpenRatio;
+        }
+    }
+
+    /**
+     * Record the outcome of a batch of operations
+     *
+     * @param operations Number of operations written
+     * @param throttled  Number of operations that failed with ServiceUnavailable or timeout errors
+     */
+    public synchronized void recordOutcome(final long operations, final long throttled) {
+        if (operations <= 0 && throttled <= 0) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final long bucketId = now / BUCKET_NANOS;
+        final int bucket = (int) Math.floorMod(bucketId, (long) WINDOW_BUCKETS);
+        if (bucketIds[bucket] != bucketId) {
+            bucketIds[bucket] = bucketId;
+            bucketOperations[bucket] = 0;
+            bucketFailures[bucket] = 0;
+        }
+        bucketOperations[bucket] += Math.max(operations, throttled);
+        bucketFailures[bucket] += throttled;
+
+        if (state == State.HALF_OPEN) {
+            if (throttled > 0) {
+                open(now);
+            } else {
+                halfOpenRatio *= 2;
+                if (halfOpenRatio >= 1) {
+                    state = State.CLOSED;
+                    resetWindow();
+                }
+            }
+            return;
+        }
+
+        if (state == State.CLOSED && failureRateThreshold > 0) {
+            long windowOperations = 0;
+            long windowFailures = 0;
+            for (int i = 0; i < WINDOW_BUCKETS; i++) {
+                if (bucketIds[i] != EMPTY_BUCKET && bucketId - bucketIds[i] < WINDOW_BUCKETS) {
+                    windowOperations += bucketOperations[i];
+                    windowFailures += bucketFailures[i];
+                }
+            }
+
+            if (windowOperations >= MINIMUM_OPERATIONS && windowFailures * 100 >= windowOperations * failureRateThreshold) {
+                open(now);
+            }
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void open(final long now) {
+        state = State.OPEN;
+        openedAt = now;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < WINDOW_BUCKETS; i++) {
+            bucketIds[i] = EMPTY_BUCKET;
+            bucketOperations[i] = 0;
+            bucketFailures[i] = 0;
+        }
+    }
+}
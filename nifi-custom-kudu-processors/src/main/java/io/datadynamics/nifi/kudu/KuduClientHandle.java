@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduException;
+import org.apache.nifi.logging.ComponentLog;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted Kudu client. The processor holds one reference until the client is replaced or the processor
+ * is stopped, and every trigger holds one while it uses the client, so a replaced client is closed by whoever
+ * releases it last, without blocking triggers on the new client.
+ */
+class KuduClientHandle {
+
+    private final KuduClient client;
+    private final ComponentLog logger;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    KuduClientHandle(final KuduClient client, final ComponentLog logger) {
+        this.client = client;
+        this.logger = logger;
+    }
+
+    KuduClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return false if the client was already released by all its holders and is closing
+     */
+    boolean retain() {
+        while (true) {
+            final int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases one reference and closes the client on the given executor when it was the last one.
+     *
+     * @param closer Executor closing the client
+     */
+    void release(final Executor closer) {
+        if (references.decrementAndGet() == 0) {
+            closer.execute(this::close);
+        }
+    }
+
+    private void close() {
+        try {
+            client.close();
+        } catch (final KuduException e) {
+            logger.error("Couldn't close Kudu client.", e);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.Statistics;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.ProcessSession;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the write statistics of a Kudu client per table and per tablet, the response times per tablet server of
+ * the responses returned by flushes, and the slowest flushes. Table statistics are published as processor counters;
+ * the rest is reported periodically, with a warning bulletin for tablet servers that are much slower than their peers.
+ *
+ * Kudu 1.15 does not expose the tablet of an operation nor per-session resource metrics, so tablets are reported
+ * from the client statistics of the reporting period rather than per flush. The client statistics have no tablet
+ * server dimension, so tablet servers are only known from operation responses, which makes them a sample: with
+ * AUTO_FLUSH_BACKGROUND a flush only returns the responses of the operations still buffered, not of those written in
+ * the background, and group commits and apply lanes hand the responses without row errors to their tasks in no
+ * particular order. The response times per tablet server are meant to compare servers, not to count their writes.
+ */
+public class KuduClientMetrics {
+
+    private static final int TOP_COUNT = 10;
+    private static final long SLOW_SERVER_MIN_RESPONSES = 100;
+    private static final double SLOW_SERVER_FACTOR = 2.0;
+
+    private static final Statistics.Statistic[] TABLE_STATISTICS = {
+            Statistics.Statistic.WRITE_OPS,
+            Statistics.Statistic.WRITE_RPCS,
+            Statistics.Statistic.BYTES_WRITTEN,
+            Statistics.Statistic.OPS_ERRORS,
+            Statistics.Statistic.RPC_ERRORS
+    };
+
+    private final ConcurrentMap<String, ServerMetrics> serverMetrics = new ConcurrentHashMap<>();
+    private final PriorityQueue<FlushSample> slowestFlushes = new PriorityQueue<>(Comparator.comparingLong(FlushSample::getElapsedNanos));
+
+    private KuduClient statisticsClient;
+    private final Map<String, Long> tableBaseline = new HashMap<>();
+    private final Map<String, Long> tabletPeriodBaseline = new HashMap<>();
+
+    /**
+     * Record the responses of a flush
+     *
+     * @param elapsedNanos Time spent in the flush
+     * @param responses    Responses returned by the flush
+     */
+    public void recordFlush(final long elapsedNanos, final List<OperationResponse> responses) {
+        if (responses.isEmpty()) {
+            return;
+        }
+
+        final Set<String> tabletServers = new TreeSet<>();
+        for (final OperationResponse response : responses) {
+            final String tsUuid = response.getTsUUID();
+            if (tsUuid == null) {
+                continue;
+            }
+            tabletServers.add(tsUuid);
+            serverMetrics.computeIfAbsent(tsUuid, uuid -> new ServerMetrics()).record(response);
+        }
+
+        synchronized (slowestFlushes) {
+            if (slowestFlushes.size() < TOP_COUNT || slowestFlushes.peek().getElapsedNanos() < elapsedNanos) {
+                slowestFlushes.add(new FlushSample(elapsedNanos, responses.size(), tabletServers));
+                if (slowestFlushes.size() > TOP_COUNT) {
+                    slowestFlushes.poll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Publish the increase of the client's per-table write statistics since the last call as counters
+     *
+     * @param client  Kudu client
+     * @param session Process Session
+     */
+    public void publishCounters(final KuduClient client, final ProcessSession session) {
+        final Map<String, Long> deltas = new HashMap<>();
+        synchronized (tableBaseline) {
+            final boolean newClient = client != statisticsClient;
+            if (newClient) {
+                statisticsClient = client;
+                tableBaseline.clear();
+                tabletPeriodBaseline.clear();
+            }
+
+            final Statistics statistics = client.getStatistics();
+            for (final String tableName : statistics.getTableSet()) {
+                for (final Statistics.Statistic statistic : TABLE_STATISTICS) {
+                    final String key = "Kudu " + getDisplayName(statistic) + " [" + tableName + "]";
+                    final long value = statistics.getTableStatistic(tableName, statistic);
+                    final Long previous = tableBaseline.put(key, value);
+                    if (!newClient) {
+                        final long delta = value - (previous == null ? 0 : previous);
+                        if (delta > 0) {
+                            deltas.put(key, delta);
+                        }
+                    }
+                }
+            }
+        }
+
+        deltas.forEach((counter, delta) -> session.adjustCounter(counter, delta, false));
+    }
+
+    /**
+     * Log the tablet server response times, slowest flushes and busiest tablets of the period, then reset them.
+     * Tablet servers with a mean response time above twice the median of all servers are reported as warnings.
+     *
+     * @param client Kudu client
+     * @param logger Component Log
+     */
+    public void report(final KuduClient client, final ComponentLog logger) {
+        final Map<String, ServerMetrics> servers = new HashMap<>(serverMetrics);
+        serverMetrics.clear();
+
+        final List<FlushSample> flushes;
+        synchronized (slowestFlushes) {
+            flushes = new ArrayList<>(slowestFlushes);
+            slowestFlushes.clear();
+        }
+        flushes.sort(Comparator.comparingLong(FlushSample::getElapsedNanos).reversed());
+
+        final List<String> busiestTablets = getBusiestTablets(client);
+
+        if (servers.isEmpty() && flushes.isEmpty()) {
+            return;
+        }
+
+        final String serverSummary = servers.entrySet().stream()
+                .sorted(Map.Entry.<String, ServerMetrics>comparingByValue(Comparator.comparingDouble(ServerMetrics::getMeanMillis)).reversed())
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .collect(Collectors.joining(", "));
+        logger.info("Kudu tablet servers (sampled from flush responses): [{}]; slowest flushes: {}; busiest tablets: {}", serverSummary, flushes, busiestTablets);
+
+        final double[] means = servers.values().stream()
+                .filter(metrics -> metrics.getResponses() >= SLOW_SERVER_MIN_RESPONSES)
+                .mapToDouble(ServerMetrics::getMeanMillis)
+                .sorted()
+                .toArray();
+        if (means.length < 2) {
+            return;
+        }
+
+        final double median = means[means.length / 2];
+        servers.forEach((tsUuid, metrics) -> {
+            if (metrics.getResponses() >= SLOW_SERVER_MIN_RESPONSES && metrics.getMeanMillis() > median * SLOW_SERVER_FACTOR && metrics.getMeanMillis() > 0) {
+                logger.warn("Kudu tablet server {} responds slowly: {} while the median of all tablet servers is {} ms",
+                        tsUuid, metrics, String.format("%.1f", median));
+            }
+        });
+    }
+
+    private List<String> getBusiestTablets(final KuduClient client) {
+        final Map<String, Long> deltas = new HashMap<>();
+        synchronized (tableBaseline) {
+            if (client != statisticsClient) {
+                return new ArrayList<>();
+            }
+
+            final Statistics statistics = client.getStatistics();
+            for (final String tabletId : statistics.getTabletSet()) {
+                final long writeRpcs = statistics.getTabletStatistic(tabletId, Statistics.Statistic.WRITE_RPCS);
+                final Long previous = tabletPeriodBaseline.put(tabletId, writeRpcs);
+                deltas.put(tabletId, writeRpcs - (previous == null ? 0 : previous));
+            }
+
+            return deltas.entrySet().stream()
+                    .filter(entry -> entry.getValue() > 0)
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(TOP_COUNT)
+                    .map(entry -> entry.getKey() + " (" + statistics.getTableName(entry.getKey()) + ", " + entry.getValue() + " write RPCs, "
+                            + statistics.getTabletStatistic(entry.getKey(), Statistics.Statistic.RPC_ERRORS) + " RPC errors total)")
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static String getDisplayName(final Statistics.Statistic statistic) {
+        switch (statistic) {
+            case WRITE_OPS:
+                return "Write Ops";
+            case WRITE_RPCS:
+                return "Write RPCs";
+            case BYTES_WRITTEN:
+                return "Bytes Written";
+            case OPS_ERRORS:
+                return "Op Errors";
+            case RPC_ERRORS:
+                return "RPC Errors";
+            default:
+                return statistic.name();
+        }
+    }
+
+    private static class ServerMetrics {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder elapsedMillis = new LongAdder();
+        private final LongAccumulator maxElapsedMillis = new LongAccumulator(Math::max, 0);
+
+        void record(final OperationResponse response) {
+            responses.increment();
+            if (response.hasRowError()) {
+                errors.increment();
+            }
+            elapsedMillis.add(response.getElapsedMillis());
+            maxElapsedMillis.accumulate(response.getElapsedMillis());
+        }
+
+        long getResponses() {
+            return responses.sum();
+        }
+
+        double getMeanMillis() {
+            final long count = responses.sum();
+            return count == 0 ? 0 : (double) elapsedMillis.sum() / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{responses=%d, errors=%d, mean=%.1f ms, max=%d ms}", responses.sum(), errors.sum(), getMeanMillis(), maxElapsedMillis.get());
+        }
+    }
+
+    private static class FlushSample {
+        private final long elapsedNanos;
+        private final int operations;
+        private final Set<String> tabletServers;
+
+        FlushSample(final long elapsedNanos, final int operations, final Set<String> tabletServers) {
+            this.elapsedNanos = elapsedNanos;
+            this.operations = operations;
+            this.tabletServers = tabletServers;
+        }
+
+        long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{%d ms, %d operations, tablet servers %s}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), operations, tabletServers);
+        }
+    }
+}
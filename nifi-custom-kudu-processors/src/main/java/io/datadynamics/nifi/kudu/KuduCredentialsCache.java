@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.Client.AuthenticationCredentialsPB;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.security.Token.TokenPB;
+import org.apache.nifi.logging.ComponentLog;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authentication credentials (authn token and trusted CA certificates) exported from a Kudu client that authenticated
+ * with Kerberos, imported by the clients later built for the same masters and principal. A client importing them
+ * connects to the cluster without a SASL/GSSAPI negotiation with the masters. Processors and controller services load
+ * this class in their own instance class loader, so the credentials only cover the clients one component rebuilds,
+ * on restarts and Kerberos re-logins, and are not shared between components.
+ * <p>
+ * Credentials are imported until {@link #TOKEN_LIFETIME_SHARED} of the remaining lifetime of their token elapsed; the
+ * next client then exports fresh credentials from its own Kerberos negotiation. A client keeps an imported token until
+ * it expires, after which it authenticates with Kerberos again on its own.
+ */
+final class KuduCredentialsCache {
+
+    /**
+     * Share of the token lifetime, remaining when the credentials were exported, during which they are imported
+     */
+    private static final double TOKEN_LIFETIME_SHARED = 0.8;
+
+    private static final ConcurrentMap<String, Credentials> CREDENTIALS = new ConcurrentHashMap<>();
+
+    private KuduCredentialsCache() {
+    }
+
+    /**
+     * Imports the cached credentials into a new client, or exports the credentials of the client when none are cached
+     * or their token is due for renewal. Exporting connects to the masters, so it must run as the Kerberos user. Failures
+     * are logged and leave the client to authenticate with Kerberos.
+     *
+     * @param client    Newly built client
+     * @param masters   Kudu masters of the client
+     * @param principal Kerberos principal of the client
+     * @param logger    Logger of the component building the client
+     */
+    static void shareCredentials(final KuduClient client, final String masters, final String principal, final ComponentLog logger) {
+        final String key = masters + "/" + principal;
+        final Credentials cached = CREDENTIALS.get(key);
+        if (cached != null && !cached.isRenewalDue()) {
+            try {
+                client.importAuthenticationCredentials(cached.bytes);
+                logger.debug("Imported cached Kudu authentication credentials of {}", new Object[] {principal});
+                return;
+            } catch (final RuntimeException e) {
+                logger.warn("Failed to import cached Kudu authentication credentials of {}", new Object[] {principal}, e);
+                CREDENTIALS.remove(key, cached);
+            }
+        }
+
+        try {
+            final byte[] exported = client.exportAuthenticationCredentials();
+            final long now = System.currentTimeMillis();
+            final long tokenExpiresAt = getTokenExpiresAt(exported);
+            if (tokenExpiresAt > now) {
+                CREDENTIALS.put(key, new Credentials(exported, now + (long) ((tokenExpiresAt - now) * TOKEN_LIFETIME_SHARED)));
+            } else {
+                CREDENTIALS.remove(key);
+                logger.debug("Kudu authentication credentials of {} have no valid token to share", new Object[] {principal});
+            }
+        } catch (final Exception e) {
+            logger.warn("Failed to export Kudu authentication credentials of {}; the next client will negotiate with the masters",
+                    new Object[] {principal}, e);
+        }
+    }
+
+    /**
+     * @return Expiration time of the authn token of exported credentials in epoch milliseconds, or 0 without a token
+     */
+    static long getTokenExpiresAt(final byte[] credentials) throws Exception {
+        final AuthenticationCredentialsPB credentialsPB = AuthenticationCredentialsPB.parseFrom(credentials);
+        if (!credentialsPB.hasAuthnToken()) {
+            return 0;
+        }
+        final TokenPB token = TokenPB.parseFrom(credentialsPB.getAuthnToken().getTokenData().toByteArray());
+        return TimeUnit.SECONDS.toMillis(token.getExpireUnixEpochSeconds());
+    }
+
+    private static final class Credentials {
+        private final byte[] bytes;
+        private final long renewAt;
+
+        private Credentials(final byte[] bytes, final long renewAt) {
+            this.bytes = bytes;
+            this.renewAt = renewAt;
+        }
+
+        private boolean isRenewalDue() {
+            return System.currentTimeMillis() >= renewAt;
+        }
+    }
+}
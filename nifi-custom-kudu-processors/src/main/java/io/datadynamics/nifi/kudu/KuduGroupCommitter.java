@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.KuduSession;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Combines the flushes of the concurrent tasks of a processor into group commits. Each task buffers its operations in
+ * its own {@link Sink}; a flush hands them to the committer and waits. The first waiting task becomes the flusher: it
+ * writes the operations of all tasks waiting at that moment through one KuduSession, so the tablet servers receive one
+ * large batch instead of one small batch per task, and hands every task the responses of its own operations. Tasks
+ * arriving during a flush form the next group.
+ */
+class KuduGroupCommitter {
+
+    private final int maxGroupOperations;
+
+    private final Object lock = new Object();
+    private final Deque<Request> pending = new ArrayDeque<>();
+    private boolean flushing;
+
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+
+    /**
+     * @param maxGroupOperations Number of operations above which waiting requests are left to the next group
+     */
+    KuduGroupCommitter(final int maxGroupOperations) {
+        this.maxGroupOperations = maxGroupOperations;
+    }
+
+    /**
+     * @param client     Kudu client of the operations
+     * @param bufferSize Number of operations after which the sink commits its operations on its own
+     * @return Sink buffering the operations of one task
+     */
+    Sink newSink(final KuduClient client, final int bufferSize) {
+        return new Sink(client, bufferSize);
+    }
+
+    /**
+     * @return Mean number of task flushes and operations per group commit since the previous call
+     */
+    String getSummary() {
+        final long groupCount = groups.sumThenReset();
+        final long requestCount = requests.sumThenReset();
+        final long operationCount = operations.sumThenReset();
+        return String.format("groups=%d, flushes per group=%.1f, operations per group=%.1f", groupCount,
+                groupCount == 0 ? 0.0 : (double) requestCount / groupCount, groupCount == 0 ? 0.0 : (double) operationCount / groupCount);
+    }
+
+    private List<OperationResponse> commit(final Request request) throws KuduException {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                pending.add(request);
+            }
+
+            while (true) {
+                final List<Request> group;
+                synchronized (lock) {
+                    while (flushing && !request.done) {
+                        try {
+                            lock.wait();
+                        } catch (final InterruptedException e) {
+                            // The operations may already be part of a running group, so the outcome must be awaited
+                            interrupted = true;
+                        }
+                    }
+                    if (request.done) {
+                        return request.getResponses();
+                    }
+                    flushing = true;
+                    group = nextGroup();
+                }
+
+                try {
+                    flushGroup(group);
+                } finally {
+                    synchronized (lock) {
+                        flushing = false;
+                        lock.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest waiting request and the following ones of the same client and session settings, up to the
+     * maximum group size. Must hold the lock.
+     */
+    private List<Request> nextGroup() {
+        final List<Request> group = new ArrayList<>();
+        final Request first = pending.poll();
+        group.add(first);
+        int groupOperations = first.operations.size();
+
+        final Iterator<Request> iterator = pending.iterator();
+        while (iterator.hasNext() && groupOperations < maxGroupOperations) {
+            final Request request = iterator.next();
+            if (request.client == first.client && request.ignoreAllDuplicateRows == first.ignoreAllDuplicateRows
+                    && groupOperations + request.operations.size() <= maxGroupOperations) {
+                iterator.remove();
+                group.add(request);
+                groupOperations += request.operations.size();
+            }
+        }
+        return group;
+    }
+
+    private void flushGroup(final List<Request> group) {
+        final Request first = group.get(0);
+        final Map<Operation, Request> owners = new IdentityHashMap<>();
+        for (final Request request : group) {
+            for (final Operation operation : request.operations) {
+                owners.put(operation, request);
+            }
+        }
+
+        final List<OperationResponse> responses;
+        try {
+            final KuduSession kuduSession = first.client.newSession();
+            kuduSession.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH);
+            kuduSession.setMutationBufferSpace(Math.max(1, owners.size()));
+            kuduSession.setIgnoreAllDuplicateRows(first.ignoreAllDuplicateRows);
+            for (final Request request : group) {
+                for (final Operation operation : request.operations) {
+                    kuduSession.apply(operation);
+                }
+            }
+            responses = kuduSession.close();
+        } catch (final KuduException | RuntimeException e) {
+            for (final Request request : group) {
+                request.fail(e);
+            }
+            return;
+        }
+
+        groups.increment();
+        requests.add(group.size());
+        operations.add(owners.size());
+
+        // Row errors name their operation; the other responses only feed the per tablet server metrics of the processor,
+        // which are aggregated over its tasks, so they are handed out in no particular order to fill each request up to
+        // its number of operations
+        final List<OperationResponse> unowned = new ArrayList<>();
+        for (final OperationResponse response : responses) {
+            final RowError rowError = response.getRowError();
+            final Request owner = rowError == null ? null : owners.get(rowError.getOperation());
+            if (owner == null) {
+                unowned.add(response);
+            } else {
+                owner.responses.add(response);
+            }
+        }
+
+        final Iterator<OperationResponse> iterator = unowned.iterator();
+        for (final Request request : group) {
+            while (request.responses.size() < request.operations.size() && iterator.hasNext()) {
+                request.responses.add(iterator.next());
+            }
+            request.complete();
+        }
+    }
+
+    private static class Request {
+        private final KuduClient client;
+        private final boolean ignoreAllDuplicateRows;
+        private final List<Operation> operations;
+        private final List<OperationResponse> responses = new ArrayList<>();
+        private Exception failure;
+        private boolean done;
+
+        private Request(final KuduClient client, final boolean ignoreAllDuplicateRows, final List<Operation> operations) {
+            this.client = client;
+            this.ignoreAllDuplicateRows = ignoreAllDuplicateRows;
+            this.operations = operations;
+        }
+
+        private void complete() {
+            done = true;
+        }
+
+        private void fail(final Exception e) {
+            failure = e;
+            done = true;
+        }
+
+        private List<OperationResponse> getResponses() throws KuduException {
+            if (failure instanceof KuduException) {
+                throw (KuduException) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            return responses;
+        }
+    }
+
+    /**
+     * Write sink of one task. Operations are buffered in the sink and written by the next group commit when the sink
+     * is flushed or its buffer is full; responses of commits triggered by a full buffer are returned by the next flush.
+     */
+    class Sink implements KuduWriteSink {
+        private final KuduClient client;
+        private final int bufferSize;
+        private List<Operation> buffer = new ArrayList<>();
+        private final List<OperationResponse> committed = new ArrayList<>();
+        private boolean ignoreAllDuplicateRows;
+
+        private Sink(final KuduClient client, final int bufferSize) {
+            this.client = client;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public OperationResponse apply(final Operation operation) throws KuduException {
+            buffer.add(operation);
+            if (buffer.size() >= bufferSize) {
+                committed.addAll(commitBuffer());
+            }
+            return null;
+        }
+
+        @Override
+        public List<OperationResponse> flush() throws KuduException {
+            final List<OperationResponse> responses = new ArrayList<>(committed);
+            committed.clear();
+            responses.addAll(commitBuffer());
+            return responses;
+        }
+
+        @Override
+        public List<OperationResponse> close() throws KuduException {
+            return flush();
+        }
+
+        /**
+         * Responses carry the row errors as with MANUAL_FLUSH, whatever the flush mode of the processor.
+         */
+        @Override
+        public SessionConfiguration.FlushMode getFlushMode() {
+            return SessionConfiguration.FlushMode.MANUAL_FLUSH;
+        }
+
+        @Override
+        public List<RowError> getPendingRowErrors() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void setIgnoreAllDuplicateRows(final boolean ignoreAllDuplicateRows) {
+            if (this.ignoreAllDuplicateRows != ignoreAllDuplicateRows && !buffer.isEmpty()) {
+                try {
+                    committed.addAll(commitBuffer());
+                } catch (final KuduException e) {
+                    throw new IllegalStateException("Failed to commit operations before changing the duplicate rows setting", e);
+                }
+            }
+            this.ignoreAllDuplicateRows = ignoreAllDuplicateRows;
+        }
+
+        private List<OperationResponse> commitBuffer() throws KuduException {
+            if (buffer.isEmpty()) {
+                return Collections.emptyList();
+            }
+            final List<Operation> operations = buffer;
+            buffer = new ArrayList<>();
+            return commit(new Request(client, ignoreAllDuplicateRows, operations));
+        }
+    }
+}
@@ -0,0 +1,614 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.KuduPredicate;
+import org.apache.kudu.client.KuduScanner;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.RowResultIterator;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnDisabled;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyDescriptor.Builder;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.kerberos.KerberosCredentialsService;
+import org.apache.nifi.lookup.LookupFailureException;
+import org.apache.nifi.lookup.RecordLookupService;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.security.krb.KerberosAction;
+import org.apache.nifi.security.krb.KerberosKeytabUser;
+import org.apache.nifi.security.krb.KerberosPasswordUser;
+import org.apache.nifi.security.krb.KerberosUser;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.util.StringUtils;
+
+import javax.security.auth.login.LoginException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.apache.nifi.expression.ExpressionLanguageScope.VARIABLE_REGISTRY;
+
+@Tags({"lookup", "enrich", "key", "value", "kudu", "record", "cache"})
+@CapabilityDescription("Looks up rows of a Kudu table by the values of its key columns. Lookups requested at the same time by concurrent tasks are " +
+        "coalesced into one scan with IN-list predicates on the key columns, while a lookup without concurrent callers is scanned at once. Callers " +
+        "looking up one key at a time, such as a single LookupRecord task, therefore still cause one scan per key missing from the near-cache. Results, " +
+        "including missing keys, are kept in a bounded least-recently-used near-cache that expires entries after the cache TTL. The returned record " +
+        "contains the key and return columns.")
+public class KuduLookupService extends AbstractControllerService implements RecordLookupService {
+
+    static final PropertyDescriptor TABLE_NAME = new Builder()
+            .name("kudu-lookup-table-name")
+            .displayName("Table Name")
+            .description("The name of the Kudu table to look up rows in")
+            .required(true)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .expressionLanguageSupported(VARIABLE_REGISTRY)
+            .build();
+
+    static final PropertyDescriptor KEY_COLUMNS = new Builder()
+            .name("kudu-lookup-key-columns")
+            .displayName("Lookup Key Columns")
+            .description("Comma separated names of the columns matched against the lookup coordinates. Each column is a required coordinate key. " +
+                    "Using the primary key columns lets the tablet servers prune the scan to the matching rows. BINARY columns cannot be used as keys.")
+            .required(true)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .expressionLanguageSupported(VARIABLE_REGISTRY)
+            .build();
+
+    static final PropertyDescriptor RETURN_COLUMNS = new Builder()
+            .name("kudu-lookup-return-columns")
+            .displayName("Return Columns")
+            .description("Comma separated names of the columns returned in addition to the key columns. If not set, all columns are returned.")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .expressionLanguageSupported(VARIABLE_REGISTRY)
+            .build();
+
+    static final PropertyDescriptor CACHE_SIZE = new Builder()
+            .name("kudu-lookup-cache-size")
+            .displayName("Cache Size")
+            .description("The maximum number of keys kept in the near-cache. Zero disables the cache.")
+            .required(true)
+            .defaultValue("10000")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor CACHE_TTL = new Builder()
+            .name("kudu-lookup-cache-ttl")
+            .displayName("Cache TTL")
+            .description("How long a looked up row, or the absence of a row, is kept in the near-cache.")
+            .required(true)
+            .defaultValue("5 min")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor BATCH_SIZE = new Builder()
+            .name("kudu-lookup-batch-size")
+            .displayName("Batch Size")
+            .description("The maximum number of keys looked up in one scan. Only keys requested by concurrent callers are batched: " +
+                    "a caller looking up one key at a time, such as a single LookupRecord task, causes one scan per key missing from the cache.")
+            .required(true)
+            .defaultValue("1000")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor BATCH_WINDOW = new Builder()
+            .name("kudu-lookup-batch-window")
+            .displayName("Batch Window")
+            .description("How long the first lookup of a batch waits for concurrent lookups to join the same scan. The batch only waits " +
+                    "while other callers are looking up keys at the same time; a single caller, such as one LookupRecord task, is never held.")
+            .required(true)
+            .defaultValue("2 ms")
+            .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor LOOKUP_THREADS = new Builder()
+            .name("kudu-lookup-threads")
+            .displayName("Lookup Threads")
+            .description("The maximum number of lookup scans running at the same time.")
+            .required(true)
+            .defaultValue("4")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    private static final List<PropertyDescriptor> PROPERTIES = Collections.unmodifiableList(Arrays.asList(
+            AbstractKuduProcessor.KUDU_MASTERS,
+            TABLE_NAME,
+            KEY_COLUMNS,
+            RETURN_COLUMNS,
+            CACHE_SIZE,
+            CACHE_TTL,
+            BATCH_SIZE,
+            BATCH_WINDOW,
+            LOOKUP_THREADS,
+            AbstractKuduProcessor.KERBEROS_CREDENTIALS_SERVICE,
+            AbstractKuduProcessor.KERBEROS_PRINCIPAL,
+            AbstractKuduProcessor.KERBEROS_PASSWORD,
+            AbstractKuduProcessor.KUDU_OPERATION_TIMEOUT_MS,
+            AbstractKuduProcessor.KUDU_KEEP_ALIVE_PERIOD_TIMEOUT_MS,
+            AbstractKuduProcessor.WORKER_COUNT,
+            AbstractKuduProcessor.KUDU_SASL_PROTOCOL_NAME
+    ));
+
+    private volatile KerberosUser kerberosUser;
+    private volatile ScheduledFuture<?> kerberosRenewal;
+    private volatile Connection connection;
+    private volatile List<ColumnSchema> keyColumns;
+    private volatile List<String> projectedColumns;
+    private volatile KuduRowConverter converter;
+    private volatile Set<String> requiredKeys;
+    private volatile NearCache cache;
+    private volatile int batchSize;
+    private volatile long batchWindowNanos;
+    private volatile long lookupTimeoutMs;
+
+    private final Map<List<Object>, CompletableFuture<Optional<Record>>> inFlight = new ConcurrentHashMap<>();
+    private final BlockingQueue<List<Object>> pendingKeys = new LinkedBlockingQueue<>();
+    private final AtomicInteger activeCallers = new AtomicInteger();
+    private volatile Thread dispatcher;
+    private volatile ExecutorService lookupExecutor;
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return PROPERTIES;
+    }
+
+    @OnEnabled
+    public void onEnabled(final ConfigurationContext context) throws InitializationException {
+        lookupTimeoutMs = context.getProperty(AbstractKuduProcessor.KUDU_OPERATION_TIMEOUT_MS).evaluateAttributeExpressions().asTimePeriod(TimeUnit.MILLISECONDS);
+        try {
+            kerberosUser = createKerberosUser(context);
+            if (kerberosUser == null) {
+                connection = connect(context, null);
+            } else {
+                kerberosUser.login(); // login connects to Kudu as well
+                final KerberosUser user = kerberosUser;
+                kerberosRenewal = AbstractKuduProcessor.KERBEROS_RENEWER.scheduleWithFixedDelay(() -> renewKerberosTicket(user),
+                        AbstractKuduProcessor.KERBEROS_RENEWAL_CHECK_INTERVAL_SECONDS, AbstractKuduProcessor.KERBEROS_RENEWAL_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            }
+        } catch (final LoginException | KuduException | ProcessException e) {
+            onDisabled();
+            throw new InitializationException("Failed to connect to Kudu", e);
+        }
+
+        // Columns can only be checked against the table schema, so the client must be released when they are invalid
+        final KuduTable table = connection.table;
+        final Schema schema = table.getSchema();
+        try {
+            keyColumns = getColumnNames(context.getProperty(KEY_COLUMNS).evaluateAttributeExpressions().getValue(), schema).stream()
+                    .map(schema::getColumn)
+                    .collect(Collectors.toList());
+            for (final ColumnSchema column : keyColumns) {
+                // Coordinates are matched by their string form, which does not identify the bytes of a BINARY value
+                if (column.getType() == Type.BINARY) {
+                    throw new IllegalArgumentException(String.format("BINARY column %s cannot be used as a lookup key", column.getName()));
+                }
+            }
+            requiredKeys = Collections.unmodifiableSet(new LinkedHashSet<>(keyColumns.stream().map(ColumnSchema::getName).collect(Collectors.toList())));
+
+            final String returnColumns = context.getProperty(RETURN_COLUMNS).evaluateAttributeExpressions().getValue();
+            final Set<String> projection = new LinkedHashSet<>(requiredKeys);
+            if (returnColumns == null) {
+                schema.getColumns().forEach(column -> projection.add(column.getName()));
+            } else {
+                projection.addAll(getColumnNames(returnColumns, schema));
+            }
+            projectedColumns = new ArrayList<>(projection);
+            converter = new KuduRowConverter(new Schema(projectedColumns.stream().map(schema::getColumn).collect(Collectors.toList())));
+        } catch (final IllegalArgumentException e) {
+            onDisabled();
+            throw new InitializationException("Invalid lookup columns for Kudu table " + table.getName(), e);
+        }
+
+        final int cacheSize = context.getProperty(CACHE_SIZE).asInteger();
+        cache = cacheSize > 0 ? new NearCache(cacheSize, context.getProperty(CACHE_TTL).asTimePeriod(TimeUnit.NANOSECONDS)) : null;
+        batchSize = context.getProperty(BATCH_SIZE).asInteger();
+        batchWindowNanos = context.getProperty(BATCH_WINDOW).asTimePeriod(TimeUnit.NANOSECONDS);
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        lookupExecutor = Executors.newFixedThreadPool(context.getProperty(LOOKUP_THREADS).asInteger(), runnable -> {
+            final Thread thread = new Thread(runnable, String.format("KuduLookupService[%s]-lookup-%d", getIdentifier(), threadCount.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = new Thread(this::dispatchLookups, String.format("KuduLookupService[%s]-dispatcher", getIdentifier()));
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @OnDisabled
+    public void onDisabled() {
+        final ScheduledFuture<?> renewal = kerberosRenewal;
+        if (renewal != null) {
+            renewal.cancel(false);
+            kerberosRenewal = null;
+        }
+        final Thread dispatcherThread = dispatcher;
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+            dispatcher = null;
+        }
+        final ExecutorService executor = lookupExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            lookupExecutor = null;
+        }
+
+        final LookupFailureException disabled = new LookupFailureException("Kudu Lookup Service disabled");
+        inFlight.values().forEach(future -> future.completeExceptionally(disabled));
+        inFlight.clear();
+        pendingKeys.clear();
+        cache = null;
+
+        try {
+            if (connection != null) {
+                connection.client.close();
+            }
+        } catch (final KuduException e) {
+            getLogger().error("Couldn't close Kudu client.", e);
+        } finally {
+            connection = null;
+            if (kerberosUser != null) {
+                try {
+                    kerberosUser.logout();
+                } catch (final LoginException e) {
+                    getLogger().warn("Failed to log out Kerberos user", e);
+                }
+                kerberosUser = null;
+            }
+        }
+    }
+
+    /**
+     * Builds a Kudu client and opens the lookup table with it.
+     *
+     * @param context   Context holding the client properties
+     * @param principal Kerberos principal the client is built for, or null without Kerberos
+     * @return Client and table
+     */
+    private Connection connect(final ConfigurationContext context, final String principal) throws KuduException {
+        final KuduClient client = AbstractKuduProcessor.buildKuduClient(context, getIdentifier());
+        try {
+            if (principal != null) {
+                final String masters = context.getProperty(AbstractKuduProcessor.KUDU_MASTERS).evaluateAttributeExpressions().getValue();
+                KuduCredentialsCache.shareCredentials(client, masters, principal, getLogger());
+            }
+            final String tableName = context.getProperty(TABLE_NAME).evaluateAttributeExpressions().getValue();
+            return new Connection(client, client.openTable(tableName));
+        } catch (final KuduException | RuntimeException e) {
+            client.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects again as the logged in user, whose new Subject the previous client does not hold. The previous client is closed
+     * once the lookups still scanning with it timed out at the latest.
+     */
+    private void reconnect(final ConfigurationContext context, final KerberosUser user) {
+        final KerberosAction<Connection> kerberosAction = new KerberosAction<>(user, () -> connect(context, user.getPrincipal()), getLogger());
+        final Connection previous = connection;
+        connection = kerberosAction.execute();
+        if (previous != null) {
+            AbstractKuduProcessor.KERBEROS_RENEWER.schedule(() -> {
+                try {
+                    previous.client.close();
+                } catch (final KuduException e) {
+                    getLogger().debug("Failed to close replaced Kudu client", e);
+                }
+            }, lookupTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Re-login ahead of the ticket expiry, which connects to Kudu again, so that lookups never run with an expired ticket.
+     */
+    private void renewKerberosTicket(final KerberosUser user) {
+        try {
+            if (user.isLoggedIn()) {
+                user.checkTGTAndRelogin();
+            } else {
+                user.login();
+            }
+        } catch (final Exception e) {
+            getLogger().error("Failed to renew Kerberos ticket of {}; retrying in {} seconds",
+                    new Object[] {user.getPrincipal(), AbstractKuduProcessor.KERBEROS_RENEWAL_CHECK_INTERVAL_SECONDS}, e);
+        }
+    }
+
+    @Override
+    public Set<String> getRequiredKeys() {
+        return requiredKeys;
+    }
+
+    @Override
+    public Optional<Record> lookup(final Map<String, Object> coordinates) throws LookupFailureException {
+        final List<Object> key = new ArrayList<>(keyColumns.size());
+        for (final ColumnSchema column : keyColumns) {
+            final Object value = coordinates.get(column.getName());
+            if (value == null) {
+                return Optional.empty();
+            }
+            try {
+                key.add(normalize(column, value));
+            } catch (final IllegalArgumentException e) {
+                throw new LookupFailureException(String.format("Invalid value for lookup key %s", column.getName()), e);
+            }
+        }
+
+        final NearCache nearCache = cache;
+        if (nearCache != null) {
+            final Optional<Record> cached = nearCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        activeCallers.incrementAndGet();
+        try {
+            final CompletableFuture<Optional<Record>> result = inFlight.computeIfAbsent(key, pendingKey -> {
+                pendingKeys.add(pendingKey);
+                return new CompletableFuture<>();
+            });
+            return result.get(lookupTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LookupFailureException("Interrupted while looking up " + coordinates, e);
+        } catch (final ExecutionException e) {
+            throw new LookupFailureException("Failed to look up " + coordinates, e.getCause());
+        } catch (final TimeoutException e) {
+            throw new LookupFailureException("Timed out looking up " + coordinates, e);
+        } finally {
+            activeCallers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Collects the keys requested within the batch window, up to the batch size, and submits them as one scan. The
+     * window is only waited for while several callers are looking up keys: a lone caller, such as LookupRecord looking
+     * up the records of a FlowFile one by one, cannot add keys while it waits, so its key is scanned at once.
+     */
+    private void dispatchLookups() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                final List<List<Object>> batch = new ArrayList<>();
+                batch.add(pendingKeys.take());
+
+                final long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < batchSize) {
+                    final long remaining = deadline - System.nanoTime();
+                    // Keys already queued join the batch even when the window elapsed or no other caller is waiting
+                    final List<Object> key = remaining > 0 && activeCallers.get() > 1
+                            ? pendingKeys.poll(remaining, TimeUnit.NANOSECONDS) : pendingKeys.poll();
+                    if (key == null) {
+                        break;
+                    }
+                    batch.add(key);
+                }
+
+                lookupExecutor.execute(() -> lookupBatch(batch));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final Exception e) {
+                getLogger().error("Failed to dispatch Kudu lookups", e);
+            }
+        }
+    }
+
+    private void lookupBatch(final List<List<Object>> keys) {
+        final Map<List<Object>, Record> found = new HashMap<>();
+        KuduScanner scanner = null;
+        try {
+            final Connection current = connection;
+            final KuduScanner.KuduScannerBuilder scannerBuilder = current.client.newScannerBuilder(current.table).setProjectedColumnNames(projectedColumns);
+            for (int i = 0; i < keyColumns.size(); i++) {
+                final int columnIndex = i;
+                final List<Object> values = keys.stream().map(key -> key.get(columnIndex)).distinct().collect(Collectors.toList());
+                scannerBuilder.addPredicate(KuduPredicate.newInListPredicate(keyColumns.get(i), values));
+            }
+            scanner = scannerBuilder.build();
+
+            // A composite key IN-list matches the cross product of the column values, so rows are matched by their full key
+            while (scanner.hasMoreRows()) {
+                final RowResultIterator rows = scanner.nextRows();
+                while (rows.hasNext()) {
+                    final Record record = converter.toRecord(rows.next());
+                    final List<Object> rowKey = new ArrayList<>(keyColumns.size());
+                    for (final ColumnSchema column : keyColumns) {
+                        rowKey.add(record.getValue(column.getName()));
+                    }
+                    found.put(rowKey, record);
+                }
+            }
+        } catch (final Exception e) {
+            for (final List<Object> key : keys) {
+                final CompletableFuture<Optional<Record>> future = inFlight.remove(key);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+            return;
+        } finally {
+            if (scanner != null) {
+                try {
+                    scanner.close();
+                } catch (final KuduException e) {
+                    getLogger().debug("Failed to close Kudu scanner", e);
+                }
+            }
+        }
+
+        final NearCache nearCache = cache;
+        for (final List<Object> key : keys) {
+            final Optional<Record> result = Optional.ofNullable(found.get(key));
+            if (nearCache != null) {
+                nearCache.put(key, result);
+            }
+            final CompletableFuture<Optional<Record>> future = inFlight.remove(key);
+            if (future != null) {
+                future.complete(result);
+            }
+        }
+    }
+
+    /**
+     * Converts a coordinate to the Java type returned by Kudu for the column, so that keys compare equal to scanned rows.
+     */
+    private static Object normalize(final ColumnSchema column, final Object value) {
+        final Object normalized = KuduPredicateParser.toValue(column, value.toString());
+        if (column.getType() == Type.DECIMAL) {
+            return ((BigDecimal) normalized).setScale(column.getTypeAttributes().getScale());
+        }
+        return normalized;
+    }
+
+    private static List<String> getColumnNames(final String columnNames, final Schema schema) {
+        final List<String> names = Arrays.stream(columnNames.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toList());
+        for (final String name : names) {
+            if (!schema.hasColumn(name)) {
+                throw new IllegalArgumentException(String.format("Column %s does not exist in the table", name));
+            }
+        }
+        return names;
+    }
+
+    private KerberosUser createKerberosUser(final ConfigurationContext context) {
+        final KerberosCredentialsService credentialsService = context.getProperty(AbstractKuduProcessor.KERBEROS_CREDENTIALS_SERVICE)
+                .asControllerService(KerberosCredentialsService.class);
+        final String kerberosPrincipal = context.getProperty(AbstractKuduProcessor.KERBEROS_PRINCIPAL).evaluateAttributeExpressions().getValue();
+        final String kerberosPassword = context.getProperty(AbstractKuduProcessor.KERBEROS_PASSWORD).getValue();
+
+        if (credentialsService != null) {
+            return new KerberosKeytabUser(credentialsService.getPrincipal(), credentialsService.getKeytab()) {
+                @Override
+                public synchronized void login() throws LoginException {
+                    if (!isLoggedIn()) {
+                        super.login();
+
+                        reconnect(context, this);
+                    }
+                }
+            };
+        } else if (!StringUtils.isBlank(kerberosPrincipal) && !StringUtils.isBlank(kerberosPassword)) {
+            return new KerberosPasswordUser(kerberosPrincipal, kerberosPassword) {
+                @Override
+                public synchronized void login() throws LoginException {
+                    if (!isLoggedIn()) {
+                        super.login();
+
+                        reconnect(context, this);
+                    }
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Kudu client with the lookup table opened by it, replaced together after a Kerberos re-login
+     */
+    private static class Connection {
+        private final KuduClient client;
+        private final KuduTable table;
+
+        private Connection(final KuduClient client, final KuduTable table) {
+            this.client = client;
+            this.table = table;
+        }
+    }
+
+    /**
+     * Bounded least-recently-used cache of lookup results with a time to live. Absent rows are cached as empty results.
+     */
+    private static class NearCache {
+        private final long ttlNanos;
+        private final Map<List<Object>, CacheEntry> entries;
+
+        private NearCache(final int maxSize, final long ttlNanos) {
+            this.ttlNanos = ttlNanos;
+            this.entries = new LinkedHashMap<List<Object>, CacheEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<List<Object>, CacheEntry> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        /**
+         * @return Cached result, or null when the key is not cached or expired
+         */
+        private synchronized Optional<Record> get(final List<Object> key) {
+            final CacheEntry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.expiresAt >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.result;
+        }
+
+        private synchronized void put(final List<Object> key, final Optional<Record> result) {
+            entries.put(key, new CacheEntry(result, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    private static class CacheEntry {
+        private final Optional<Record> result;
+        private final long expiresAt;
+
+        private CacheEntry(final Optional<Record> result, final long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.Delete;
+import org.apache.kudu.client.DeleteIgnore;
+import org.apache.kudu.client.Insert;
+import org.apache.kudu.client.InsertIgnore;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.client.Update;
+import org.apache.kudu.client.UpdateIgnore;
+import org.apache.kudu.client.Upsert;
+
+/**
+ * Builds and copies Kudu operations by their {@link OperationType}.
+ */
+final class KuduOperations {
+
+    private KuduOperations() {
+    }
+
+    /**
+     * Builds a new operation of the same type, table and cells. An operation that was applied keeps the state of its
+     * RPC, so it is copied instead of being applied again.
+     *
+     * @param operation Operation to copy
+     * @return Operation that was not applied yet
+     */
+    static Operation copy(final Operation operation) {
+        final Operation copy = newOperation(operation.getTable(), operationType(operation));
+        copyCells(operation.getRow(), KuduRowWriter.of(copy.getRow()));
+        return copy;
+    }
+
+    /**
+     * Sets the cells set in a row through a writer.
+     *
+     * @param row    Row to copy
+     * @param writer Writer of the cells
+     */
+    static void copyCells(final PartialRow row, final KuduRowWriter writer) {
+        final Schema schema = row.getSchema();
+        for (int i = 0; i < schema.getColumnCount(); i++) {
+            if (!row.isSet(i)) {
+                continue;
+            }
+            if (row.isNull(i)) {
+                writer.setNull(i);
+                continue;
+            }
+
+            final ColumnSchema column = schema.getColumnByIndex(i);
+            switch (column.getType()) {
+                case BOOL:
+                    writer.addBoolean(i, row.getBoolean(i));
+                    break;
+                case INT8:
+                    writer.addByte(i, row.getByte(i));
+                    break;
+                case INT16:
+                    writer.addShort(i, row.getShort(i));
+                    break;
+                case INT32:
+                    writer.addInt(i, row.getInt(i));
+                    break;
+                case INT64:
+                case UNIXTIME_MICROS:
+                    writer.addLong(i, row.getLong(i));
+                    break;
+                case DATE:
+                    writer.addDate(i, row.getDate(i));
+                    break;
+                case FLOAT:
+                    writer.addFloat(i, row.getFloat(i));
+                    break;
+                case DOUBLE:
+                    writer.addDouble(i, row.getDouble(i));
+                    break;
+                case DECIMAL:
+                    writer.addDecimal(i, row.getDecimal(i));
+                    break;
+                case STRING:
+                    writer.addString(i, row.getString(i));
+                    break;
+                case VARCHAR:
+                    writer.addVarchar(i, row.getVarchar(i));
+                    break;
+                case BINARY:
+                    writer.addBinary(i, row.getBinaryCopy(i));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported column type " + column.getType() + " of column " + column.getName());
+            }
+        }
+    }
+
+    /**
+     * @param operation Operation
+     * @return Type of the operation
+     */
+    static OperationType operationType(final Operation operation) {
+        if (operation instanceof Insert) {
+            return OperationType.INSERT;
+        } else if (operation instanceof InsertIgnore) {
+            return OperationType.INSERT_IGNORE;
+        } else if (operation instanceof Upsert) {
+            return OperationType.UPSERT;
+        } else if (operation instanceof Update) {
+            return OperationType.UPDATE;
+        } else if (operation instanceof UpdateIgnore) {
+            return OperationType.UPDATE_IGNORE;
+        } else if (operation instanceof Delete) {
+            return OperationType.DELETE;
+        } else if (operation instanceof DeleteIgnore) {
+            return OperationType.DELETE_IGNORE;
+        }
+        throw new IllegalArgumentException("Unsupported operation " + operation.getClass().getSimpleName());
+    }
+
+    /**
+     * @param table         Table of the operation
+     * @param operationType Type of the operation
+     * @return New operation with an empty row
+     */
+    static Operation newOperation(final KuduTable table, final OperationType operationType) {
+        switch (operationType) {
+            case INSERT:
+                return table.newInsert();
+            case INSERT_IGNORE:
+                return table.newInsertIgnore();
+            case UPSERT:
+                return table.newUpsert();
+            case UPDATE:
+                return table.newUpdate();
+            case UPDATE_IGNORE:
+                return table.newUpdateIgnore();
+            case DELETE:
+                return table.newDelete();
+            case DELETE_IGNORE:
+                return table.newDeleteIgnore();
+            default:
+                throw new IllegalStateException("Unknown operation type " + operationType);
+        }
+    }
+}
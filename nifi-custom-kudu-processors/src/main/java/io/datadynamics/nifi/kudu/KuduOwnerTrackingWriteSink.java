@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.Operation;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Write sink applying new operations built from the rows it holds rather than the operations it was given, such as
+ * {@link KuduStagingWriteSink} and {@link KuduSortingWriteSink}. Callers cannot attribute row errors by the operations
+ * they applied, so rows are attributed to the owner set when they were applied, and the operations that failed are
+ * reported to the failed operation listener together with the owner of their row.
+ */
+public interface KuduOwnerTrackingWriteSink extends KuduWriteSink {
+
+    /**
+     * @param owner Owner of the rows applied from now on, such as their FlowFile
+     */
+    void setOwner(Object owner);
+
+    /**
+     * @param failedOperationListener Called with each built operation that failed and the owner of its row
+     */
+    void setFailedOperationListener(BiConsumer<Operation, Object> failedOperationListener);
+
+    /**
+     * Whether applying the rows held by the sink failed. The rows are not kept after a failure, so the outcome of
+     * every row applied to the sink so far is unknown, and all their owners must be considered failed.
+     *
+     * @return True once applying the held rows failed
+     */
+    boolean isFailed();
+}
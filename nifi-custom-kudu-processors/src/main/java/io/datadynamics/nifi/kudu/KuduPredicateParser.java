@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.KuduPredicate;
+import org.apache.kudu.client.KuduPredicate.ComparisonOp;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses predicate expressions into Kudu predicates that are pushed down to the tablet servers. An expression is a
+ * list of conditions joined by <code>AND</code>, where every condition is one of
+ * <ul>
+ *     <li><code>column = value</code>, or one of the operators <code>&lt; &lt;= &gt; &gt;=</code></li>
+ *     <li><code>column IN (value, value, ...)</code></li>
+ *     <li><code>column IS NULL</code> or <code>column IS NOT NULL</code></li>
+ * </ul>
+ * Values may be enclosed in single quotes, with <code>''</code> as an escaped quote. Timestamps use the
+ * <code>yyyy-MM-dd HH:mm:ss[.ffffff]</code> format or epoch milliseconds, and dates the <code>yyyy-MM-dd</code> format.
+ */
+final class KuduPredicateParser {
+
+    private static final Pattern COMPARISON = Pattern.compile("^(\\S+?)\\s*(<=|>=|=|<|>)\\s*(.+)$", Pattern.DOTALL);
+    private static final Pattern IN_LIST = Pattern.compile("^(\\S+)\\s+IN\\s*\\((.*)\\)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern IS_NULL = Pattern.compile("^(\\S+)\\s+IS\\s+(NOT\\s+)?NULL$", Pattern.CASE_INSENSITIVE);
+
+    private KuduPredicateParser() {
+    }
+
+    /**
+     * @param expression Predicate expression, may be null or blank for no predicates
+     * @param schema     Schema of the scanned table
+     * @return Predicates in the order of the expression
+     * @throws IllegalArgumentException if the expression is malformed or references an unknown column
+     */
+    static List<KuduPredicate> parse(final String expression, final Schema schema) {
+        final List<KuduPredicate> predicates = new ArrayList<>();
+        if (expression == null || expression.trim().isEmpty()) {
+            return predicates;
+        }
+
+        for (final String condition : split(expression, "AND")) {
+            predicates.add(parseCondition(condition.trim(), schema));
+        }
+        return predicates;
+    }
+
+    private static KuduPredicate parseCondition(final String condition, final Schema schema) {
+        Matcher matcher = IS_NULL.matcher(condition);
+        if (matcher.matches()) {
+            final ColumnSchema column = getColumn(schema, matcher.group(1));
+            return matcher.group(2) == null ? KuduPredicate.newIsNullPredicate(column) : KuduPredicate.newIsNotNullPredicate(column);
+        }
+
+        matcher = IN_LIST.matcher(condition);
+        if (matcher.matches()) {
+            final ColumnSchema column = getColumn(schema, matcher.group(1));
+            final List<Object> values = new ArrayList<>();
+            for (final String value : split(matcher.group(2), ",")) {
+                values.add(toValue(column, unquote(value.trim())));
+            }
+            return KuduPredicate.newInListPredicate(column, values);
+        }
+
+        matcher = COMPARISON.matcher(condition);
+        if (matcher.matches()) {
+            final ColumnSchema column = getColumn(schema, matcher.group(1));
+            final Object value = toValue(column, unquote(matcher.group(3).trim()));
+            return KuduPredicate.newComparisonPredicate(column, toComparisonOp(matcher.group(2)), value);
+        }
+
+        throw new IllegalArgumentException(String.format("Invalid predicate [%s]", condition));
+    }
+
+    private static ColumnSchema getColumn(final Schema schema, final String name) {
+        if (!schema.hasColumn(name)) {
+            throw new IllegalArgumentException(String.format("Predicate column %s does not exist in the table", name));
+        }
+        return schema.getColumn(name);
+    }
+
+    private static ComparisonOp toComparisonOp(final String operator) {
+        switch (operator) {
+            case "<":
+                return ComparisonOp.LESS;
+            case "<=":
+                return ComparisonOp.LESS_EQUAL;
+            case ">":
+                return ComparisonOp.GREATER;
+            case ">=":
+                return ComparisonOp.GREATER_EQUAL;
+            default:
+                return ComparisonOp.EQUAL;
+        }
+    }
+
+    /**
+     * Converts a predicate value to the Java type expected by {@link KuduPredicate} for the column type.
+     */
+    static Object toValue(final ColumnSchema column, final String value) {
+        try {
+            switch (column.getType()) {
+                case BOOL:
+                    return Boolean.parseBoolean(value);
+                case INT8:
+                    return Byte.parseByte(value);
+                case INT16:
+                    return Short.parseShort(value);
+                case INT32:
+                    return Integer.parseInt(value);
+                case INT64:
+                    return Long.parseLong(value);
+                case FLOAT:
+                    return Float.parseFloat(value);
+                case DOUBLE:
+                    return Double.parseDouble(value);
+                case DECIMAL:
+                    return new BigDecimal(value);
+                case UNIXTIME_MICROS:
+                    return value.chars().allMatch(Character::isDigit) ? new Timestamp(Long.parseLong(value)) : Timestamp.valueOf(value);
+                case DATE:
+                    return Date.valueOf(value);
+                case BINARY:
+                    return value.getBytes(StandardCharsets.UTF_8);
+                default:
+                    return value;
+            }
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Predicate value [%s] is not valid for column %s of type %s",
+                    value, column.getName(), column.getType()), e);
+        }
+    }
+
+    private static String unquote(final String value) {
+        if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+            return value.substring(1, value.length() - 1).replace("''", "'");
+        }
+        return value;
+    }
+
+    /**
+     * Splits on a separator word or character outside of single-quoted values. Word separators must be surrounded by
+     * whitespace and are matched case-insensitively.
+     */
+    private static List<String> split(final String expression, final String separator) {
+        final boolean word = Character.isLetter(separator.charAt(0));
+        final String upper = expression.toUpperCase(Locale.ROOT);
+        final List<String> parts = new ArrayList<>();
+
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            final char c = expression.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && upper.startsWith(separator, i)) {
+                final int end = i + separator.length();
+                if (!word || (i > 0 && Character.isWhitespace(expression.charAt(i - 1)) && end < expression.length() && Character.isWhitespace(expression.charAt(end)))) {
+                    parts.add(expression.substring(start, i));
+                    start = end;
+                    i = end - 1;
+                }
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException(String.format("Unterminated quote in predicates [%s]", expression));
+        }
+        parts.add(expression.substring(start));
+        return parts;
+    }
+}
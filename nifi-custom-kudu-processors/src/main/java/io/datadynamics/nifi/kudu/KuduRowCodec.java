@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.ColumnTypeAttributes;
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.util.DateUtil;
+import org.apache.kudu.util.DecimalUtil;
+import org.apache.kudu.util.TimestampUtil;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Encodes rows into a compact layout and builds operations back from it, for the sinks that hold rows without keeping
+ * Operation objects. An encoded row holds the index of its table, its operation type and its set cells, each with its
+ * column index, whether it is null and the value in the layout of the column type.
+ */
+final class KuduRowCodec {
+
+    private static final byte CELL_NULL = 0;
+    private static final byte CELL_SET = 1;
+
+    private static final OperationType[] OPERATION_TYPES = OperationType.values();
+
+    private final EncodedRow encodedRow = new EncodedRow();
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+
+    /**
+     * Starts encoding a row. Its cells are set through the returned writer, and the row is completed by {@link #end()};
+     * a row that is not completed is discarded by the next one.
+     *
+     * @param tableIndex    Index of the table of the row in the tables given to {@link #decode(ByteBuffer, List)}
+     * @param operationType Operation the row is applied with
+     * @param schema        Schema of the table
+     * @return Writer of the cells of the row
+     */
+    KuduRowWriter begin(final int tableIndex, final OperationType operationType, final Schema schema) {
+        scratch.clear();
+        scratch.putInt(tableIndex);
+        scratch.put((byte) operationType.ordinal());
+        encodedRow.begin(schema, scratch.position());
+        scratch.putShort((short) 0);
+        return encodedRow;
+    }
+
+    /**
+     * Completes the row started by {@link #begin(int, OperationType, Schema)}.
+     *
+     * @return Encoded row between the position and the limit of the buffer, valid until the next row is started
+     */
+    ByteBuffer end() {
+        scratch.putShort(encodedRow.cellCountPosition, (short) encodedRow.cells);
+        scratch.flip();
+        return scratch;
+    }
+
+    /**
+     * Encodes the row of an operation.
+     *
+     * @param tableIndex Index of the table of the operation
+     * @param operation  Operation to encode
+     * @return Encoded row between the position and the limit of the buffer, valid until the next row is started
+     */
+    ByteBuffer encode(final int tableIndex, final Operation operation) {
+        KuduOperations.copyCells(operation.getRow(), begin(tableIndex, KuduOperations.operationType(operation), operation.getTable().getSchema()));
+        return end();
+    }
+
+    /**
+     * Builds the operation of the encoded row at the position of the buffer, and moves the position past the row.
+     *
+     * @param buffer Buffer of the encoded row
+     * @param tables Tables of the rows, by table index
+     * @return New operation
+     */
+    static Operation decode(final ByteBuffer buffer, final List<KuduTable> tables) {
+        final KuduTable table = tables.get(buffer.getInt());
+        final Operation operation = KuduOperations.newOperation(table, OPERATION_TYPES[buffer.get()]);
+        final Schema schema = table.getSchema();
+        final PartialRow row = operation.getRow();
+
+        final int cells = buffer.getShort();
+        for (int cell = 0; cell < cells; cell++) {
+            final int i = buffer.getShort();
+            if (buffer.get() == CELL_NULL) {
+                row.setNull(i);
+                continue;
+            }
+
+            final ColumnSchema column = schema.getColumnByIndex(i);
+            switch (column.getType()) {
+                case BOOL:
+                    row.addBoolean(i, buffer.get() != 0);
+                    break;
+                case INT8:
+                    row.addByte(i, buffer.get());
+                    break;
+                case INT16:
+                    row.addShort(i, buffer.getShort());
+                    break;
+                case INT32:
+                    row.addInt(i, buffer.getInt());
+                    break;
+                case INT64:
+                case UNIXTIME_MICROS:
+                    row.addLong(i, buffer.getLong());
+                    break;
+                case DATE:
+                    row.addDate(i, DateUtil.epochDaysToSqlDate(buffer.getInt()));
+                    break;
+                case FLOAT:
+                    row.addFloat(i, buffer.getFloat());
+                    break;
+                case DOUBLE:
+                    row.addDouble(i, buffer.getDouble());
+                    break;
+                case DECIMAL:
+                    final int scale = buffer.getInt();
+                    row.addDecimal(i, new BigDecimal(new BigInteger(getBytes(buffer)), scale));
+                    break;
+                case STRING:
+                    row.addString(i, new String(getBytes(buffer), StandardCharsets.UTF_8));
+                    break;
+                case VARCHAR:
+                    row.addVarchar(i, new String(getBytes(buffer), StandardCharsets.UTF_8));
+                    break;
+                case BINARY:
+                    row.addBinary(i, getBytes(buffer));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported column type " + column.getType() + " of column " + column.getName());
+            }
+        }
+        return operation;
+    }
+
+    private void putByte(final byte value) {
+        ensureScratch(1);
+        scratch.put(value);
+    }
+
+    private void putBytes(final byte[] value) {
+        ensureScratch(Integer.BYTES + value.length);
+        scratch.putInt(value.length);
+        scratch.put(value);
+    }
+
+    private static byte[] getBytes(final ByteBuffer buffer) {
+        final byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        return value;
+    }
+
+    private void ensureScratch(final int bytes) {
+        if (scratch.remaining() < bytes) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + bytes));
+            scratch.flip();
+            grown.put(scratch);
+            scratch = grown;
+        }
+    }
+
+    /**
+     * Writer of the cells of the current row into the scratch buffer. Values are checked as PartialRow checks them,
+     * so that a row failing conversion fails while its Record is processed rather than when it is applied.
+     */
+    private class EncodedRow implements KuduRowWriter {
+        private Schema schema;
+        private int cellCountPosition;
+        private int cells;
+
+        private void begin(final Schema schema, final int cellCountPosition) {
+            this.schema = schema;
+            this.cellCountPosition = cellCountPosition;
+            this.cells = 0;
+        }
+
+        private void cell(final int columnIndex, final byte state) {
+            ensureScratch(Short.BYTES + 1);
+            scratch.putShort((short) columnIndex);
+            scratch.put(state);
+            cells++;
+        }
+
+        @Override
+        public void setNull(final int columnIndex) {
+            cell(columnIndex, CELL_NULL);
+        }
+
+        @Override
+        public void addBoolean(final int columnIndex, final boolean value) {
+            cell(columnIndex, CELL_SET);
+            putByte(value ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        public void addByte(final int columnIndex, final byte value) {
+            cell(columnIndex, CELL_SET);
+            putByte(value);
+        }
+
+        @Override
+        public void addShort(final int columnIndex, final short value) {
+            cell(columnIndex, CELL_SET);
+            ensureScratch(Short.BYTES);
+            scratch.putShort(value);
+        }
+
+        @Override
+        public void addInt(final int columnIndex, final int value) {
+            cell(columnIndex, CELL_SET);
+            ensureScratch(Integer.BYTES);
+            scratch.putInt(value);
+        }
+
+        @Override
+        public void addLong(final int columnIndex, final long value) {
+            cell(columnIndex, CELL_SET);
+            ensureScratch(Long.BYTES);
+            scratch.putLong(value);
+        }
+
+        @Override
+        public void addTimestamp(final int columnIndex, final Timestamp value) {
+            addLong(columnIndex, TimestampUtil.timestampToMicros(value));
+        }
+
+        @Override
+        public void addFloat(final int columnIndex, final float value) {
+            cell(columnIndex, CELL_SET);
+            ensureScratch(Float.BYTES);
+            scratch.putFloat(value);
+        }
+
+        @Override
+        public void addDouble(final int columnIndex, final double value) {
+            cell(columnIndex, CELL_SET);
+            ensureScratch(Double.BYTES);
+            scratch.putDouble(value);
+        }
+
+        @Override
+        public void addDecimal(final int columnIndex, final BigDecimal value) {
+            final ColumnTypeAttributes typeAttributes = schema.getColumnByIndex(columnIndex).getTypeAttributes();
+            final BigDecimal coerced = DecimalUtil.coerce(value, typeAttributes.getPrecision(), typeAttributes.getScale());
+            cell(columnIndex, CELL_SET);
+            ensureScratch(Integer.BYTES);
+            scratch.putInt(coerced.scale());
+            putBytes(coerced.unscaledValue().toByteArray());
+        }
+
+        @Override
+        public void addString(final int columnIndex, final String value) {
+            cell(columnIndex, CELL_SET);
+            putBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void addVarchar(final int columnIndex, final String value) {
+            // Truncated to the maximum length of the column when the operation is built
+            addString(columnIndex, value);
+        }
+
+        @Override
+        public void addBinary(final int columnIndex, final byte[] value) {
+            cell(columnIndex, CELL_SET);
+            putBytes(value);
+        }
+
+        @Override
+        public void addDate(final int columnIndex, final Date value) {
+            final int days = DateUtil.sqlDateToEpochDays(value);
+            cell(columnIndex, CELL_SET);
+            ensureScratch(Integer.BYTES);
+            scratch.putInt(days);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.ColumnTypeAttributes;
+import org.apache.kudu.Schema;
+import org.apache.kudu.client.RowResult;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.DataType;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts rows read from Kudu into NiFi records.
+ */
+class KuduRowConverter {
+
+    static final String OPERATION_UPSERT = OperationType.UPSERT.name();
+    static final String OPERATION_DELETE = OperationType.DELETE.name();
+
+    private final Schema kuduSchema;
+    private final RecordSchema recordSchema;
+    private final String operationField;
+
+    /**
+     * @param kuduSchema Schema of the rows to convert, which is the projected schema for scans
+     */
+    KuduRowConverter(final Schema kuduSchema) {
+        this(kuduSchema, null);
+    }
+
+    /**
+     * @param kuduSchema     Schema of the rows to convert, which is the projected schema for scans
+     * @param operationField Name of a field added to every record with the operation of a diff scan row, UPSERT or DELETE,
+     *                       or null to convert rows of regular scans
+     */
+    KuduRowConverter(final Schema kuduSchema, final String operationField) {
+        this.kuduSchema = kuduSchema;
+        this.operationField = operationField;
+
+        final List<RecordField> fields = new ArrayList<>(kuduSchema.getColumnCount() + 1);
+        for (final ColumnSchema column : kuduSchema.getColumns()) {
+            fields.add(new RecordField(column.getName(), toDataType(column), column.isNullable()));
+        }
+        if (operationField != null) {
+            fields.add(new RecordField(operationField, RecordFieldType.STRING.getDataType(), false));
+        }
+        this.recordSchema = new SimpleRecordSchema(fields);
+    }
+
+    RecordSchema getRecordSchema() {
+        return recordSchema;
+    }
+
+    Record toRecord(final RowResult row) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < kuduSchema.getColumnCount(); i++) {
+            final ColumnSchema column = kuduSchema.getColumnByIndex(i);
+            values.put(column.getName(), row.isNull(i) ? null : getValue(row, i, column));
+        }
+        if (operationField != null) {
+            values.put(operationField, row.isDeleted() ? OPERATION_DELETE : OPERATION_UPSERT);
+        }
+        return new MapRecord(recordSchema, values);
+    }
+
+    private static Object getValue(final RowResult row, final int index, final ColumnSchema column) {
+        switch (column.getType()) {
+            case BOOL:
+                return row.getBoolean(index);
+            case INT8:
+                return row.getByte(index);
+            case INT16:
+                return row.getShort(index);
+            case INT32:
+                return row.getInt(index);
+            case INT64:
+                return row.getLong(index);
+            case FLOAT:
+                return row.getFloat(index);
+            case DOUBLE:
+                return row.getDouble(index);
+            case DECIMAL:
+                return row.getDecimal(index);
+            case UNIXTIME_MICROS:
+                return row.getTimestamp(index);
+            case DATE:
+                return row.getDate(index);
+            case STRING:
+                return row.getString(index);
+            case VARCHAR:
+                return row.getVarchar(index);
+            case BINARY:
+                return row.getBinaryCopy(index);
+            default:
+                throw new IllegalStateException(String.format("unknown column type %s", column.getType()));
+        }
+    }
+
+    /**
+     * Converts a Kudu column type to its equivalent NiFi DataType.
+     */
+    static DataType toDataType(final ColumnSchema column) {
+        switch (column.getType()) {
+            case BOOL:
+                return RecordFieldType.BOOLEAN.getDataType();
+            case INT8:
+                return RecordFieldType.BYTE.getDataType();
+            case INT16:
+                return RecordFieldType.SHORT.getDataType();
+            case INT32:
+                return RecordFieldType.INT.getDataType();
+            case INT64:
+                return RecordFieldType.LONG.getDataType();
+            case FLOAT:
+                return RecordFieldType.FLOAT.getDataType();
+            case DOUBLE:
+                return RecordFieldType.DOUBLE.getDataType();
+            case DECIMAL:
+                final ColumnTypeAttributes attributes = column.getTypeAttributes();
+                return RecordFieldType.DECIMAL.getDecimalDataType(attributes.getPrecision(), attributes.getScale());
+            case UNIXTIME_MICROS:
+                return RecordFieldType.TIMESTAMP.getDataType();
+            case DATE:
+                return RecordFieldType.DATE.getDataType();
+            case STRING:
+            case VARCHAR:
+                return RecordFieldType.STRING.getDataType();
+            case BINARY:
+                return RecordFieldType.ARRAY.getArrayDataType(RecordFieldType.BYTE.getDataType());
+            default:
+                throw new IllegalArgumentException(String.format("unsupported type %s", column.getType()));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.PartialRow;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+
+/**
+ * Destination of the cells of a row built from a Record. {@link #of(PartialRow)} writes into the row of an
+ * Operation; {@link KuduStagingWriteSink} writes the cells straight into its off-heap staging layout.
+ */
+public interface KuduRowWriter {
+
+    void setNull(int columnIndex);
+
+    void addBoolean(int columnIndex, boolean value);
+
+    void addByte(int columnIndex, byte value);
+
+    void addShort(int columnIndex, short value);
+
+    void addInt(int columnIndex, int value);
+
+    void addLong(int columnIndex, long value);
+
+    void addTimestamp(int columnIndex, Timestamp value);
+
+    void addFloat(int columnIndex, float value);
+
+    void addDouble(int columnIndex, double value);
+
+    void addDecimal(int columnIndex, BigDecimal value);
+
+    void addString(int columnIndex, String value);
+
+    void addVarchar(int columnIndex, String value);
+
+    void addBinary(int columnIndex, byte[] value);
+
+    void addDate(int columnIndex, Date value);
+
+    /**
+     * @param row Row of an Operation
+     * @return Writer setting the cells of the row
+     */
+    static KuduRowWriter of(final PartialRow row) {
+        return new KuduRowWriter() {
+            @Override
+            public void setNull(final int columnIndex) {
+                row.setNull(columnIndex);
+            }
+
+            @Override
+            public void addBoolean(final int columnIndex, final boolean value) {
+                row.addBoolean(columnIndex, value);
+            }
+
+            @Override
+            public void addByte(final int columnIndex, final byte value) {
+                row.addByte(columnIndex, value);
+            }
+
+            @Override
+            public void addShort(final int columnIndex, final short value) {
+                row.addShort(columnIndex, value);
+            }
+
+            @Override
+            public void addInt(final int columnIndex, final int value) {
+                row.addInt(columnIndex, value);
+            }
+
+            @Override
+            public void addLong(final int columnIndex, final long value) {
+                row.addLong(columnIndex, value);
+            }
+
+            @Override
+            public void addTimestamp(final int columnIndex, final Timestamp value) {
+                row.addTimestamp(columnIndex, value);
+            }
+
+            @Override
+            public void addFloat(final int columnIndex, final float value) {
+                row.addFloat(columnIndex, value);
+            }
+
+            @Override
+            public void addDouble(final int columnIndex, final double value) {
+                row.addDouble(columnIndex, value);
+            }
+
+            @Override
+            public void addDecimal(final int columnIndex, final BigDecimal value) {
+                row.addDecimal(columnIndex, value);
+            }
+
+            @Override
+            public void addString(final int columnIndex, final String value) {
+                row.addString(columnIndex, value);
+            }
+
+            @Override
+            public void addVarchar(final int columnIndex, final String value) {
+                row.addVarchar(columnIndex, value);
+            }
+
+            @Override
+            public void addBinary(final int columnIndex, final byte[] value) {
+                row.addBinary(columnIndex, value);
+            }
+
+            @Override
+            public void addDate(final int columnIndex, final Date value) {
+                row.addDate(columnIndex, value);
+            }
+        };
+    }
+}
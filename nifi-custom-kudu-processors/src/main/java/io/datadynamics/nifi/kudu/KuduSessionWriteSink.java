@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.KuduSession;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Write sink delegating to a KuduSession
+ */
+public class KuduSessionWriteSink implements KuduWriteSink {
+
+    private final KuduSession kuduSession;
+
+    public KuduSessionWriteSink(final KuduSession kuduSession) {
+        this.kuduSession = kuduSession;
+    }
+
+    @Override
+    public OperationResponse apply(final Operation operation) throws KuduException {
+        return kuduSession.apply(operation);
+    }
+
+    @Override
+    public List<OperationResponse> flush() throws KuduException {
+        return kuduSession.flush();
+    }
+
+    @Override
+    public List<OperationResponse> close() throws KuduException {
+        return kuduSession.close();
+    }
+
+    @Override
+    public SessionConfiguration.FlushMode getFlushMode() {
+        return kuduSession.getFlushMode();
+    }
+
+    @Override
+    public List<RowError> getPendingRowErrors() {
+        return Arrays.asList(kuduSession.getPendingErrors().getRowErrors());
+    }
+
+    @Override
+    public void setIgnoreAllDuplicateRows(final boolean ignoreAllDuplicateRows) {
+        kuduSession.setIgnoreAllDuplicateRows(ignoreAllDuplicateRows);
+    }
+}
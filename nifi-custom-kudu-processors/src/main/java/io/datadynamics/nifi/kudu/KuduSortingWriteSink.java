@@ -0,0 +1,448 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Write sink holding the rows of a batch until it is closed, then applying them to the delegate sink ordered by table
+ * and encoded primary key, which is the order of the rows within a tablet. The sort is stable, so operations on the
+ * same key keep their order.
+ *
+ * Rows are held encoded with {@link KuduRowCodec} next to their sort key rather than as Operation objects. Once the
+ * held rows exceed the memory budget, they are sorted and spilled as a run to a local file, and the runs are merged
+ * when the sink is closed. Operations are only built again while the rows are applied, and the delegate is flushed
+ * every flush interval, so at most one interval of Operation objects is on the heap whatever the size of the batch.
+ * Since the applied operations are new objects, rows are attributed to the owner set with {@link #setOwner(Object)}
+ * when they were applied to this sink, and row errors are returned by {@link #getPendingRowErrors()}. When applying or
+ * spilling the held rows fails, they are discarded and the sink reports {@link #isFailed()}.
+ */
+public class KuduSortingWriteSink implements KuduOwnerTrackingWriteSink {
+
+    /**
+     * Estimated heap size of a held row besides its sort key and encoded cells
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private static final Comparator<SortEntry> ORDER = (left, right) -> {
+        final int result = compareUnsigned(left.key, right.key);
+        return result != 0 ? result : Long.compare(left.position, right.position);
+    };
+
+    private final KuduWriteSink delegate;
+    private final int flushInterval;
+    private final long memoryBudgetBytes;
+    private final Path spillDirectory;
+
+    private final KuduRowCodec codec = new KuduRowCodec();
+    private final List<KuduTable> tables = new ArrayList<>();
+    private final List<Object> owners = new ArrayList<>();
+    private final List<SortEntry> run = new ArrayList<>();
+    private final List<Path> spilledRuns = new ArrayList<>();
+    private final Map<Operation, Object> chunkOwners = new IdentityHashMap<>();
+    private final List<RowError> rowErrors = new ArrayList<>();
+    private List<OperationResponse> lastResponses = Collections.emptyList();
+    private long held;
+    private long runBytes;
+    private int ownerIndex = -1;
+    private boolean failed;
+    private boolean ignoreAllDuplicateRows;
+    private BiConsumer<Operation, Object> failedOperationListener = (operation, operationOwner) -> { };
+
+    /**
+     * @param delegate          Sink the sorted operations are applied to
+     * @param flushInterval     Number of operations after which the delegate is flushed while the sorted rows are applied
+     * @param memoryBudgetBytes Size of the rows held in memory above which they are spilled
+     * @param spillDirectory    Directory of the spilled runs
+     */
+    public KuduSortingWriteSink(final KuduWriteSink delegate, final int flushInterval, final long memoryBudgetBytes, final Path spillDirectory) {
+        this.delegate = delegate;
+        this.flushInterval = flushInterval;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public void setOwner(final Object owner) {
+        if (ownerIndex < 0 || owners.get(ownerIndex) != owner) {
+            owners.add(owner);
+            ownerIndex = owners.size() - 1;
+        }
+    }
+
+    @Override
+    public void setFailedOperationListener(final BiConsumer<Operation, Object> failedOperationListener) {
+        this.failedOperationListener = failedOperationListener;
+    }
+
+    @Override
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public OperationResponse apply(final Operation operation) throws KuduException {
+        final byte[] key;
+        try {
+            key = sortKey(operation);
+        } catch (final RuntimeException e) {
+            // Rows without a complete key are rejected by the delegate as they would be without sorting
+            final OperationResponse response = delegate.apply(operation);
+            if (response == null) {
+                chunkOwners.put(operation, currentOwner());
+            }
+            return response;
+        }
+
+        final ByteBuffer encoded = codec.encode(tableIndex(operation.getTable()), operation);
+        final byte[] row = new byte[encoded.remaining()];
+        encoded.get(row);
+        run.add(new SortEntry(key, held++, ownerIndex, row));
+        runBytes += key.length + row.length + ENTRY_OVERHEAD_BYTES;
+        if (runBytes >= memoryBudgetBytes) {
+            spillRun();
+        }
+        return null;
+    }
+
+    /**
+     * Rows are held until the sink is closed or the duplicate rows setting changes, so a flush only returns the
+     * responses of the last operations applied since the previous flush, which are only used for metrics.
+     */
+    @Override
+    public List<OperationResponse> flush() throws KuduException {
+        final List<OperationResponse> responses = lastResponses;
+        lastResponses = Collections.emptyList();
+        return responses;
+    }
+
+    @Override
+    public List<OperationResponse> close() throws KuduException {
+        try {
+            applySorted();
+            final List<OperationResponse> closeResponses = delegate.close();
+            collectRowErrors(closeResponses);
+            final List<OperationResponse> responses = new ArrayList<>(lastResponses);
+            responses.addAll(closeResponses);
+            lastResponses = Collections.emptyList();
+            return responses;
+        } finally {
+            deleteRuns();
+        }
+    }
+
+    /**
+     * Row errors are collected when the sorted operations are applied, as with AUTO_FLUSH_BACKGROUND.
+     */
+    @Override
+    public SessionConfiguration.FlushMode getFlushMode() {
+        return SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND;
+    }
+
+    /**
+     * Held rows are only applied when the sink is closed.
+     */
+    @Override
+    public boolean isDurableOnFlush() {
+        return false;
+    }
+
+    @Override
+    public List<RowError> getPendingRowErrors() {
+        final List<RowError> errors = new ArrayList<>(rowErrors);
+        rowErrors.clear();
+        return errors;
+    }
+
+    @Override
+    public void setIgnoreAllDuplicateRows(final boolean ignoreAllDuplicateRows) {
+        if (this.ignoreAllDuplicateRows != ignoreAllDuplicateRows && held > 0) {
+            // Held rows were applied under the previous setting
+            try {
+                applySorted();
+            } catch (final KuduException e) {
+                throw new IllegalStateException("Failed to apply sorted operations before changing the duplicate rows setting", e);
+            } finally {
+                deleteRuns();
+            }
+        }
+        this.ignoreAllDuplicateRows = ignoreAllDuplicateRows;
+        delegate.setIgnoreAllDuplicateRows(ignoreAllDuplicateRows);
+    }
+
+    private void applySorted() throws KuduException {
+        if (held == 0) {
+            flushChunk();
+            return;
+        }
+
+        try {
+            if (spilledRuns.isEmpty()) {
+                run.sort(ORDER);
+                for (final SortEntry entry : run) {
+                    applyEntry(entry);
+                }
+            } else {
+                spillRun();
+                mergeRuns();
+            }
+            flushChunk();
+        } catch (final KuduException | RuntimeException e) {
+            // The held rows are discarded below, so none of them can be attributed any more
+            failed = true;
+            throw e;
+        } finally {
+            run.clear();
+            runBytes = 0;
+            held = 0;
+            final Object owner = currentOwner();
+            owners.clear();
+            ownerIndex = -1;
+            if (owner != null) {
+                setOwner(owner);
+            }
+        }
+    }
+
+    private void mergeRuns() throws KuduException {
+        final PriorityQueue<RunReader> readers = new PriorityQueue<>(spilledRuns.size(), (left, right) -> ORDER.compare(left.current, right.current));
+        try {
+            for (final Path path : spilledRuns) {
+                final RunReader reader = new RunReader(path);
+                if (reader.advance()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            while (!readers.isEmpty()) {
+                final RunReader reader = readers.poll();
+                applyEntry(reader.current);
+                if (reader.advance()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to merge spilled sort runs", e);
+        } finally {
+            readers.forEach(RunReader::closeQuietly);
+        }
+    }
+
+    private void applyEntry(final SortEntry entry) throws KuduException {
+        final Operation operation = KuduRowCodec.decode(ByteBuffer.wrap(entry.row), tables);
+        final Object owner = entry.ownerIndex < 0 ? null : owners.get(entry.ownerIndex);
+        chunkOwners.put(operation, owner);
+
+        final OperationResponse response = delegate.apply(operation);
+        if (response != null && response.hasRowError()) {
+            collectRowError(response.getRowError());
+        }
+        if (chunkOwners.size() >= flushInterval) {
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() throws KuduException {
+        if (chunkOwners.isEmpty()) {
+            return;
+        }
+        lastResponses = delegate.flush();
+        collectRowErrors(lastResponses);
+        chunkOwners.clear();
+    }
+
+    private void collectRowErrors(final List<OperationResponse> responses) {
+        if (delegate.getFlushMode() == SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND) {
+            for (final RowError rowError : delegate.getPendingRowErrors()) {
+                collectRowError(rowError);
+            }
+        } else {
+            for (final OperationResponse response : responses) {
+                if (response.hasRowError()) {
+                    collectRowError(response.getRowError());
+                }
+            }
+        }
+    }
+
+    private void collectRowError(final RowError rowError) {
+        final Object rowOwner = chunkOwners.get(rowError.getOperation());
+        if (rowOwner != null) {
+            failedOperationListener.accept(rowError.getOperation(), rowOwner);
+        }
+        rowErrors.add(rowError);
+    }
+
+    private Object currentOwner() {
+        return ownerIndex < 0 ? null : owners.get(ownerIndex);
+    }
+
+    private int tableIndex(final KuduTable table) {
+        for (int i = 0; i < tables.size(); i++) {
+            if (tables.get(i) == table) {
+                return i;
+            }
+        }
+        tables.add(table);
+        return tables.size() - 1;
+    }
+
+    private void spillRun() {
+        if (run.isEmpty()) {
+            return;
+        }
+
+        run.sort(ORDER);
+        try {
+            final Path path = Files.createTempFile(spillDirectory, "kudu-sort-", ".run");
+            spilledRuns.add(path);
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+                for (final SortEntry entry : run) {
+                    out.writeInt(entry.key.length);
+                    out.write(entry.key);
+                    out.writeLong(entry.position);
+                    out.writeInt(entry.ownerIndex);
+                    out.writeInt(entry.row.length);
+                    out.write(entry.row);
+                }
+            }
+        } catch (final IOException e) {
+            failed = true;
+            throw new UncheckedIOException("Failed to spill sort run to " + spillDirectory, e);
+        }
+        run.clear();
+        runBytes = 0;
+    }
+
+    private void deleteRuns() {
+        for (final Path path : spilledRuns) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (final IOException ignored) {
+                path.toFile().deleteOnExit();
+            }
+        }
+        spilledRuns.clear();
+    }
+
+    /**
+     * Sort key of an operation: the table id followed by the encoded primary key, which sorts like the rows of a tablet.
+     */
+    private static byte[] sortKey(final Operation operation) {
+        final byte[] tableId = operation.getTable().getTableId().getBytes(StandardCharsets.UTF_8);
+        final byte[] primaryKey = operation.getRow().encodePrimaryKey();
+        final byte[] key = new byte[tableId.length + 1 + primaryKey.length];
+        System.arraycopy(tableId, 0, key, 0, tableId.length);
+        System.arraycopy(primaryKey, 0, key, tableId.length + 1, primaryKey.length);
+        return key;
+    }
+
+    private static int compareUnsigned(final byte[] left, final byte[] right) {
+        final int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            final int result = (left[i] & 0xff) - (right[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return left.length - right.length;
+    }
+
+    private static class SortEntry {
+        private final byte[] key;
+        private final long position;
+        private final int ownerIndex;
+        private final byte[] row;
+
+        private SortEntry(final byte[] key, final long position, final int ownerIndex, final byte[] row) {
+            this.key = key;
+            this.position = position;
+            this.ownerIndex = ownerIndex;
+            this.row = row;
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream in;
+        private SortEntry current;
+
+        private RunReader(final Path path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+        }
+
+        private boolean advance() throws IOException {
+            final int keyLength;
+            try {
+                keyLength = in.readInt();
+            } catch (final EOFException e) {
+                current = null;
+                return false;
+            }
+            final byte[] key = new byte[keyLength];
+            in.readFully(key);
+            final long position = in.readLong();
+            final int ownerIndex = in.readInt();
+            final byte[] row = new byte[in.readInt()];
+            in.readFully(row);
+            current = new SortEntry(key, position, ownerIndex, row);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (final IOException ignored) {
+                // The run file is deleted afterwards
+            }
+        }
+    }
+}
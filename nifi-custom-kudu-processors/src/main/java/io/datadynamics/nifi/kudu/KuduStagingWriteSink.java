@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Write sink staging the cells of rows in off-heap buffers instead of keeping Operation objects. Rows are written
+ * straight into the staging layout of {@link KuduRowCodec} with {@link #beginRow(KuduTable, OperationType)} and
+ * {@link #applyRow()}. Operations are only built when the staged rows are applied to the delegate sink, which happens
+ * in chunks when the sink is flushed, so at most one chunk of Operation objects is on the heap whatever the size of the
+ * batch. When the buffers of the sink would exceed its staging budget, the staged rows are applied first, so the
+ * off-heap memory of a sink stays within the budget as well.
+ *
+ * Since the materialized operations are new objects, rows are attributed to the owner set with
+ * {@link #setOwner(Object)} when they were staged, and only the operations that failed are reported to the failed
+ * operation listener together with their owner. Row errors are returned by {@link #getPendingRowErrors()}. When
+ * applying the staged rows fails, their buffers are still released and the sink reports {@link #isFailed()}.
+ */
+public class KuduStagingWriteSink implements KuduOwnerTrackingWriteSink {
+
+    private final KuduWriteSink delegate;
+    private final BufferPool pool;
+    private final int chunkRows;
+    private final long maxStagedBytes;
+
+    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private final List<KuduTable> tables = new ArrayList<>();
+    private final List<OwnerRun> ownerRuns = new ArrayList<>();
+    private final List<RowError> rowErrors = new ArrayList<>();
+    private final KuduRowCodec codec = new KuduRowCodec();
+    private List<OperationResponse> lastResponses = Collections.emptyList();
+    private int staged;
+    private long stagedBytes;
+    private Object owner;
+    private boolean failed;
+    private boolean ignoreAllDuplicateRows;
+    private BiConsumer<Operation, Object> failedOperationListener = (operation, operationOwner) -> { };
+
+    /**
+     * @param delegate       Sink the materialized operations are applied to
+     * @param pool           Pool of the off-heap buffers
+     * @param chunkRows      Number of operations materialized and flushed at once
+     * @param maxStagedBytes Size of the off-heap buffers of the sink above which the staged rows are applied first
+     */
+    public KuduStagingWriteSink(final KuduWriteSink delegate, final BufferPool pool, final int chunkRows, final long maxStagedBytes) {
+        this.delegate = delegate;
+        this.pool = pool;
+        this.chunkRows = chunkRows;
+        this.maxStagedBytes = maxStagedBytes;
+    }
+
+    @Override
+    public void setOwner(final Object owner) {
+        this.owner = owner;
+        final OwnerRun last = ownerRuns.isEmpty() ? null : ownerRuns.get(ownerRuns.size() - 1);
+        if (last != null && last.start == staged) {
+            last.owner = owner;
+        } else if (last == null || last.owner != owner) {
+            ownerRuns.add(new OwnerRun(staged, owner));
+        }
+    }
+
+    @Override
+    public void setFailedOperationListener(final BiConsumer<Operation, Object> failedOperationListener) {
+        this.failedOperationListener = failedOperationListener;
+    }
+
+    @Override
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Starts a row. Its cells are set through the returned writer, and the row is staged by {@link #applyRow()};
+     * a row that is not applied is discarded by the next one.
+     *
+     * @param table         Table of the row
+     * @param operationType Operation the row is applied with
+     * @return Writer of the cells of the row
+     */
+    public KuduRowWriter beginRow(final KuduTable table, final OperationType operationType) {
+        return codec.begin(tableIndex(table), operationType, table.getSchema());
+    }
+
+    /**
+     * Stages the row started by {@link #beginRow(KuduTable, OperationType)}.
+     *
+     * @throws KuduException Thrown when the staging budget is reached and the staged rows cannot be applied
+     */
+    public void applyRow() throws KuduException {
+        final ByteBuffer row = codec.end();
+        final int length = row.remaining();
+        ByteBuffer buffer = buffers.isEmpty() ? null : buffers.get(buffers.size() - 1);
+        if (buffer == null || buffer.remaining() < Integer.BYTES + length) {
+            if (staged > 0 && stagedBytes + Math.max(pool.bufferSize, Integer.BYTES + length) > maxStagedBytes) {
+                applyStaged();
+            }
+            buffer = pool.acquire(Integer.BYTES + length);
+            buffers.add(buffer);
+            stagedBytes += buffer.capacity();
+        }
+        if (ownerRuns.isEmpty()) {
+            ownerRuns.add(new OwnerRun(staged, owner));
+        }
+        buffer.putInt(length);
+        buffer.put(row);
+        staged++;
+    }
+
+    @Override
+    public OperationResponse apply(final Operation operation) throws KuduException {
+        KuduOperations.copyCells(operation.getRow(), beginRow(operation.getTable(), KuduOperations.operationType(operation)));
+        applyRow();
+        return null;
+    }
+
+    /**
+     * Materializes and applies the staged operations.
+     *
+     * @return Responses of the last applied chunk, which are only used for metrics
+     */
+    @Override
+    public List<OperationResponse> flush() throws KuduException {
+        applyStaged();
+        final List<OperationResponse> responses = lastResponses;
+        lastResponses = Collections.emptyList();
+        return responses;
+    }
+
+    @Override
+    public List<OperationResponse> close() throws KuduException {
+        try {
+            applyStaged();
+            final List<OperationResponse> closeResponses = delegate.close();
+            collectRowErrors(closeResponses, Collections.emptyMap());
+            final List<OperationResponse> responses = new ArrayList<>(lastResponses);
+            responses.addAll(closeResponses);
+            lastResponses = Collections.emptyList();
+            return responses;
+        } finally {
+            releaseBuffers();
+        }
+    }
+
+    /**
+     * Row errors are collected when the staged operations are applied, as with AUTO_FLUSH_BACKGROUND.
+     */
+    @Override
+    public SessionConfiguration.FlushMode getFlushMode() {
+        return SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND;
+    }
+
+    @Override
+    public List<RowError> getPendingRowErrors() {
+        final List<RowError> errors = new ArrayList<>(rowErrors);
+        rowErrors.clear();
+        return errors;
+    }
+
+    @Override
+    public void setIgnoreAllDuplicateRows(final boolean ignoreAllDuplicateRows) {
+        if (this.ignoreAllDuplicateRows != ignoreAllDuplicateRows && staged > 0) {
+            // Staged operations were applied under the previous setting
+            try {
+                applyStaged();
+            } catch (final KuduException e) {
+                throw new IllegalStateException("Failed to apply staged operations before changing the duplicate rows setting", e);
+            }
+        }
+        this.ignoreAllDuplicateRows = ignoreAllDuplicateRows;
+        delegate.setIgnoreAllDuplicateRows(ignoreAllDuplicateRows);
+    }
+
+    private void applyStaged() throws KuduException {
+        if (staged == 0) {
+            return;
+        }
+
+        final Map<Operation, Object> chunkOwners = new IdentityHashMap<>();
+        int position = 0;
+        int runIndex = 0;
+        try {
+            for (final ByteBuffer buffer : buffers) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    while (runIndex + 1 < ownerRuns.size() && ownerRuns.get(runIndex + 1).start <= position) {
+                        runIndex++;
+                    }
+
+                    final int length = buffer.getInt();
+                    final int end = buffer.position() + length;
+                    final Operation operation = KuduRowCodec.decode(buffer, tables);
+                    buffer.position(end);
+                    chunkOwners.put(operation, ownerRuns.get(runIndex).owner);
+                    position++;
+
+                    final OperationResponse response = delegate.apply(operation);
+                    if (response != null && response.hasRowError()) {
+                        collectRowError(response.getRowError(), chunkOwners);
+                    }
+                    if (chunkOwners.size() >= chunkRows) {
+                        flushChunk(chunkOwners);
+                    }
+                }
+            }
+            flushChunk(chunkOwners);
+        } catch (final KuduException | RuntimeException e) {
+            // The staged rows are released below, so none of them can be attributed any more
+            failed = true;
+            throw e;
+        } finally {
+            for (final ByteBuffer buffer : buffers) {
+                pool.release(buffer);
+            }
+            buffers.clear();
+            ownerRuns.clear();
+            staged = 0;
+            stagedBytes = 0;
+            if (owner != null) {
+                ownerRuns.add(new OwnerRun(0, owner));
+            }
+        }
+    }
+
+    private void flushChunk(final Map<Operation, Object> chunkOwners) throws KuduException {
+        if (chunkOwners.isEmpty()) {
+            return;
+        }
+        lastResponses = delegate.flush();
+        collectRowErrors(lastResponses, chunkOwners);
+        chunkOwners.clear();
+    }
+
+    private void collectRowErrors(final List<OperationResponse> responses, final Map<Operation, Object> chunkOwners) {
+        if (delegate.getFlushMode() == SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND) {
+            for (final RowError rowError : delegate.getPendingRowErrors()) {
+                collectRowError(rowError, chunkOwners);
+            }
+        } else {
+            for (final OperationResponse response : responses) {
+                if (response.hasRowError()) {
+                    collectRowError(response.getRowError(), chunkOwners);
+                }
+            }
+        }
+    }
+
+    private void collectRowError(final RowError rowError, final Map<Operation, Object> chunkOwners) {
+        final Object rowOwner = chunkOwners.get(rowError.getOperation());
+        if (rowOwner != null) {
+            failedOperationListener.accept(rowError.getOperation(), rowOwner);
+        }
+        rowErrors.add(rowError);
+    }
+
+    private void releaseBuffers() {
+        for (final ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        buffers.clear();
+        staged = 0;
+        stagedBytes = 0;
+    }
+
+    private int tableIndex(final KuduTable table) {
+        for (int i = 0; i < tables.size(); i++) {
+            if (tables.get(i) == table) {
+                return i;
+            }
+        }
+        tables.add(table);
+        return tables.size() - 1;
+    }
+
+    private static class OwnerRun {
+        private final int start;
+        private Object owner;
+
+        private OwnerRun(final int start, final Object owner) {
+            this.start = start;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Pool of direct buffers of one size shared by the staging sinks of a processor. Rows larger than a buffer get a
+     * buffer of their own, which is not pooled.
+     */
+    public static class BufferPool {
+        private final int bufferSize;
+        private final int maxPooledBuffers;
+        private final ConcurrentLinkedQueue<ByteBuffer> pooled = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooledCount = new AtomicInteger();
+
+        /**
+         * @param bufferSize       Size of the pooled buffers
+         * @param maxPooledBuffers Number of released buffers kept for reuse
+         */
+        public BufferPool(final int bufferSize, final int maxPooledBuffers) {
+            this.bufferSize = bufferSize;
+            this.maxPooledBuffers = maxPooledBuffers;
+        }
+
+        ByteBuffer acquire(final int minimumSize) {
+            if (minimumSize > bufferSize) {
+                return ByteBuffer.allocateDirect(minimumSize);
+            }
+            final ByteBuffer buffer = pooled.poll();
+            if (buffer == null) {
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+            pooledCount.decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        void release(final ByteBuffer buffer) {
+            if (buffer.capacity() == bufferSize && pooledCount.incrementAndGet() <= maxPooledBuffers) {
+                pooled.offer(buffer);
+            } else if (buffer.capacity() == bufferSize) {
+                pooledCount.decrementAndGet();
+            }
+        }
+    }
+}
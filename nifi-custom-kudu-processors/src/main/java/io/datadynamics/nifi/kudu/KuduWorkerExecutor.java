@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor running the Netty event loops of a Kudu client, following the approach of Executors.newCachedThreadPool()
+ * with the worker count as maximum pool size.
+ *
+ * Each event loop takes one thread from the executor when the first connection is assigned to it and keeps it until
+ * the client is closed, so the pool only ever grows up to the number of loops in use. The load of the loops is
+ * measured by sampling the CPU time of their threads: a loop that is busy most of the time queues the I/O of its
+ * connections, which is the point where more worker threads help. The executor cannot size itself: the number of event
+ * loops is fixed when the client is built, so the load is only reported for the worker count to be raised.
+ */
+public class KuduWorkerExecutor extends ThreadPoolExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final int workerCount;
+
+    private final Map<Thread, Long> threadCpuBaseline = new ConcurrentHashMap<>();
+    private final AtomicLong snapshotNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param workerCount   Number of event loops of the client, and maximum number of threads
+     * @param threadFactory Factory creating the worker threads
+     */
+    public KuduWorkerExecutor(final int workerCount, final ThreadFactory threadFactory) {
+        super(0, workerCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>());
+        this.workerCount = workerCount;
+
+        setThreadFactory(runnable -> {
+            final Thread thread = threadFactory.newThread(runnable);
+            threadCpuBaseline.put(thread, 0L);
+            return thread;
+        });
+    }
+
+    /**
+     * @return Number of event loops the Kudu client should be built with
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Returns the busy ratio of every running event loop since the previous snapshot.
+     *
+     * @return Snapshot of the event loops
+     */
+    public Snapshot snapshot() {
+        final long now = System.nanoTime();
+        final long elapsedNanos = Math.max(1, now - snapshotNanos.getAndSet(now));
+
+        final List<Double> busyRatios = new ArrayList<>();
+        if (THREAD_MX_BEAN.isThreadCpuTimeSupported()) {
+            for (final Map.Entry<Thread, Long> entry : threadCpuBaseline.entrySet()) {
+                final Thread thread = entry.getKey();
+                if (!thread.isAlive()) {
+                    threadCpuBaseline.remove(thread);
+                    continue;
+                }
+                final long cpu = THREAD_MX_BEAN.getThreadCpuTime(thread.getId());
+                if (cpu >= 0) {
+                    busyRatios.add(Math.min(1.0, (double) (cpu - entry.getValue()) / elapsedNanos));
+                    entry.setValue(cpu);
+                }
+            }
+        }
+        busyRatios.sort(null);
+        return new Snapshot(getPoolSize(), workerCount, busyRatios);
+    }
+
+    public static class Snapshot {
+        /**
+         * Busy ratio of an event loop above which the I/O of its connections queues
+         */
+        private static final double SATURATION_THRESHOLD = 0.9;
+
+        private final int runningLoops;
+        private final int workerCount;
+        private final List<Double> busyRatios;
+
+        private Snapshot(final int runningLoops, final int workerCount, final List<Double> busyRatios) {
+            this.runningLoops = runningLoops;
+            this.workerCount = workerCount;
+            this.busyRatios = busyRatios;
+        }
+
+        /**
+         * @return Busy ratio of the busiest event loop
+         */
+        public double getMaxBusyRatio() {
+            return busyRatios.isEmpty() ? 0 : busyRatios.get(busyRatios.size() - 1);
+        }
+
+        /**
+         * @return Number of event loops busy above the saturation threshold
+         */
+        public int getSaturatedLoops() {
+            return (int) busyRatios.stream().filter(ratio -> ratio >= SATURATION_THRESHOLD).count();
+        }
+
+        /**
+         * @return true when all event loops run and one of them is saturated, so that more loops would spread its connections
+         */
+        public boolean isSaturated() {
+            return runningLoops >= workerCount && getSaturatedLoops() > 0;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder loops = new StringBuilder();
+            for (final Double ratio : busyRatios) {
+                loops.append(loops.length() == 0 ? "" : " ").append(String.format("%.0f%%", ratio * 100));
+            }
+            return String.format("event loops=%d/%d, saturated=%d, busy per loop=[%s]", runningLoops, workerCount, getSaturatedLoops(), loops);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+
+import java.util.List;
+
+/**
+ * Destination of the operations written by the processors. {@link KuduSessionWriteSink} writes through a
+ * KuduSession; other implementations allow the write path to be exercised without a Kudu cluster.
+ */
+public interface KuduWriteSink {
+
+    /**
+     * Apply an operation
+     *
+     * @param operation Operation to apply
+     * @return Response when the flush mode is AUTO_FLUSH_SYNC, otherwise null
+     * @throws KuduException Thrown when the operation cannot be buffered
+     */
+    OperationResponse apply(Operation operation) throws KuduException;
+
+    /**
+     * Flush all buffered operations
+     *
+     * @return Responses of the flushed operations
+     * @throws KuduException Thrown when the flush fails
+     */
+    List<OperationResponse> flush() throws KuduException;
+
+    /**
+     * Flush all buffered operations and close the sink
+     *
+     * @return Responses of the flushed operations
+     * @throws KuduException Thrown when the flush fails
+     */
+    List<OperationResponse> close() throws KuduException;
+
+    SessionConfiguration.FlushMode getFlushMode();
+
+    /**
+     * Whether the operations applied before a flush are written to Kudu once the flush returns. Sinks holding
+     * operations beyond a flush, such as {@link KuduSortingWriteSink}, only write them when they are closed.
+     *
+     * @return True when a flush writes all operations applied so far
+     */
+    default boolean isDurableOnFlush() {
+        return true;
+    }
+
+    /**
+     * Get and clear the row errors collected by background flushes
+     *
+     * @return Row errors
+     */
+    List<RowError> getPendingRowErrors();
+
+    void setIgnoreAllDuplicateRows(boolean ignoreAllDuplicateRows);
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduScanToken;
+import org.apache.kudu.client.KuduScanner;
+import org.apache.kudu.client.KuduTable;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.RequiresInstanceClassLoading;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+
+import javax.security.auth.login.LoginException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@RequiresInstanceClassLoading // Because of calls to UserGroupInformation.setConfiguration
+@InputRequirement(InputRequirement.Requirement.INPUT_ALLOWED)
+@Tags({"get", "scan", "fetch", "database", "NoSQL", "kudu", "record"})
+@CapabilityDescription("Scans a Kudu table and writes the rows with the provided Record Writer. The tablets of the table are scanned in parallel, " +
+        "and the column projection and predicates are pushed down to the tablet servers. When the processor has an incoming connection, " +
+        "one scan is executed per incoming FlowFile and its attributes can be referenced by the table name, columns and predicates.")
+@WritesAttributes({
+        @WritesAttribute(attribute = "record.count", description = "Number of rows in the FlowFile"),
+        @WritesAttribute(attribute = "kudu.table.name", description = "Name of the scanned Kudu table"),
+        @WritesAttribute(attribute = "fragment.identifier", description = "Identifier shared by all FlowFiles of one scan"),
+        @WritesAttribute(attribute = "fragment.index", description = "Index of the FlowFile within the scan"),
+        @WritesAttribute(attribute = "fragment.count", description = "Number of FlowFiles of the scan"),
+        @WritesAttribute(attribute = "mime.type", description = "Mime type of the Record Writer")
+})
+public class ScanKudu extends AbstractKuduScanProcessor {
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        final List<PropertyDescriptor> properties = new ArrayList<>();
+        properties.add(KUDU_MASTERS);
+        properties.add(TABLE_NAME);
+        properties.add(PROJECTED_COLUMNS);
+        properties.add(PREDICATES);
+        properties.add(RECORD_WRITER);
+        properties.add(ROWS_PER_FLOWFILE);
+        properties.add(SCAN_THREADS);
+        properties.add(SCAN_BUFFER_SIZE);
+        properties.add(SCAN_BATCH_SIZE_BYTES);
+        properties.add(KERBEROS_CREDENTIALS_SERVICE);
+        properties.add(KERBEROS_PRINCIPAL);
+        properties.add(KERBEROS_PASSWORD);
+        properties.add(KUDU_OPERATION_TIMEOUT_MS);
+        properties.add(KUDU_KEEP_ALIVE_PERIOD_TIMEOUT_MS);
+        properties.add(WORKER_COUNT);
+        properties.add(KUDU_SASL_PROTOCOL_NAME);
+        return properties;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        final Set<Relationship> rels = new HashSet<>();
+        rels.add(REL_SUCCESS);
+        rels.add(REL_FAILURE);
+        rels.add(REL_ORIGINAL);
+        return rels;
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) throws LoginException {
+        createKerberosUserAndOrKuduClient(context);
+        createScanExecutor(context.getProperty(SCAN_THREADS).asInteger());
+        warmUpTable(context.getProperty(TABLE_NAME));
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        FlowFile flowFile = null;
+        if (context.hasIncomingConnection()) {
+            flowFile = session.get();
+            if (flowFile == null && context.hasNonLoopConnection()) {
+                return;
+            }
+        }
+
+        final FlowFile original = flowFile;
+        try {
+            executeOnKuduClientAsUser(kuduClient -> scan(context, session, original, kuduClient));
+            if (original != null) {
+                session.transfer(original, REL_ORIGINAL);
+            }
+        } catch (final Exception e) {
+            if (original == null) {
+                getLogger().error("Failed to scan Kudu table", e);
+                context.yield();
+            } else {
+                getLogger().error("Failed to scan Kudu table for {}; routing to failure", new Object[] {original}, e);
+                session.transfer(session.penalize(original), REL_FAILURE);
+            }
+        }
+    }
+
+    private void scan(final ProcessContext context, final ProcessSession session, final FlowFile flowFile, final KuduClient kuduClient) {
+        final String tableName = context.getProperty(TABLE_NAME).evaluateAttributeExpressions(flowFile).getValue();
+
+        final long start = System.nanoTime();
+        final KuduTable table;
+        try {
+            table = openTable(kuduClient, tableName);
+        } catch (final Exception e) {
+            throw new ProcessException(String.format("Failed to open Kudu table %s", tableName), e);
+        }
+
+        final List<String> columnNames = getProjectedColumns(context, flowFile, table.getSchema());
+        final List<KuduScanToken> tokens = newScanTokenBuilder(context, flowFile, kuduClient, table, columnNames).build();
+        final List<Callable<KuduScanner>> scanners = tokens.stream()
+                .map(token -> (Callable<KuduScanner>) () -> token.intoScanner(kuduClient))
+                .collect(Collectors.toList());
+
+        final KuduRowConverter converter = new KuduRowConverter(getProjectedSchema(table.getSchema(), columnNames));
+        final long rows = scanToFlowFiles(context, session, flowFile, scanners, converter, Collections.singletonMap(TABLE_NAME_ATTR, tableName));
+
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        session.adjustCounter("Kudu Rows Scanned", rows, false);
+        getLogger().debug("Scanned {} rows from {} tablets of {} in {} ms", new Object[] {rows, tokens.size(), tableName, millis});
+    }
+}
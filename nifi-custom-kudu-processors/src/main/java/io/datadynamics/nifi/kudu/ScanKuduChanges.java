@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.KuduClient;
+import org.apache.kudu.client.KuduScanToken;
+import org.apache.kudu.client.KuduScanner;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.util.HybridTimeUtil;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.PrimaryNodeOnly;
+import org.apache.nifi.annotation.behavior.RequiresInstanceClassLoading;
+import org.apache.nifi.annotation.behavior.Stateful;
+import org.apache.nifi.annotation.behavior.TriggerSerially;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyDescriptor.Builder;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateMap;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@PrimaryNodeOnly
+@TriggerSerially
+@RequiresInstanceClassLoading // Because of calls to UserGroupInformation.setConfiguration
+@InputRequirement(InputRequirement.Requirement.INPUT_FORBIDDEN)
+@Tags({"cdc", "change", "diff", "incremental", "scan", "database", "NoSQL", "kudu", "record"})
+@CapabilityDescription("Emits the rows of a Kudu table that changed since the previous run, using Kudu diff scans between the snapshot timestamp " +
+        "stored in cluster state and the current time. Every record has an operation field: DELETE for deleted rows and UPSERT for inserted or " +
+        "updated rows, which Kudu diff scans do not distinguish. The records can be replayed with AddNineHoursPutKudu using the operation field " +
+        "as Operation RecordPath. The processor must run more often than the tablet history retention of the cluster (--tablet_history_max_age_sec), " +
+        "otherwise the diff scan fails because the start snapshot is no longer available.")
+@Stateful(scopes = Scope.CLUSTER, description = "The snapshot timestamp up to which changes were emitted is stored per table, in microseconds since the epoch.")
+@WritesAttributes({
+        @WritesAttribute(attribute = "record.count", description = "Number of changed rows in the FlowFile"),
+        @WritesAttribute(attribute = "kudu.table.name", description = "Name of the scanned Kudu table"),
+        @WritesAttribute(attribute = "kudu.scan.start.micros", description = "Exclusive start snapshot of the changes in microseconds since the epoch"),
+        @WritesAttribute(attribute = "kudu.scan.snapshot.micros", description = "Inclusive end snapshot of the changes in microseconds since the epoch"),
+        @WritesAttribute(attribute = "fragment.identifier", description = "Identifier shared by all FlowFiles of one run"),
+        @WritesAttribute(attribute = "fragment.index", description = "Index of the FlowFile within the run"),
+        @WritesAttribute(attribute = "fragment.count", description = "Number of FlowFiles of the run"),
+        @WritesAttribute(attribute = "mime.type", description = "Mime type of the Record Writer")
+})
+public class ScanKuduChanges extends AbstractKuduScanProcessor {
+
+    static final PropertyDescriptor OPERATION_FIELD = new Builder()
+            .name("operation-field")
+            .displayName("Operation Field")
+            .description("The name of the record field holding the operation of the change, UPSERT or DELETE.")
+            .required(true)
+            .defaultValue("kudu_operation")
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    static final PropertyDescriptor INITIAL_SNAPSHOT = new Builder()
+            .name("initial-snapshot-micros")
+            .displayName("Initial Snapshot Timestamp")
+            .description("The start snapshot of the first run, in microseconds since the epoch, when no state is stored for the table. " +
+                    "It must be within the tablet history retention of the cluster. If not set, the first run only records the current time " +
+                    "and changes are emitted from the second run on.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_LONG_VALIDATOR)
+            .build();
+
+    protected static final Relationship REL_SUCCESS = new Relationship.Builder()
+            .name("success")
+            .description("FlowFiles containing the changed rows are routed to this relationship")
+            .build();
+
+    public static final String START_SNAPSHOT_ATTR = "kudu.scan.start.micros";
+    public static final String SNAPSHOT_ATTR = "kudu.scan.snapshot.micros";
+
+    private static final String STATE_KEY_SUFFIX = ".snapshot.micros";
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        final List<PropertyDescriptor> properties = new ArrayList<>();
+        properties.add(KUDU_MASTERS);
+        properties.add(TABLE_NAME);
+        properties.add(PROJECTED_COLUMNS);
+        properties.add(PREDICATES);
+        properties.add(OPERATION_FIELD);
+        properties.add(INITIAL_SNAPSHOT);
+        properties.add(RECORD_WRITER);
+        properties.add(ROWS_PER_FLOWFILE);
+        properties.add(SCAN_THREADS);
+        properties.add(SCAN_BUFFER_SIZE);
+        properties.add(SCAN_BATCH_SIZE_BYTES);
+        properties.add(KERBEROS_CREDENTIALS_SERVICE);
+        properties.add(KERBEROS_PRINCIPAL);
+        properties.add(KERBEROS_PASSWORD);
+        properties.add(KUDU_OPERATION_TIMEOUT_MS);
+        properties.add(KUDU_KEEP_ALIVE_PERIOD_TIMEOUT_MS);
+        properties.add(WORKER_COUNT);
+        properties.add(KUDU_SASL_PROTOCOL_NAME);
+        return properties;
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return Collections.singleton(REL_SUCCESS);
+    }
+
+    @OnScheduled
+    public void onScheduled(final ProcessContext context) throws LoginException {
+        createKerberosUserAndOrKuduClient(context);
+        createScanExecutor(context.getProperty(SCAN_THREADS).asInteger());
+        warmUpTable(context.getProperty(TABLE_NAME));
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        final String tableName = context.getProperty(TABLE_NAME).evaluateAttributeExpressions().getValue();
+        final String stateKey = tableName + STATE_KEY_SUFFIX;
+
+        final StateMap stateMap;
+        try {
+            stateMap = context.getStateManager().getState(Scope.CLUSTER);
+        } catch (final IOException e) {
+            getLogger().error("Failed to retrieve the last snapshot of {} from cluster state", new Object[] {tableName}, e);
+            context.yield();
+            return;
+        }
+
+        final String storedSnapshot = stateMap.get(stateKey);
+        final Long initialSnapshot = context.getProperty(INITIAL_SNAPSHOT).asLong();
+        final long endMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+
+        if (storedSnapshot == null && initialSnapshot == null) {
+            // Nothing to diff against yet: start tracking changes from now
+            saveSnapshot(context, stateMap, stateKey, endMicros);
+            return;
+        }
+
+        final long startMicros = storedSnapshot == null ? initialSnapshot : Long.parseLong(storedSnapshot);
+        if (startMicros >= endMicros) {
+            context.yield();
+            return;
+        }
+
+        try {
+            executeOnKuduClientAsUser(kuduClient -> scanChanges(context, session, kuduClient, tableName, startMicros, endMicros));
+        } catch (final Exception e) {
+            getLogger().error("Failed to scan changes of {} between snapshots {} and {}", new Object[] {tableName, startMicros, endMicros}, e);
+            session.rollback();
+            context.yield();
+            return;
+        }
+
+        // Changes are delivered at least once: the state only advances after the FlowFiles are committed
+        session.commit();
+        saveSnapshot(context, stateMap, stateKey, endMicros);
+    }
+
+    private void scanChanges(final ProcessContext context, final ProcessSession session, final KuduClient kuduClient, final String tableName,
+                             final long startMicros, final long endMicros) {
+        final KuduTable table;
+        try {
+            table = openTable(kuduClient, tableName);
+        } catch (final Exception e) {
+            throw new ProcessException(String.format("Failed to open Kudu table %s", tableName), e);
+        }
+
+        final List<String> columnNames = getProjectedColumns(context, null, table.getSchema());
+        final List<KuduScanToken> tokens = newScanTokenBuilder(context, null, kuduClient, table, columnNames)
+                .diffScan(HybridTimeUtil.physicalAndLogicalToHTTimestamp(startMicros, 0), HybridTimeUtil.physicalAndLogicalToHTTimestamp(endMicros, 0))
+                .build();
+        final List<Callable<KuduScanner>> scanners = tokens.stream()
+                .map(token -> (Callable<KuduScanner>) () -> token.intoScanner(kuduClient))
+                .collect(Collectors.toList());
+
+        final String operationField = context.getProperty(OPERATION_FIELD).getValue();
+        final KuduRowConverter converter = new KuduRowConverter(getProjectedSchema(table.getSchema(), columnNames), operationField);
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put(TABLE_NAME_ATTR, tableName);
+        attributes.put(START_SNAPSHOT_ATTR, String.valueOf(startMicros));
+        attributes.put(SNAPSHOT_ATTR, String.valueOf(endMicros));
+        final long rows = scanToFlowFiles(context, session, null, scanners, converter, attributes);
+
+        session.adjustCounter("Kudu Changed Rows", rows, false);
+        getLogger().debug("Emitted {} changed rows of {} between snapshots {} and {}", new Object[] {rows, tableName, startMicros, endMicros});
+    }
+
+    @Override
+    protected boolean isEmptyScanWritten() {
+        return false;
+    }
+
+    private void saveSnapshot(final ProcessContext context, final StateMap stateMap, final String stateKey, final long snapshotMicros) {
+        final Map<String, String> state = new HashMap<>(stateMap.toMap());
+        state.put(stateKey, String.valueOf(snapshotMicros));
+        try {
+            context.getStateManager().setState(state, Scope.CLUSTER);
+        } catch (final IOException e) {
+            getLogger().error("Failed to store snapshot {} in cluster state; the changes since the previous snapshot will be emitted again",
+                    new Object[] {snapshotMicros}, e);
+        }
+    }
+}
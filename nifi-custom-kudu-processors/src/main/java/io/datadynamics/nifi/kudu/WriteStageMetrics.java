@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.nifi.processor.ProcessSession;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage timing of the Kudu write path. Each processor keeps one instance with a histogram per stage, and each
+ * trigger records into a {@link Timer} that also accumulates the trigger's own totals for publishing as counters.
+ */
+public class WriteStageMetrics {
+
+    public enum Stage {
+        READ("Read"),
+        DECODE("Decode"),
+        BUILD_ROW("Build Row"),
+        APPLY("Apply"),
+        FLUSH("Flush");
+
+        private final String displayName;
+
+        Stage(final String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+
+    public WriteStageMetrics() {
+        for (final Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public LatencyHistogram getHistogram(final Stage stage) {
+        return histograms.get(stage);
+    }
+
+    public Timer newTimer() {
+        return new Timer();
+    }
+
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    /**
+     * Summarize count, mean and percentiles of every stage in microseconds
+     *
+     * @return Single line summary
+     */
+    public String getSummary() {
+        final StringBuilder summary = new StringBuilder();
+        for (final Stage stage : Stage.values()) {
+            final LatencyHistogram histogram = histograms.get(stage);
+            if (summary.length() > 0) {
+                summary.append("; ");
+            }
+            summary.append(String.format("%s: count=%d mean=%.1fus p50=%dus p99=%dus max=%dus",
+                    stage.getDisplayName(),
+                    histogram.getCount(),
+                    histogram.getMean() / 1000,
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(50)),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99)),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getMax())));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Stage timer of a single trigger, not thread-safe
+     */
+    public class Timer {
+        private final long[] totalNanos = new long[Stage.values().length];
+
+        private Timer() {
+        }
+
+        /**
+         * Record the time spent in a stage since the given start
+         *
+         * @param stage     Stage of the write path
+         * @param startNanos Start time from {@link System#nanoTime()}
+         * @return Current time from {@link System#nanoTime()}, usable as start of the next stage
+         */
+        public long record(final Stage stage, final long startNanos) {
+            final long now = System.nanoTime();
+            final long elapsed = now - startNanos;
+            totalNanos[stage.ordinal()] += elapsed;
+            histograms.get(stage).record(elapsed);
+            return now;
+        }
+
+        /**
+         * Publish the trigger's total time per stage as counters in microseconds
+         *
+         * @param session Process Session
+         */
+        public void publish(final ProcessSession session) {
+            for (final Stage stage : Stage.values()) {
+                final long micros = TimeUnit.NANOSECONDS.toMicros(totalNanos[stage.ordinal()]);
+                if (micros > 0) {
+                    session.adjustCounter("Kudu " + stage.getDisplayName() + " Time (micros)", micros, false);
+                }
+            }
+        }
+    }
+}
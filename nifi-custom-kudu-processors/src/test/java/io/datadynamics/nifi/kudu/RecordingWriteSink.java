@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.client.InMemoryKudu;
+import org.apache.kudu.client.KuduException;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+import org.apache.kudu.client.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Write sink recording the operations applied to it. Operations matching the failure predicate get a row error when
+ * they are flushed, returned as pending row errors in AUTO_FLUSH_BACKGROUND and in the responses otherwise.
+ */
+class RecordingWriteSink implements KuduWriteSink {
+
+    final List<Operation> applied = new ArrayList<>();
+    int flushes;
+
+    private final SessionConfiguration.FlushMode flushMode;
+    private final Predicate<Operation> failure;
+    private final List<Operation> buffered = new ArrayList<>();
+    private final List<RowError> pendingRowErrors = new ArrayList<>();
+
+    RecordingWriteSink(final SessionConfiguration.FlushMode flushMode, final Predicate<Operation> failure) {
+        this.flushMode = flushMode;
+        this.failure = failure;
+    }
+
+    @Override
+    public OperationResponse apply(final Operation operation) throws KuduException {
+        applied.add(operation);
+        buffered.add(operation);
+        return null;
+    }
+
+    @Override
+    public List<OperationResponse> flush() {
+        flushes++;
+        final List<OperationResponse> responses = new ArrayList<>();
+        for (final Operation operation : buffered) {
+            final RowError rowError = failure.test(operation) ? InMemoryKudu.newRowError(Status.NotFound("key not found"), operation) : null;
+            if (rowError != null && flushMode == SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND) {
+                pendingRowErrors.add(rowError);
+            }
+            responses.add(InMemoryKudu.newResponse(operation, flushMode == SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND ? null : rowError));
+        }
+        buffered.clear();
+        return responses;
+    }
+
+    @Override
+    public List<OperationResponse> close() {
+        return flush();
+    }
+
+    @Override
+    public SessionConfiguration.FlushMode getFlushMode() {
+        return flushMode;
+    }
+
+    @Override
+    public List<RowError> getPendingRowErrors() {
+        final List<RowError> errors = new ArrayList<>(pendingRowErrors);
+        pendingRowErrors.clear();
+        return errors;
+    }
+
+    @Override
+    public void setIgnoreAllDuplicateRows(final boolean ignoreAllDuplicateRows) {
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.InMemoryKudu;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.RecordingKuduClient;
+import org.apache.nifi.util.MockComponentLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestKuduApplyLanes {
+
+    private static final int KEYS = 20;
+
+    private final KuduTable table = InMemoryKudu.newTable("laned", new Schema(Arrays.asList(
+            new ColumnSchema.ColumnSchemaBuilder("id", Type.INT32).key(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("seq", Type.INT32).build())));
+
+    private KuduApplyLanes lanes;
+
+    @Before
+    public void setUp() {
+        lanes = new KuduApplyLanes(4, 16, "test-lane", new MockComponentLog("lanes", this));
+    }
+
+    @After
+    public void tearDown() {
+        lanes.shutdown();
+    }
+
+    @Test
+    public void testKeepsOrderOfOperationsOnOneKeyAcrossTasks() throws Exception {
+        final RecordingKuduClient client = new RecordingKuduClient(operation -> false);
+        final List<KuduWriteSink> sinks = Arrays.asList(lanes.newSink(client), lanes.newSink(client), lanes.newSink(client));
+
+        // Hand over operations on every key from alternating tasks, more than the lanes queue at once
+        for (int seq = 0; seq < 600; seq++) {
+            sinks.get(seq % sinks.size()).apply(upsert(seq % KEYS, seq));
+        }
+        int responses = 0;
+        for (final KuduWriteSink sink : sinks) {
+            responses += sink.flush().size();
+        }
+        assertEquals(600, responses);
+
+        final Map<Integer, List<Integer>> appliedByKey = new HashMap<>();
+        for (final Operation operation : client.getApplied()) {
+            appliedByKey.computeIfAbsent(operation.getRow().getInt("id"), id -> new ArrayList<>()).add(operation.getRow().getInt("seq"));
+        }
+        assertEquals(KEYS, appliedByKey.size());
+        for (final Map.Entry<Integer, List<Integer>> key : appliedByKey.entrySet()) {
+            final List<Integer> expected = new ArrayList<>();
+            for (int seq = key.getKey(); seq < 600; seq += KEYS) {
+                expected.add(seq);
+            }
+            assertEquals("Order of key " + key.getKey(), expected, key.getValue());
+        }
+    }
+
+    @Test
+    public void testAttributesRowErrorsToTheirTasks() throws Exception {
+        final RecordingKuduClient client = new RecordingKuduClient(operation -> operation.getRow().getInt("seq") % 5 == 0);
+        final KuduWriteSink first = lanes.newSink(client);
+        final KuduWriteSink second = lanes.newSink(client);
+
+        for (int seq = 0; seq < 200; seq++) {
+            (seq % 2 == 0 ? first : second).apply(upsert(seq % KEYS, seq));
+        }
+
+        assertFailedSeqs(first.flush(), 100, 0);
+        assertFailedSeqs(second.flush(), 100, 1);
+    }
+
+    @Test
+    public void testFailureIsReportedToTheTask() throws Exception {
+        final RecordingKuduClient client = new RecordingKuduClient(operation -> false);
+        client.setApplyFailure(new IllegalStateException("Session closed"));
+        final KuduWriteSink sink = lanes.newSink(client);
+
+        sink.apply(upsert(1, 1));
+        try {
+            sink.flush();
+            fail("Expected the failure of the lane");
+        } catch (final IllegalStateException e) {
+            assertEquals("Session closed", e.getMessage());
+        }
+
+        client.setApplyFailure(null);
+        sink.apply(upsert(1, 2));
+        assertEquals(1, sink.flush().size());
+    }
+
+    /**
+     * Asserts that the responses are those of the operations of one task, whose sequence numbers have the parity given,
+     * and that its row errors are those of its failing operations.
+     */
+    private static void assertFailedSeqs(final List<OperationResponse> responses, final int operations, final int parity) {
+        assertEquals(operations, responses.size());
+        final List<Integer> failed = responses.stream()
+                .filter(OperationResponse::hasRowError)
+                .map(response -> response.getRowError().getOperation().getRow().getInt("seq"))
+                .sorted()
+                .collect(Collectors.toList());
+        final List<Integer> expected = new ArrayList<>();
+        for (int seq = parity; seq < operations * 2; seq += 2) {
+            if (seq % 5 == 0) {
+                expected.add(seq);
+            }
+        }
+        assertEquals(expected, failed);
+    }
+
+    private Operation upsert(final int id, final int seq) {
+        final Operation operation = table.newUpsert();
+        operation.getRow().addInt("id", id);
+        operation.getRow().addInt("seq", seq);
+        return operation;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestKuduCircuitBreaker {
+
+    private static final long LONG_OPEN_MS = 60_000;
+
+    @Test
+    public void testStaysClosedBelowMinimumOperations() {
+        final KuduCircuitBreaker breaker = new KuduCircuitBreaker("masters/table", 50, LONG_OPEN_MS);
+        breaker.recordOutcome(50, 50);
+
+        assertEquals(KuduCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testStaysClosedBelowFailureRate() {
+        final KuduCircuitBreaker breaker = new KuduCircuitBreaker("masters/table", 50, LONG_OPEN_MS);
+        breaker.recordOutcome(1000, 499);
+
+        assertEquals(KuduCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testOpensAtFailureRate() {
+        final KuduCircuitBreaker breaker = new KuduCircuitBreaker("masters/table", 50, LONG_OPEN_MS);
+        breaker.recordOutcome(60, 20);
+        breaker.recordOutcome(40, 30);
+
+        assertEquals(KuduCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertEquals(KuduCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenAfterOpenDuration() {
+        final KuduCircuitBreaker breaker = new KuduCircuitBreaker("masters/table", 50, 0);
+        breaker.recordOutcome(100, 100);
+        assertEquals(KuduCircuitBreaker.State.OPEN, breaker.getState());
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(KuduCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testClosesAfterSuccessfulProbes() {
+        final KuduCircuitBreaker breaker = new KuduCircuitBreaker("masters/table", 50, 0);
+        breaker.recordOutcome(100, 100);
+        breaker.allowRequest();
+
+        // The admitted share doubles from 10% with every successful probe
+        for (int probe = 0; probe < 3; probe++) {
+            breaker.recordOutcome(10, 0);
+            assertEquals(KuduCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        }
+        breaker.recordOutcome(10, 0);
+        assertEquals(KuduCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testReopensOnThrottledProbe() {
+        final KuduCircuitBreaker breaker = new KuduCircuitBreaker("masters/table", 50, 0);
+        breaker.recordOutcome(100, 100);
+        breaker.allowRequest();
+        breaker.recordOutcome(10, 0);
+
+        breaker.recordOutcome(1, 1);
+        assertEquals(KuduCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testWindowResetAfterClosing() {
+        final KuduCircuitBreaker breaker = new KuduCircuitBreaker("masters/table", 50, 0);
+        breaker.recordOutcome(100, 100);
+        breaker.allowRequest();
+        for (int probe = 0; probe < 4; probe++) {
+            breaker.recordOutcome(10, 0);
+        }
+        assertEquals(KuduCircuitBreaker.State.CLOSED, breaker.getState());
+
+        // The failures that opened the breaker no longer count
+        breaker.recordOutcome(100, 10);
+        assertEquals(KuduCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
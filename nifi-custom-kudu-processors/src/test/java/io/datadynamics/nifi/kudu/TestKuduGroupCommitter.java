@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.InMemoryKudu;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.RecordingKuduClient;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TestKuduGroupCommitter {
+
+    private static final int TASKS = 8;
+    private static final int OPERATIONS_PER_TASK = 50;
+
+    private final KuduTable table = InMemoryKudu.newTable("grouped", new Schema(Arrays.asList(
+            new ColumnSchema.ColumnSchemaBuilder("id", Type.INT32).key(true).build())));
+
+    @Test
+    public void testAttributesResponsesToTheirTasks() throws Exception {
+        final RecordingKuduClient client = new RecordingKuduClient(operation -> operation.getRow().getInt("id") % 3 == 0);
+        final KuduGroupCommitter committer = new KuduGroupCommitter(TASKS * OPERATIONS_PER_TASK);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(TASKS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<List<OperationResponse>>> flushes = new ArrayList<>();
+            for (int task = 0; task < TASKS; task++) {
+                final int firstId = task * OPERATIONS_PER_TASK;
+                flushes.add(executor.submit(() -> {
+                    final KuduWriteSink sink = committer.newSink(client, Integer.MAX_VALUE);
+                    for (int id = firstId; id < firstId + OPERATIONS_PER_TASK; id++) {
+                        sink.apply(insert(id));
+                    }
+                    start.await();
+                    return sink.flush();
+                }));
+            }
+            start.countDown();
+
+            for (int task = 0; task < TASKS; task++) {
+                final List<OperationResponse> responses = flushes.get(task).get(30, TimeUnit.SECONDS);
+                assertEquals(OPERATIONS_PER_TASK, responses.size());
+
+                final List<Integer> failedIds = responses.stream()
+                        .filter(OperationResponse::hasRowError)
+                        .map(response -> response.getRowError().getOperation().getRow().getInt("id"))
+                        .sorted()
+                        .collect(Collectors.toList());
+                final List<Integer> expectedIds = new ArrayList<>();
+                for (int id = task * OPERATIONS_PER_TASK; id < (task + 1) * OPERATIONS_PER_TASK; id++) {
+                    if (id % 3 == 0) {
+                        expectedIds.add(id);
+                    }
+                }
+                assertEquals(expectedIds, failedIds);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(TASKS * OPERATIONS_PER_TASK, client.getApplied().size());
+    }
+
+    @Test
+    public void testCommitsFullBufferAndReturnsResponsesOnFlush() throws Exception {
+        final RecordingKuduClient client = new RecordingKuduClient(operation -> false);
+        final KuduGroupCommitter committer = new KuduGroupCommitter(1000);
+        final KuduWriteSink sink = committer.newSink(client, 10);
+
+        for (int id = 0; id < 25; id++) {
+            sink.apply(insert(id));
+        }
+        assertEquals(20, client.getApplied().size());
+
+        assertEquals(25, sink.flush().size());
+        assertEquals(25, client.getApplied().size());
+        assertEquals(Collections.emptyList(), sink.flush());
+    }
+
+    @Test
+    public void testKeepsOrderOfTaskOperations() throws Exception {
+        final RecordingKuduClient client = new RecordingKuduClient(operation -> false);
+        final KuduGroupCommitter committer = new KuduGroupCommitter(1000);
+        final KuduWriteSink sink = committer.newSink(client, 7);
+
+        final List<Operation> operations = new ArrayList<>();
+        for (int id = 0; id < 30; id++) {
+            final Operation operation = insert(id % 4);
+            operations.add(operation);
+            sink.apply(operation);
+        }
+        sink.close();
+
+        final List<Operation> applied = client.getApplied();
+        assertEquals(operations.size(), applied.size());
+        for (int i = 0; i < operations.size(); i++) {
+            assertSame(operations.get(i), applied.get(i));
+        }
+    }
+
+    @Test
+    public void testFailureIsReportedToTheTask() throws Exception {
+        final RecordingKuduClient client = new RecordingKuduClient(operation -> false);
+        client.setApplyFailure(new IllegalStateException("Session closed"));
+        final KuduGroupCommitter committer = new KuduGroupCommitter(1000);
+        final KuduWriteSink sink = committer.newSink(client, 100);
+
+        sink.apply(insert(1));
+        try {
+            sink.flush();
+            fail("Expected the failure of the group commit");
+        } catch (final IllegalStateException e) {
+            assertEquals("Session closed", e.getMessage());
+        }
+
+        // The next group commit is not affected by the failed one
+        client.setApplyFailure(null);
+        sink.apply(insert(2));
+        assertEquals(1, sink.flush().size());
+    }
+
+    private Operation insert(final int id) {
+        final Operation operation = table.newInsert();
+        operation.getRow().addInt("id", id);
+        return operation;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.KuduPredicate;
+import org.apache.kudu.client.KuduPredicate.ComparisonOp;
+import org.junit.Test;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestKuduPredicateParser {
+
+    private static final Schema SCHEMA = new Schema(Arrays.asList(
+            new ColumnSchema.ColumnSchemaBuilder("id", Type.INT64).key(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("name", Type.STRING).nullable(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("operand", Type.INT32).nullable(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("created", Type.UNIXTIME_MICROS).nullable(true).build(),
+            new ColumnSchema.ColumnSchemaBuilder("day", Type.DATE).nullable(true).build()));
+
+    private static ColumnSchema column(final String name) {
+        return SCHEMA.getColumn(name);
+    }
+
+    @Test
+    public void testBlankExpressionHasNoPredicates() {
+        assertTrue(KuduPredicateParser.parse(null, SCHEMA).isEmpty());
+        assertTrue(KuduPredicateParser.parse("  ", SCHEMA).isEmpty());
+    }
+
+    @Test
+    public void testComparisonOperators() {
+        final List<KuduPredicate> predicates = KuduPredicateParser.parse("id = 1 AND id<10 and id <= 9 AND id> 0 AND id >=1", SCHEMA);
+
+        assertEquals(Arrays.asList(
+                KuduPredicate.newComparisonPredicate(column("id"), ComparisonOp.EQUAL, 1L),
+                KuduPredicate.newComparisonPredicate(column("id"), ComparisonOp.LESS, 10L),
+                KuduPredicate.newComparisonPredicate(column("id"), ComparisonOp.LESS_EQUAL, 9L),
+                KuduPredicate.newComparisonPredicate(column("id"), ComparisonOp.GREATER, 0L),
+                KuduPredicate.newComparisonPredicate(column("id"), ComparisonOp.GREATER_EQUAL, 1L)), predicates);
+    }
+
+    @Test
+    public void testQuotedValuesKeepSeparatorsAndEscapedQuotes() {
+        final List<KuduPredicate> predicates = KuduPredicateParser.parse("name = 'tom AND jerry''s' AND operand = 3", SCHEMA);
+
+        assertEquals(Arrays.asList(
+                KuduPredicate.newComparisonPredicate(column("name"), ComparisonOp.EQUAL, "tom AND jerry's"),
+                KuduPredicate.newComparisonPredicate(column("operand"), ComparisonOp.EQUAL, 3)), predicates);
+    }
+
+    @Test
+    public void testInList() {
+        final List<KuduPredicate> predicates = KuduPredicateParser.parse("name IN ('a,b', 'c', d) AND operand in (1,2)", SCHEMA);
+
+        assertEquals(Arrays.asList(
+                KuduPredicate.newInListPredicate(column("name"), Arrays.asList("a,b", "c", "d")),
+                KuduPredicate.newInListPredicate(column("operand"), Arrays.asList(1, 2))), predicates);
+    }
+
+    @Test
+    public void testNullPredicates() {
+        final List<KuduPredicate> predicates = KuduPredicateParser.parse("name IS NULL AND operand is not null", SCHEMA);
+
+        assertEquals(Arrays.asList(
+                KuduPredicate.newIsNullPredicate(column("name")),
+                KuduPredicate.newIsNotNullPredicate(column("operand"))), predicates);
+    }
+
+    @Test
+    public void testTimestampAndDateValues() {
+        final Timestamp timestamp = Timestamp.valueOf("2024-01-02 03:04:05.123456");
+        final List<KuduPredicate> predicates = KuduPredicateParser.parse(
+                "created >= '2024-01-02 03:04:05.123456' AND created < " + (timestamp.getTime() + 1000) + " AND day = '2024-01-02'", SCHEMA);
+
+        assertEquals(Arrays.asList(
+                KuduPredicate.newComparisonPredicate(column("created"), ComparisonOp.GREATER_EQUAL, timestamp),
+                KuduPredicate.newComparisonPredicate(column("created"), ComparisonOp.LESS, new Timestamp(timestamp.getTime() + 1000)),
+                KuduPredicate.newComparisonPredicate(column("day"), ComparisonOp.EQUAL, Date.valueOf("2024-01-02"))), predicates);
+    }
+
+    @Test
+    public void testSeparatorWithinColumnName() {
+        assertEquals(Collections.singletonList(KuduPredicate.newComparisonPredicate(column("operand"), ComparisonOp.GREATER, 5)),
+                KuduPredicateParser.parse("operand > 5", SCHEMA));
+    }
+
+    @Test
+    public void testInvalidExpressions() {
+        assertInvalid("missing = 1");
+        assertInvalid("operand = one");
+        assertInvalid("name = 'unterminated");
+        assertInvalid("operand BETWEEN 1");
+        assertInvalid("id = 1 AND");
+    }
+
+    private static void assertInvalid(final String expression) {
+        try {
+            KuduPredicateParser.parse(expression, SCHEMA);
+            fail("Expected " + expression + " to be rejected");
+        } catch (final IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.InMemoryKudu;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.SessionConfiguration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestKuduSortingWriteSink {
+
+    private static final int ROWS = 500;
+    private static final int KEYS = 100;
+
+    @Rule
+    public TemporaryFolder spillDirectory = new TemporaryFolder();
+
+    private KuduTable table;
+
+    @Before
+    public void setUp() {
+        final Schema schema = new Schema(Arrays.asList(
+                new ColumnSchema.ColumnSchemaBuilder("id", Type.INT32).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("seq", Type.INT32).build()));
+        table = InMemoryKudu.newTable("sorted", schema);
+    }
+
+    @Test
+    public void testAppliesInKeyOrderInMemory() throws Exception {
+        final RecordingWriteSink delegate = new RecordingWriteSink(SessionConfiguration.FlushMode.MANUAL_FLUSH, operation -> false);
+        final KuduSortingWriteSink sink = new KuduSortingWriteSink(delegate, 64, Long.MAX_VALUE, spillDirectory.getRoot().toPath());
+
+        applyShuffled(sink, null);
+        assertEquals(0, spillDirectory.getRoot().listFiles().length);
+        assertTrue(delegate.applied.isEmpty());
+
+        sink.close();
+        assertOrdered(delegate.applied);
+    }
+
+    @Test
+    public void testMergesSpilledRunsInKeyOrder() throws Exception {
+        final RecordingWriteSink delegate = new RecordingWriteSink(SessionConfiguration.FlushMode.MANUAL_FLUSH, operation -> false);
+        final KuduSortingWriteSink sink = new KuduSortingWriteSink(delegate, 64, 4096, spillDirectory.getRoot().toPath());
+
+        applyShuffled(sink, null);
+        final File[] runs = spillDirectory.getRoot().listFiles();
+        assertTrue("Expected several spilled runs but got " + runs.length, runs.length > 1);
+
+        sink.close();
+        assertOrdered(delegate.applied);
+        assertEquals(0, spillDirectory.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testFlushesDelegateEveryInterval() throws Exception {
+        final RecordingWriteSink delegate = new RecordingWriteSink(SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND, operation -> false);
+        final KuduSortingWriteSink sink = new KuduSortingWriteSink(delegate, 64, 4096, spillDirectory.getRoot().toPath());
+
+        applyShuffled(sink, null);
+        sink.close();
+
+        // One flush per full chunk and one for the last chunk, then the close of the delegate
+        assertEquals((ROWS + 63) / 64 + 1, delegate.flushes);
+    }
+
+    @Test
+    public void testAttributesRowErrorsToOwners() throws Exception {
+        final RecordingWriteSink delegate = new RecordingWriteSink(SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND,
+                operation -> operation.getRow().getInt("seq") % 7 == 0);
+        final KuduSortingWriteSink sink = new KuduSortingWriteSink(delegate, 64, 4096, spillDirectory.getRoot().toPath());
+        final Map<Integer, Object> failedOwners = new HashMap<>();
+        sink.setFailedOperationListener((operation, owner) -> failedOwners.put(operation.getRow().getInt("seq"), owner));
+
+        applyShuffled(sink, seq -> seq < ROWS / 2 ? "first" : "second");
+        sink.close();
+
+        final List<RowError> rowErrors = sink.getPendingRowErrors();
+        assertEquals((ROWS + 6) / 7, rowErrors.size());
+        assertEquals(rowErrors.size(), failedOwners.size());
+        for (final Map.Entry<Integer, Object> failed : failedOwners.entrySet()) {
+            assertEquals(0, failed.getKey() % 7);
+            assertEquals(failed.getKey() < ROWS / 2 ? "first" : "second", failed.getValue());
+        }
+        assertTrue(sink.getPendingRowErrors().isEmpty());
+    }
+
+    /**
+     * Applies {@value #ROWS} upserts of {@value #KEYS} keys in random order, each with its sequence number.
+     */
+    private void applyShuffled(final KuduSortingWriteSink sink, final IntFunction<Object> owners) throws Exception {
+        final List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            keys.add(i % KEYS);
+        }
+        Collections.shuffle(keys, new Random(42));
+
+        for (int seq = 0; seq < ROWS; seq++) {
+            if (owners != null) {
+                sink.setOwner(owners.apply(seq));
+            }
+            final Operation operation = table.newUpsert();
+            operation.getRow().addInt("id", keys.get(seq));
+            operation.getRow().addInt("seq", seq);
+            sink.apply(operation);
+        }
+    }
+
+    private static void assertOrdered(final List<Operation> applied) {
+        assertEquals(ROWS, applied.size());
+        for (int i = 1; i < applied.size(); i++) {
+            final int previousKey = applied.get(i - 1).getRow().getInt("id");
+            final int key = applied.get(i).getRow().getInt("id");
+            assertTrue("Key " + key + " applied after " + previousKey, previousKey <= key);
+            if (previousKey == key) {
+                // Operations on the same key keep the order they were applied in
+                assertTrue(applied.get(i - 1).getRow().getInt("seq") < applied.get(i).getRow().getInt("seq"));
+            }
+        }
+    }
+}
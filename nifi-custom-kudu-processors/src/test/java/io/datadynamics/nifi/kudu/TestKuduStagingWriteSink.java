@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.datadynamics.nifi.kudu;
+
+import org.apache.kudu.ColumnSchema;
+import org.apache.kudu.Schema;
+import org.apache.kudu.Type;
+import org.apache.kudu.client.InMemoryKudu;
+import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
+import org.apache.kudu.client.OperationResponse;
+import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.client.SessionConfiguration;
+import org.apache.kudu.util.CharUtil;
+import org.apache.kudu.util.DecimalUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestKuduStagingWriteSink {
+
+    private KuduTable table;
+    private KuduStagingWriteSink.BufferPool pool;
+
+    @Before
+    public void setUp() {
+        final Schema schema = new Schema(Arrays.asList(
+                new ColumnSchema.ColumnSchemaBuilder("id", Type.INT32).key(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("bool", Type.BOOL).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("int8", Type.INT8).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("int16", Type.INT16).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("int64", Type.INT64).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("timestamp", Type.UNIXTIME_MICROS).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("date", Type.DATE).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("float", Type.FLOAT).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("double", Type.DOUBLE).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("decimal", Type.DECIMAL).nullable(true)
+                        .typeAttributes(DecimalUtil.typeAttributes(20, 4)).build(),
+                new ColumnSchema.ColumnSchemaBuilder("string", Type.STRING).nullable(true).build(),
+                new ColumnSchema.ColumnSchemaBuilder("varchar", Type.VARCHAR).nullable(true)
+                        .typeAttributes(CharUtil.typeAttributes(8)).build(),
+                new ColumnSchema.ColumnSchemaBuilder("binary", Type.BINARY).nullable(true).build()));
+        table = InMemoryKudu.newTable("staged", schema);
+        pool = new KuduStagingWriteSink.BufferPool(1024, 4);
+    }
+
+    @Test
+    public void testRoundTripsEveryColumnType() throws Exception {
+        final RecordingWriteSink delegate = new RecordingWriteSink(SessionConfiguration.FlushMode.MANUAL_FLUSH, operation -> false);
+        final KuduStagingWriteSink sink = new KuduStagingWriteSink(delegate, pool, 100, Long.MAX_VALUE);
+
+        final Operation full = table.newUpsert();
+        final PartialRow row = full.getRow();
+        row.addInt("id", 1);
+        row.addBoolean("bool", true);
+        row.addByte("int8", Byte.MIN_VALUE);
+        row.addShort("int16", Short.MAX_VALUE);
+        row.addLong("int64", Long.MIN_VALUE);
+        row.addTimestamp("timestamp", Timestamp.valueOf("2024-02-29 12:34:56.123456"));
+        row.addDate("date", Date.valueOf("1969-12-31"));
+        row.addFloat("float", -1.5f);
+        row.addDouble("double", Math.PI);
+        row.addDecimal("decimal", new BigDecimal("-1234567890123456.7891"));
+        row.addString("string", "한글 text");
+        row.addVarchar("varchar", "varchar value");
+        row.addBinary("binary", new byte[] {0, -1, 127, -128});
+
+        final Operation nulls = table.newInsert();
+        nulls.getRow().addInt("id", 2);
+        for (int i = 1; i < table.getSchema().getColumnCount(); i++) {
+            nulls.getRow().setNull(i);
+        }
+
+        final Operation keyOnly = table.newDelete();
+        keyOnly.getRow().addInt("id", 3);
+
+        final List<Operation> operations = Arrays.asList(full, nulls, keyOnly);
+        for (final Operation operation : operations) {
+            sink.apply(operation);
+        }
+        assertTrue(delegate.applied.isEmpty());
+        sink.flush();
+
+        assertEquals(operations.size(), delegate.applied.size());
+        for (int i = 0; i < operations.size(); i++) {
+            final Operation original = operations.get(i);
+            final Operation staged = delegate.applied.get(i);
+            assertNotSame(original, staged);
+            assertEquals(original.getClass(), staged.getClass());
+            assertEquals(original.getRow().toString(), staged.getRow().toString());
+        }
+
+        final PartialRow stagedRow = delegate.applied.get(0).getRow();
+        assertEquals("varchar ", stagedRow.getVarchar("varchar"));
+        assertArrayEquals(new byte[] {0, -1, 127, -128}, stagedRow.getBinaryCopy("binary"));
+        assertEquals(new BigDecimal("-1234567890123456.7891"), stagedRow.getDecimal("decimal"));
+        assertEquals(Timestamp.valueOf("2024-02-29 12:34:56.123456"), stagedRow.getTimestamp("timestamp"));
+        assertTrue(delegate.applied.get(1).getRow().isNull("string"));
+        assertFalse(delegate.applied.get(2).getRow().isSet("string"));
+    }
+
+    @Test
+    public void testRoundTripsEveryOperationType() throws Exception {
+        final RecordingWriteSink delegate = new RecordingWriteSink(SessionConfiguration.FlushMode.MANUAL_FLUSH, operation -> false);
+        final KuduStagingWriteSink sink = new KuduStagingWriteSink(delegate, pool, 100, Long.MAX_VALUE);
+
+        for (final OperationType operationType : OperationType.values()) {
+            final KuduRowWriter writer = sink.beginRow(table, operationType);
+            writer.addInt(0, operationType.ordinal());
+            sink.applyRow();
+        }
+        sink.close();
+
+        assertEquals(OperationType.values().length, delegate.applied.size());
+        for (final Operation operation : delegate.applied) {
+            assertEquals(OperationType.values()[operation.getRow().getInt("id")], KuduOperations.operationType(operation));
+        }
+    }
+
+    @Test
+    public void testAppliesStagedRowsWhenBudgetIsReached() throws Exception {
+        final RecordingWriteSink delegate = new RecordingWriteSink(SessionConfiguration.FlushMode.AUTO_FLUSH_BACKGROUND,
+                operation -> operation.getRow().getInt("id") % 10 == 0);
+        final KuduStagingWriteSink sink = new KuduStagingWriteSink(delegate, pool, 16, 2048);
+        final List<Object> failedOwners = new ArrayList<>();
+        sink.setFailedOperationListener((operation, owner) -> failedOwners.add(owner));
+
+        for (int id = 0; id < 200; id++) {
+            sink.setOwner(id < 100 ? "first" : "second");
+            final KuduRowWriter writer = sink.beginRow(table, OperationType.INSERT);
+            writer.addInt(0, id);
+            writer.addString(10, "a string cell of some length to fill the buffers");
+            sink.applyRow();
+        }
+        assertFalse(delegate.applied.isEmpty());
+        sink.close();
+
+        assertEquals(200, delegate.applied.size());
+        for (int id = 0; id < 200; id++) {
+            assertEquals(id, delegate.applied.get(id).getRow().getInt("id"));
+        }
+        assertEquals(20, sink.getPendingRowErrors().size());
+        assertEquals(20, failedOwners.size());
+        assertEquals(10, failedOwners.stream().filter("first"::equals).count());
+        assertFalse(sink.isFailed());
+    }
+
+    @Test
+    public void testReportsFailureOfStagedRows() throws Exception {
+        final RecordingWriteSink delegate = new RecordingWriteSink(SessionConfiguration.FlushMode.MANUAL_FLUSH, operation -> false) {
+            @Override
+            public OperationResponse apply(final Operation operation) {
+                throw new IllegalStateException("Buffer full");
+            }
+        };
+        final KuduStagingWriteSink sink = new KuduStagingWriteSink(delegate, pool, 16, Long.MAX_VALUE);
+
+        sink.beginRow(table, OperationType.INSERT).addInt(0, 1);
+        sink.applyRow();
+        assertFalse(sink.isFailed());
+        try {
+            sink.flush();
+            fail("Expected the failure of the delegate");
+        } catch (final IllegalStateException e) {
+            assertTrue(sink.isFailed());
+        }
+    }
+}
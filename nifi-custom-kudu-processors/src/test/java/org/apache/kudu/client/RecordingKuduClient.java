@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kudu.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Kudu client without a cluster whose sessions record the operations applied to them. Operations matching the failure
+ * predicate get a row error in the responses of the flush writing them, as with MANUAL_FLUSH.
+ */
+public class RecordingKuduClient extends KuduClient {
+
+    private final Predicate<Operation> failure;
+    private final List<Operation> applied = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger flushes = new AtomicInteger();
+    private volatile RuntimeException applyFailure;
+
+    public RecordingKuduClient(final Predicate<Operation> failure) {
+        super(null);
+        this.failure = failure;
+    }
+
+    /**
+     * @return Operations in the order the sessions applied them
+     */
+    public List<Operation> getApplied() {
+        synchronized (applied) {
+            return new ArrayList<>(applied);
+        }
+    }
+
+    /**
+     * @return Number of flushes that wrote at least one operation
+     */
+    public int getFlushes() {
+        return flushes.get();
+    }
+
+    /**
+     * @param applyFailure Thrown by the sessions when an operation is applied, or null
+     */
+    public void setApplyFailure(final RuntimeException applyFailure) {
+        this.applyFailure = applyFailure;
+    }
+
+    @Override
+    public KuduSession newSession() {
+        return new RecordingSession();
+    }
+
+    private class RecordingSession extends KuduSession {
+        private final List<Operation> buffered = new ArrayList<>();
+        private FlushMode flushMode = FlushMode.AUTO_FLUSH_SYNC;
+        private boolean ignoreAllDuplicateRows;
+
+        private RecordingSession() {
+            super(null);
+        }
+
+        @Override
+        public OperationResponse apply(final Operation operation) {
+            final RuntimeException e = applyFailure;
+            if (e != null) {
+                throw e;
+            }
+            applied.add(operation);
+            buffered.add(operation);
+            return null;
+        }
+
+        @Override
+        public List<OperationResponse> flush() {
+            final List<OperationResponse> responses = new ArrayList<>();
+            for (final Operation operation : buffered) {
+                final RowError rowError = failure.test(operation) ? InMemoryKudu.newRowError(Status.NotFound("key not found"), operation) : null;
+                responses.add(InMemoryKudu.newResponse(operation, rowError));
+            }
+            if (!buffered.isEmpty()) {
+                flushes.incrementAndGet();
+            }
+            buffered.clear();
+            return responses;
+        }
+
+        @Override
+        public List<OperationResponse> close() {
+            return flush();
+        }
+
+        @Override
+        public FlushMode getFlushMode() {
+            return flushMode;
+        }
+
+        @Override
+        public void setFlushMode(final FlushMode flushMode) {
+            this.flushMode = flushMode;
+        }
+
+        @Override
+        public void setMutationBufferSpace(final int size) {
+        }
+
+        @Override
+        public boolean isIgnoreAllDuplicateRows() {
+            return ignoreAllDuplicateRows;
+        }
+
+        @Override
+        public void setIgnoreAllDuplicateRows(final boolean ignoreAllDuplicateRows) {
+            this.ignoreAllDuplicateRows = ignoreAllDuplicateRows;
+        }
+    }
+}